@@ -9,7 +9,24 @@
  */
 package org.openmrs.module.exti18n;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.BooleanUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.AdministrationService;
@@ -17,6 +34,10 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.BaseModuleActivator;
 import org.openmrs.module.exti18n.api.AddressHierarchyI18nCache;
 import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.ExtI18nMetrics;
+import org.openmrs.module.exti18n.api.impl.I18nInvalidationBroadcaster;
+import org.openmrs.module.exti18n.api.impl.LocalizationPool;
+import org.openmrs.util.OpenmrsUtil;
 
 /**
  * This class contains the logic that is run every time this module is either started or shutdown
@@ -25,30 +46,220 @@ public class ExtI18nActivator extends BaseModuleActivator {
 	
 	private Log log = LogFactory.getLog(this.getClass());
 	
+	private ExecutorService preloadExecutor;
+	
+	private ScheduledExecutorService snapshotExecutor;
+	
 	/**
 	 * @see #started()
 	 */
 	public void started() {
 		
+		AdministrationService adminService = Context.getService(AdministrationService.class);
+		AddressHierarchyI18nCache ahI18nCache = Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_AH_REVI18N,
+		    AddressHierarchyI18nCache.class);
+		ReverseI18nCache revI18nCache = Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_REVI18N,
+		    ReverseI18nCache.class);
+		
 		// Ensuring that the i18n caches don't miss out on their disabling GP
 		{
-			String i18nEnabled = Context.getService(AdministrationService.class).getGlobalProperty(
-			    ExtI18nConstants.GLOBAL_PROP_REV_I18N_SUPPORT, new Boolean(true).toString());
-			AddressHierarchyI18nCache ahI18nCache = Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_AH_REVI18N,
-			    AddressHierarchyI18nCache.class);
+			String i18nEnabled = adminService.getGlobalProperty(ExtI18nConstants.GLOBAL_PROP_REV_I18N_SUPPORT, new Boolean(
+			        true).toString());
 			ahI18nCache.setEnabled(BooleanUtils.toBooleanObject(i18nEnabled).booleanValue());
-			ReverseI18nCache revI18nCache = Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_REVI18N,
-			    ReverseI18nCache.class);
 			revI18nCache.setEnabled(ahI18nCache.isEnabled());
 		}
+		
+		// Bounding the i18n caches before they fill up
+		ExtI18nGlobalPropertyListener.setEvictionPolicy(adminService, ahI18nCache, revI18nCache);
+		
+		// Applying the runtime config
+		ExtI18nGlobalPropertyListener.setConfig(adminService,
+		    Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_CONFIG, ExtI18nConfig.class));
+		
+		// Propagating the i18n caches invalidations across the cluster nodes, if any
+		Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_INVALIDATIONS, I18nInvalidationBroadcaster.class)
+		        .start();
+		
+		// Folding and storing the words as configured before anything is cached, the snapshots folded otherwise are stale
+		{
+			boolean accents = BooleanUtils.toBoolean(adminService
+			        .getGlobalProperty(ExtI18nConstants.GLOBAL_PROP_REV_I18N_FOLD_ACCENTS));
+			boolean whitespace = BooleanUtils.toBoolean(adminService
+			        .getGlobalProperty(ExtI18nConstants.GLOBAL_PROP_REV_I18N_FOLD_WHITESPACE));
+			ahI18nCache.setWordFolding(accents, whitespace);
+			revI18nCache.setWordFolding(accents, whitespace);
+			
+			boolean compact = BooleanUtils.toBoolean(adminService
+			        .getGlobalProperty(ExtI18nConstants.GLOBAL_PROP_REV_I18N_COMPACT_STORAGE));
+			ahI18nCache.setCompactStorage(compact);
+			revI18nCache.setCompactStorage(compact);
+		}
+		
+		// Loading the snapshots of the i18n caches, only the caches without a valid snapshot are preloaded
+		boolean revLoaded = loadSnapshot(revI18nCache, ExtI18nConstants.REV_I18N_SNAPSHOT_FILE);
+		boolean ahLoaded = loadSnapshot(ahI18nCache, ExtI18nConstants.AH_I18N_SNAPSHOT_FILE);
+		
+		// Preloading the i18n caches in the background
+		{
+			List<String> revPrefixes = revLoaded ? new ArrayList<String>() : getPrefixes(adminService,
+			    ExtI18nConstants.GLOBAL_PROP_REV_I18N_PRELOAD_PREFIXES);
+			List<String> ahPrefixes = ahLoaded ? new ArrayList<String>() : getPrefixes(adminService,
+			    ExtI18nConstants.GLOBAL_PROP_AH_I18N_PRELOAD_PREFIXES);
+			List<Locale> locales = adminService.getAllowedLocales();
+			if (ahI18nCache.isEnabled() && !CollectionUtils.isEmpty(locales)
+			        && (!revPrefixes.isEmpty() || !ahPrefixes.isEmpty())) {
+				
+				preloadExecutor = Executors.newFixedThreadPool(
+				    Math.min(locales.size(), Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+					
+					    private final AtomicInteger count = new AtomicInteger();
+					
+					    @Override
+					    public Thread newThread(Runnable runnable) {
+						    Thread thread = new Thread(runnable, ExtI18nConstants.MODULE_ARTIFACT_ID + "-preload-"
+						            + count.incrementAndGet());
+						    thread.setDaemon(true);
+						    return thread;
+					    }
+				    });
+				
+				final ExecutorService executor = preloadExecutor;
+				CompletableFuture.allOf(revI18nCache.preload(revPrefixes, locales, executor),
+				    ahI18nCache.preload(ahPrefixes, locales, executor)).whenComplete(new BiConsumer<Void, Throwable>() {
+					
+					@Override
+					public void accept(Void result, Throwable error) {
+						executor.shutdown();
+					}
+				});
+			}
+		}
+		
+		// Writing the snapshots of the i18n caches periodically
+		{
+			int intervalMinutes = NumberUtils.toInt(
+			    adminService.getGlobalProperty(ExtI18nConstants.GLOBAL_PROP_REV_I18N_SNAPSHOT_INTERVAL_MINUTES),
+			    ExtI18nConstants.DEFAULT_REV_I18N_SNAPSHOT_INTERVAL_MINUTES);
+			if (ahI18nCache.isEnabled() && intervalMinutes > 0) {
+				snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, ExtI18nConstants.MODULE_ARTIFACT_ID + "-snapshot");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				snapshotExecutor.scheduleWithFixedDelay(new Runnable() {
+					
+					@Override
+					public void run() {
+						Context.openSession(); // the checksum of the i18n messages goes through the services
+						try {
+							writeSnapshots();
+						}
+						finally {
+							Context.closeSession();
+						}
+					}
+				}, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+			}
+		}
+		ExtI18nMetrics.registerMBean();
 		log.info("Started " + ExtI18nConstants.MODULE_NAME);
 	}
 	
+	/**
+	 * The i18n messages are reloaded along with the context, eg. when a module is started or stopped.
+	 * 
+	 * @see #contextRefreshed()
+	 */
+	public void contextRefreshed() {
+		Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_AH_REVI18N, AddressHierarchyI18nCache.class)
+		        .invalidateTranslations();
+		Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_REVI18N, ReverseI18nCache.class).invalidateTranslations();
+	}
+	
+	/**
+	 * The snapshots are written while the context is still up, as their checksums are computed from
+	 * the i18n messages. The pending invalidations are published as well.
+	 * 
+	 * @see #willStop()
+	 */
+	public void willStop() {
+		if (snapshotExecutor != null) {
+			snapshotExecutor.shutdownNow();
+			snapshotExecutor = null;
+		}
+		writeSnapshots();
+		Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_INVALIDATIONS, I18nInvalidationBroadcaster.class)
+		        .stop();
+	}
+	
 	/**
 	 * @see #shutdown()
 	 */
 	public void shutdown() {
+		if (preloadExecutor != null) {
+			preloadExecutor.shutdownNow();
+		}
+		LocalizationPool.shutdown();
+		ExtI18nMetrics.unregisterMBean();
 		log.info("Stopped " + ExtI18nConstants.MODULE_NAME);
 	}
 	
+	/*
+	 * Writes the snapshots of both i18n caches, failures are only logged.
+	 */
+	private void writeSnapshots() {
+		writeSnapshot(Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_REVI18N, ReverseI18nCache.class),
+		    ExtI18nConstants.REV_I18N_SNAPSHOT_FILE);
+		writeSnapshot(
+		    Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_AH_REVI18N, AddressHierarchyI18nCache.class),
+		    ExtI18nConstants.AH_I18N_SNAPSHOT_FILE);
+	}
+	
+	private void writeSnapshot(ReverseI18nCache cache, String fileName) {
+		File dir = OpenmrsUtil.getDirectoryInApplicationDataDirectory(ExtI18nConstants.MODULE_ARTIFACT_ID);
+		if (dir == null || !cache.isEnabled()) {
+			return;
+		}
+		try {
+			cache.writeSnapshot(new File(dir, fileName));
+		}
+		catch (IOException e) {
+			log.warn("The reverse translations snapshot " + fileName + " could not be written.", e);
+		}
+		catch (RuntimeException e) {
+			log.warn("The reverse translations snapshot " + fileName + " could not be written.", e);
+		}
+	}
+	
+	private boolean loadSnapshot(ReverseI18nCache cache, String fileName) {
+		File dir = OpenmrsUtil.getDirectoryInApplicationDataDirectory(ExtI18nConstants.MODULE_ARTIFACT_ID);
+		if (dir == null) {
+			return false;
+		}
+		try {
+			return cache.loadSnapshot(new File(dir, fileName));
+		}
+		catch (IOException e) {
+			log.warn("The reverse translations snapshot " + fileName + " could not be read, preloading instead.", e);
+			return false;
+		}
+	}
+	
+	/*
+	 * Parses a comma separated list of i18n message keys prefixes.
+	 */
+	private List<String> getPrefixes(AdministrationService adminService, String globalProperty) {
+		List<String> prefixes = new ArrayList<String>();
+		for (String prefix : StringUtils.split(adminService.getGlobalProperty(globalProperty, ""), ",")) {
+			if (!StringUtils.isBlank(prefix)) {
+				prefixes.add(prefix.trim());
+			}
+		}
+		return prefixes;
+	}
+	
 }
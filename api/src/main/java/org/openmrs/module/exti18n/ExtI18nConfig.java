@@ -9,13 +9,71 @@
  */
 package org.openmrs.module.exti18n;
 
+import org.openmrs.module.exti18n.api.impl.LocalizedMetadataRegistry;
 import org.springframework.stereotype.Component;
 
 /**
  * Contains module's config.
  */
-@Component("exti18n.ExtI18nConfig")
+@Component(ExtI18nConstants.COMPONENT_CONFIG)
 public class ExtI18nConfig {
 	
 	public final static String MODULE_PRIVILEGE = "ExtI18n Privilege";
+	
+	/*
+	 * Runtime config, set from the GPs
+	 */
+	private volatile boolean readOnlyLocalization = false;
+	
+	private volatile boolean lazyLocalization = false;
+	
+	private volatile int parallelLocalizationThreshold = 0;
+	
+	private volatile LocalizedMetadataRegistry localizedMetadata = LocalizedMetadataRegistry.getDefault();
+	
+	/**
+	 * @return A boolean indicating whether the localized entities returned by read-only service calls
+	 *         are marked read-only in the Hibernate session, so that they are not dirty checked.
+	 */
+	public boolean isReadOnlyLocalization() {
+		return readOnlyLocalization;
+	}
+	
+	public void setReadOnlyLocalization(boolean readOnlyLocalization) {
+		this.readOnlyLocalization = readOnlyLocalization;
+	}
+	
+	/**
+	 * @return A boolean indicating whether collections are returned as views that localize their
+	 *         elements on first access, rather than as eagerly localized copies.
+	 */
+	public boolean isLazyLocalization() {
+		return lazyLocalization;
+	}
+	
+	public void setLazyLocalization(boolean lazyLocalization) {
+		this.lazyLocalization = lazyLocalization;
+	}
+	
+	/**
+	 * @return The size from which collections are localized in parallel, 0 when they never are.
+	 */
+	public int getParallelLocalizationThreshold() {
+		return parallelLocalizationThreshold;
+	}
+	
+	public void setParallelLocalizationThreshold(int parallelLocalizationThreshold) {
+		this.parallelLocalizationThreshold = parallelLocalizationThreshold;
+	}
+	
+	/**
+	 * @return The localized metadata classes and their localized fields.
+	 */
+	public LocalizedMetadataRegistry getLocalizedMetadata() {
+		return localizedMetadata;
+	}
+	
+	public void setLocalizedMetadata(LocalizedMetadataRegistry localizedMetadata) {
+		this.localizedMetadata = localizedMetadata;
+	}
 }
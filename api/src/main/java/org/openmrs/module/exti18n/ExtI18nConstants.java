@@ -38,8 +38,62 @@ public class ExtI18nConstants {
 	
 	public static final String COMPONENT_ADDRESSVALUES_LOCALIZER = MODULE_ARTIFACT_ID + ".addressValuesLocalizer";
 	
+	public static final String COMPONENT_CONFIG = MODULE_ARTIFACT_ID + ".ExtI18nConfig";
+	
+	public static final String COMPONENT_L10N_MEMO = MODULE_ARTIFACT_ID + ".localizedValuesMemo";
+	
+	public static final String COMPONENT_INVALIDATIONS = MODULE_ARTIFACT_ID + ".i18nInvalidationBroadcaster";
+	
 	/*
 	 * Address Hierarchy
 	 */
 	public static final String GLOBAL_PROP_REV_I18N_SUPPORT = MODULE_ARTIFACT_ID + ".reverseI18nSupport";
+	
+	public static final String GLOBAL_PROP_REV_I18N_PRELOAD_PREFIXES = MODULE_ARTIFACT_ID + ".reverseI18nPreloadPrefixes";
+	
+	public static final String GLOBAL_PROP_AH_I18N_PRELOAD_PREFIXES = MODULE_ARTIFACT_ID + ".addressHierarchyI18nPreloadPrefixes";
+	
+	public static final String GLOBAL_PROP_REV_I18N_MAX_ENTRIES = MODULE_ARTIFACT_ID + ".reverseI18nMaxEntriesPerLocale";
+	
+	public static final String GLOBAL_PROP_REV_I18N_EXPIRY_MINUTES = MODULE_ARTIFACT_ID + ".reverseI18nExpireAfterAccessMinutes";
+	
+	public static final int DEFAULT_REV_I18N_MAX_ENTRIES = 50000;
+	
+	public static final int DEFAULT_REV_I18N_EXPIRY_MINUTES = 0;
+	
+	public static final String GLOBAL_PROP_REV_I18N_MAX_UNTRANSLATED = MODULE_ARTIFACT_ID
+	        + ".reverseI18nMaxUntranslatedPerLocale";
+	
+	public static final int DEFAULT_REV_I18N_MAX_UNTRANSLATED = 10000;
+	
+	public static final String GLOBAL_PROP_REV_I18N_FOLD_ACCENTS = MODULE_ARTIFACT_ID + ".reverseI18nFoldAccents";
+	
+	public static final String GLOBAL_PROP_REV_I18N_FOLD_WHITESPACE = MODULE_ARTIFACT_ID + ".reverseI18nFoldWhitespace";
+	
+	public static final String GLOBAL_PROP_REV_I18N_COMPACT_STORAGE = MODULE_ARTIFACT_ID + ".reverseI18nCompactStorage";
+	
+	public static final String GLOBAL_PROP_REV_I18N_SNAPSHOT_INTERVAL_MINUTES = MODULE_ARTIFACT_ID
+	        + ".reverseI18nSnapshotIntervalMinutes";
+	
+	public static final int DEFAULT_REV_I18N_SNAPSHOT_INTERVAL_MINUTES = 60;
+	
+	public static final String REV_I18N_SNAPSHOT_FILE = "reverseI18nCache.snapshot";
+	
+	public static final String AH_I18N_SNAPSHOT_FILE = "addressHierarchyI18nCache.snapshot";
+	
+	public static final String GLOBAL_PROP_READ_ONLY_L10N = MODULE_ARTIFACT_ID + ".readOnlyLocalization";
+	
+	public static final String GLOBAL_PROP_LAZY_L10N = MODULE_ARTIFACT_ID + ".lazyLocalization";
+	
+	public static final String GLOBAL_PROP_PARALLEL_L10N_THRESHOLD = MODULE_ARTIFACT_ID + ".parallelLocalizationThreshold";
+	
+	public static final String GLOBAL_PROP_L10N_METADATA = MODULE_ARTIFACT_ID + ".localizedMetadata";
+	
+	public static final String DEFAULT_L10N_METADATA = "PatientIdentifierType:name,description,formatDescription;"
+	        + "PersonAttributeType:description;Location:name,description;VisitType:name,description";
+	
+	/*
+	 * Hibernate interceptors
+	 */
+	public static final long PRELOAD_AWAIT_MILLIS = 250;
 }
@@ -1,9 +1,17 @@
 package org.openmrs.module.exti18n;
 
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.lang.BooleanUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.exti18n.api.ReverseI18nCache;
 import org.openmrs.module.exti18n.api.impl.AddressHierarchyI18nCacheImpl;
+import org.openmrs.module.exti18n.api.impl.I18nInvalidationBroadcaster;
+import org.openmrs.module.exti18n.api.impl.LocalizedMetadataRegistry;
 import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -15,11 +23,27 @@ public class ExtI18nGlobalPropertyListener implements GlobalPropertyListener {
 	@Autowired
 	protected ReverseI18nCacheImpl revI18nCache;
 	
+	@Autowired
+	protected ExtI18nConfig config;
+	
+	// Propagates the changes to the other nodes, GP listeners only run on the node where the GP changed
+	@Autowired
+	protected I18nInvalidationBroadcaster invalidations;
+	
 	public void globalPropertyChanged(GlobalProperty globalProperty) {
 		if (ExtI18nConstants.GLOBAL_PROP_REV_I18N_SUPPORT.equalsIgnoreCase(globalProperty.getProperty())) {
 			boolean enable = BooleanUtils.toBooleanObject(globalProperty.getPropertyValue()).booleanValue();
 			ahI18nCache.setEnabled(enable);
 			revI18nCache.setEnabled(enable);
+			invalidations.publishEnabled(enable);
+		}
+		if (isEvictionPolicyProperty(globalProperty.getProperty())) {
+			setEvictionPolicy(Context.getAdministrationService(), ahI18nCache, revI18nCache);
+			invalidations.publishEvictionPolicyChanged();
+		}
+		if (isConfigProperty(globalProperty.getProperty())) {
+			setConfig(Context.getAdministrationService(), config);
+			invalidations.publishConfigChanged();
 		}
 	}
 	
@@ -27,10 +51,67 @@ public class ExtI18nGlobalPropertyListener implements GlobalPropertyListener {
 		if (ExtI18nConstants.GLOBAL_PROP_REV_I18N_SUPPORT.equalsIgnoreCase(propertyName)) {
 			ahI18nCache.setEnabled(false);
 			revI18nCache.setEnabled(false);
+			invalidations.publishEnabled(false);
+		}
+		if (isEvictionPolicyProperty(propertyName)) {
+			setEvictionPolicy(Context.getAdministrationService(), ahI18nCache, revI18nCache);
+			invalidations.publishEvictionPolicyChanged();
+		}
+		if (isConfigProperty(propertyName)) {
+			setConfig(Context.getAdministrationService(), config);
+			invalidations.publishConfigChanged();
 		}
 	}
 	
 	public boolean supportsPropertyName(String propertyName) {
-		return ExtI18nConstants.GLOBAL_PROP_REV_I18N_SUPPORT.equalsIgnoreCase(propertyName);
+		return ExtI18nConstants.GLOBAL_PROP_REV_I18N_SUPPORT.equalsIgnoreCase(propertyName)
+		        || isEvictionPolicyProperty(propertyName) || isConfigProperty(propertyName);
+	}
+	
+	private static boolean isEvictionPolicyProperty(String propertyName) {
+		return ExtI18nConstants.GLOBAL_PROP_REV_I18N_MAX_ENTRIES.equalsIgnoreCase(propertyName)
+		        || ExtI18nConstants.GLOBAL_PROP_REV_I18N_EXPIRY_MINUTES.equalsIgnoreCase(propertyName)
+		        || ExtI18nConstants.GLOBAL_PROP_REV_I18N_MAX_UNTRANSLATED.equalsIgnoreCase(propertyName);
+	}
+	
+	private static boolean isConfigProperty(String propertyName) {
+		return ExtI18nConstants.GLOBAL_PROP_READ_ONLY_L10N.equalsIgnoreCase(propertyName)
+		        || ExtI18nConstants.GLOBAL_PROP_LAZY_L10N.equalsIgnoreCase(propertyName)
+		        || ExtI18nConstants.GLOBAL_PROP_PARALLEL_L10N_THRESHOLD.equalsIgnoreCase(propertyName)
+		        || ExtI18nConstants.GLOBAL_PROP_L10N_METADATA.equalsIgnoreCase(propertyName);
+	}
+	
+	/**
+	 * Applies the runtime config GPs to the module's config, missing or invalid values fall back on
+	 * the defaults.
+	 */
+	public static void setConfig(AdministrationService adminService, ExtI18nConfig config) {
+		config.setReadOnlyLocalization(BooleanUtils.toBoolean(adminService.getGlobalProperty(
+		    ExtI18nConstants.GLOBAL_PROP_READ_ONLY_L10N, Boolean.FALSE.toString())));
+		config.setLazyLocalization(BooleanUtils.toBoolean(adminService.getGlobalProperty(
+		    ExtI18nConstants.GLOBAL_PROP_LAZY_L10N, Boolean.FALSE.toString())));
+		config.setParallelLocalizationThreshold(NumberUtils.toInt(
+		    adminService.getGlobalProperty(ExtI18nConstants.GLOBAL_PROP_PARALLEL_L10N_THRESHOLD), 0));
+		config.setLocalizedMetadata(LocalizedMetadataRegistry.parse(adminService.getGlobalProperty(
+		    ExtI18nConstants.GLOBAL_PROP_L10N_METADATA, ExtI18nConstants.DEFAULT_L10N_METADATA)));
+	}
+	
+	/**
+	 * Applies the eviction policy GPs to the reverse translation caches, missing or invalid values
+	 * fall back on the defaults.
+	 */
+	public static void setEvictionPolicy(AdministrationService adminService, ReverseI18nCache... caches) {
+		int maximumSize = NumberUtils.toInt(adminService.getGlobalProperty(ExtI18nConstants.GLOBAL_PROP_REV_I18N_MAX_ENTRIES),
+		    ExtI18nConstants.DEFAULT_REV_I18N_MAX_ENTRIES);
+		int expiryMinutes = NumberUtils.toInt(
+		    adminService.getGlobalProperty(ExtI18nConstants.GLOBAL_PROP_REV_I18N_EXPIRY_MINUTES),
+		    ExtI18nConstants.DEFAULT_REV_I18N_EXPIRY_MINUTES);
+		int maximumUntranslated = NumberUtils.toInt(
+		    adminService.getGlobalProperty(ExtI18nConstants.GLOBAL_PROP_REV_I18N_MAX_UNTRANSLATED),
+		    ExtI18nConstants.DEFAULT_REV_I18N_MAX_UNTRANSLATED);
+		for (ReverseI18nCache cache : caches) {
+			cache.setEvictionPolicy(maximumSize, TimeUnit.MINUTES.toMillis(expiryMinutes));
+			cache.setUntranslatedMaximumSize(maximumUntranslated);
+		}
 	}
 }
@@ -1,6 +1,7 @@
 package org.openmrs.module.exti18n.api;
 
 import java.util.List;
+import java.util.Locale;
 
 import org.openmrs.PersonAddress;
 
@@ -12,7 +13,8 @@ public interface AddressHierarchyI18nCache extends ReverseI18nCache {
 	public List<String> getOrderedAddressFields();
 	
 	/**
-	 * To initialize the cache.
+	 * To initialize the cache. The list is copied, changes to the provided list are not taken into
+	 * account until it is set again.
 	 */
 	public void setOrderedAddressFields(List<String> orderedAddressFields);
 	
@@ -22,6 +24,13 @@ public interface AddressHierarchyI18nCache extends ReverseI18nCache {
 	 */
 	public List<String> getMessageKeysByLikeName(String searchString);
 	
+	/**
+	 * @param searchString
+	 * @param locale The locale of the search string.
+	 * @return Mathing i18n message keys matching the search string.
+	 */
+	public List<String> getMessageKeysByLikeName(String searchString, Locale locale);
+	
 	/**
 	 * Reverse translates each field of a {@link PersonAddress} based on what is in the reverse
 	 * translation cache.
@@ -0,0 +1,90 @@
+package org.openmrs.module.exti18n.api;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A delta of the changes that a node made to its i18n caches, to be applied by the other nodes of a
+ * cluster. Successive changes are coalesced into a single invalidation before being published.
+ * <p>
+ * Invalidations are stamped with the id of the publishing node and with an epoch that this node
+ * increments for each invalidation it publishes, so that receivers can drop duplicates and detect
+ * the invalidations they missed.
+ */
+public class I18nInvalidation implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final String nodeId;
+	
+	private final long epoch;
+	
+	private final Boolean enabled;
+	
+	private final boolean evictionPolicy;
+	
+	private final boolean config;
+	
+	private final boolean allTranslations;
+	
+	private final Set<String> keys;
+	
+	/**
+	 * @param nodeId The id of the publishing node.
+	 * @param epoch The epoch of the invalidation on the publishing node.
+	 * @param enabled The new state of the reverse translation caching, null if it did not change.
+	 * @param evictionPolicy true if the eviction policy GPs changed.
+	 * @param config true if the runtime config GPs changed.
+	 * @param allTranslations true if any i18n message may have changed.
+	 * @param keys The i18n message keys whose translations changed.
+	 */
+	public I18nInvalidation(String nodeId, long epoch, Boolean enabled, boolean evictionPolicy, boolean config,
+	    boolean allTranslations, Set<String> keys) {
+		this.nodeId = nodeId;
+		this.epoch = epoch;
+		this.enabled = enabled;
+		this.evictionPolicy = evictionPolicy;
+		this.config = config;
+		this.allTranslations = allTranslations;
+		this.keys = keys != null ? Collections.unmodifiableSet(keys) : Collections.<String> emptySet();
+	}
+	
+	public String getNodeId() {
+		return nodeId;
+	}
+	
+	public long getEpoch() {
+		return epoch;
+	}
+	
+	public Boolean getEnabled() {
+		return enabled;
+	}
+	
+	public boolean isEvictionPolicy() {
+		return evictionPolicy;
+	}
+	
+	public boolean isConfig() {
+		return config;
+	}
+	
+	public boolean isAllTranslations() {
+		return allTranslations;
+	}
+	
+	/**
+	 * @return The i18n message keys whose translations changed, empty when all of them may have.
+	 */
+	public Set<String> getKeys() {
+		return keys;
+	}
+	
+	@Override
+	public String toString() {
+		return "I18nInvalidation [nodeId=" + nodeId + ", epoch=" + epoch + ", enabled=" + enabled + ", evictionPolicy="
+		        + evictionPolicy + ", config=" + config + ", allTranslations=" + allTranslations + ", keys=" + keys.size()
+		        + "]";
+	}
+}
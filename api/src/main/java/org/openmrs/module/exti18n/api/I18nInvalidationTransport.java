@@ -0,0 +1,29 @@
+package org.openmrs.module.exti18n.api;
+
+/**
+ * Carries the invalidations of the i18n caches between the nodes of a cluster. The module does not
+ * ship a network transport: a deployment with several nodes registers a bean implementing this
+ * interface (eg. on top of JMS or of its distributed cache), a single node needs none.
+ * <p>
+ * Transports may deliver an invalidation more than once or out of order, receivers take care of
+ * that through the invalidation epochs.
+ */
+public interface I18nInvalidationTransport {
+	
+	/**
+	 * Receives the invalidations published by all the nodes, including its own.
+	 */
+	public interface Listener {
+		
+		public void onInvalidation(I18nInvalidation invalidation);
+	}
+	
+	/**
+	 * Sends an invalidation to all the nodes.
+	 */
+	public void publish(I18nInvalidation invalidation);
+	
+	public void subscribe(Listener listener);
+	
+	public void unsubscribe(Listener listener);
+}
@@ -1,6 +1,11 @@
 package org.openmrs.module.exti18n.api;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.openmrs.messagesource.MessageSourceService;
 
@@ -11,6 +16,73 @@ public interface ReverseI18nCache {
 	 */
 	public void reset();
 	
+	/**
+	 * Drops the memoized translations of the i18n messages, to be called when the i18n messages
+	 * change.
+	 */
+	public void invalidateTranslations();
+	
+	/**
+	 * Drops the memoized translations of some i18n messages, to be called when only these i18n
+	 * messages change.
+	 * 
+	 * @param keys The i18n message keys whose translations changed.
+	 */
+	public void invalidateTranslations(Collection<String> keys);
+	
+	/**
+	 * Updates the cache after some i18n messages of a locale changed, in time proportional to the
+	 * change: the memoized translations of the keys are dropped in that locale and in the locales
+	 * falling back on it, ie. the more specific locales and all the locales when it is the default
+	 * locale or the locale of the base messages. The previous reverse translations of the keys are
+	 * removed and the new translations of the keys that were reverse translated are cached right
+	 * away.
+	 * 
+	 * @param locale The locale of the changed i18n messages, null to update all the locales.
+	 * @param keys The i18n message keys whose translations changed.
+	 */
+	public void updateTranslations(Locale locale, Collection<String> keys);
+	
+	/**
+	 * @return A version number that changes whenever the memoized translations are dropped, so that
+	 *         anything derived from them can be dropped as well.
+	 */
+	public long getTranslationsVersion();
+	
+	/**
+	 * Records an access to the reverse translation of a message that was rendered without going
+	 * through {@link #getMessage(String)}, eg. copied from memoized values, so that it is not evicted
+	 * while it is displayed. It is cached again if it was evicted already.
+	 * 
+	 * @param key The i18n message key.
+	 * @param message The translation of the key in the current locale.
+	 */
+	public void touchMessage(String key, String message);
+	
+	/**
+	 * Bounds the per locale negative caches of the i18n message keys that have no translation.
+	 * 
+	 * @param maximumSize The maximum count of keys per locale, 0 to disable the negative caches.
+	 */
+	public void setUntranslatedMaximumSize(int maximumSize);
+	
+	/**
+	 * Sets how the translated expressions are folded before being reverse translated, the case is
+	 * always folded in a locale independent way. Changing the folding resets the cache.
+	 * 
+	 * @param accents Set to true to also fold the accents.
+	 * @param whitespace Set to true to also fold the leading, trailing and repeated whitespace.
+	 */
+	public void setWordFolding(boolean accents, boolean whitespace);
+	
+	/**
+	 * Sets whether the preloaded words are stored compactly, trading some put throughput for a much
+	 * smaller footprint. Changing the storage resets the cache.
+	 * 
+	 * @param compact Set to true for the compact storage.
+	 */
+	public void setCompactStorage(boolean compact);
+	
 	/**
 	 * @return A boolean indicating whether the reverse translation caching is enabled.
 	 */
@@ -24,6 +96,63 @@ public interface ReverseI18nCache {
 	 */
 	public void setEnabled(boolean enabled);
 	
+	/**
+	 * Bounds the cache. The words that were not preloaded are evicted least frequently used first
+	 * once a locale holds more than the maximum, and expire when not looked up for a while. Evicted
+	 * words are cached again the next time their i18n message key is translated.
+	 * 
+	 * @param maximumSize The maximum count of evictable words per locale, 0 for no maximum.
+	 * @param expireAfterAccessMillis The idle time after which a word expires, 0 for no expiry.
+	 */
+	public void setEvictionPolicy(int maximumSize, long expireAfterAccessMillis);
+	
+	/**
+	 * @return The estimated memory footprint of the cached words in bytes.
+	 */
+	public long getEstimatedFootprint();
+	
+	/**
+	 * @return A boolean indicating whether the cache is not being preloaded.
+	 */
+	public boolean isReady();
+	
+	/**
+	 * Waits for the ongoing preload, if any, to be over.
+	 * 
+	 * @param timeoutMillis The maximum time to wait in milliseconds.
+	 * @return true if the cache is ready, false if the timeout elapsed before that.
+	 */
+	public boolean awaitReady(long timeoutMillis);
+	
+	/**
+	 * Fills the cache with the reverse translations of all the i18n messages whose keys start with
+	 * any of the provided prefixes, in parallel across locales. The cache is not ready until the
+	 * preload is over.
+	 * 
+	 * @param prefixes The i18n message keys prefixes.
+	 * @param locales The locales to preload.
+	 * @param executor The executor running the preload tasks.
+	 * @return The future completion of the preload.
+	 */
+	public CompletableFuture<Void> preload(Collection<String> prefixes, Collection<Locale> locales, Executor executor);
+	
+	/**
+	 * Writes the reverse translations of all locales to a snapshot file, along with a checksum of the
+	 * i18n messages they were cached from.
+	 * 
+	 * @param file The snapshot file, replaced once fully written.
+	 */
+	public void writeSnapshot(File file) throws IOException;
+	
+	/**
+	 * Fills the cache with the reverse translations of a snapshot file. A snapshot whose checksum no
+	 * longer matches the i18n messages is stale and is not loaded.
+	 * 
+	 * @param file The snapshot file.
+	 * @return true if the snapshot was loaded, false if there is none or it is stale or corrupted.
+	 */
+	public boolean loadSnapshot(File file) throws IOException;
+	
 	/**
 	 * This method translates a i18n message key based on the provided locale. From the outside if
 	 * does the same as {@link MessageSourceService#getMessage(String, Object[], Locale)}, however
@@ -50,4 +179,12 @@ public interface ReverseI18nCache {
 	 * @return The i18n message key.
 	 */
 	public String getMessageKey(String message);
+	
+	/**
+	 * @param message A translated expression in the provided locale.
+	 * @param locale The locale of the translated expression, its less specific locales are also
+	 *            looked up (eg. 'fr' for 'fr_CA').
+	 * @return The i18n message key.
+	 */
+	public String getMessageKey(String message, Locale locale);
 }
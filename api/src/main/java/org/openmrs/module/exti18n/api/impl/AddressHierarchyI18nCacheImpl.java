@@ -1,17 +1,22 @@
 package org.openmrs.module.exti18n.api.impl;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
-import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.PersonAddress;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.exti18n.api.AddressHierarchyI18nCache;
 
 /**
@@ -21,18 +26,34 @@ public class AddressHierarchyI18nCacheImpl implements AddressHierarchyI18nCache
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
-	private ReverseI18nCacheImpl i18nCache = new ReverseI18nCacheImpl(); // we just encapsulate a base cache
+	private final ReverseI18nCacheImpl i18nCache; // we just encapsulate a base cache
 	
-	private List<String> orderedAddressFields = new ArrayList<String>();
+	public AddressHierarchyI18nCacheImpl() {
+		this(new ReverseI18nCacheImpl("addressHierarchyI18nCache"));
+	}
+	
+	/**
+	 * @param i18nCache The base cache to encapsulate, eg. one that translates through another message
+	 *            source than the OpenMRS one.
+	 */
+	public AddressHierarchyI18nCacheImpl(ReverseI18nCacheImpl i18nCache) {
+		this.i18nCache = i18nCache;
+		i18nCache.setSubstringIndexed(true); // for searches by like name
+	}
+	
+	private volatile List<String> orderedAddressFields = Collections.emptyList();
 	
 	@Override
 	public List<String> getOrderedAddressFields() {
 		return orderedAddressFields;
 	}
 	
+	/**
+	 * The list is copied, the address fields accessors are compiled again whenever it is set.
+	 */
 	@Override
 	public void setOrderedAddressFields(List<String> orderedAddressFields) {
-		this.orderedAddressFields = orderedAddressFields;
+		this.orderedAddressFields = Collections.unmodifiableList(new ArrayList<String>(orderedAddressFields));
 	}
 	
 	/**
@@ -41,20 +62,27 @@ public class AddressHierarchyI18nCacheImpl implements AddressHierarchyI18nCache
 	 */
 	@Override
 	public List<String> getMessageKeysByLikeName(String searchString) {
+		return getMessageKeysByLikeName(searchString, Context.getLocale());
+	}
+	
+	/**
+	 * @param searchString A partial search string in the provided locale.
+	 * @param locale The locale of the search string, its less specific locales are also searched.
+	 * @return The list of matched possible i18n message keys.
+	 */
+	@Override
+	public List<String> getMessageKeysByLikeName(String searchString, Locale locale) {
 		
 		if (!isEnabled() || StringUtils.isEmpty(searchString)) {
 			return Collections.emptyList();
 		}
 		
-		List<String> keys = new ArrayList<String>();
-		for (Map.Entry<String, String> pair : i18nCache.getCache().entrySet()) {
-			String word = pair.getKey();
-			if (StringUtils.containsIgnoreCase(word, searchString)) {
-				keys.add(pair.getValue());
-			}
+		Set<String> keys = new LinkedHashSet<String>();
+		for (ReverseI18nPartition partition : i18nCache.getPartitions(locale)) {
+			partition.collectKeysContaining(searchString, keys);
 		}
 		
-		return keys;
+		return new ArrayList<String>(keys);
 	}
 	
 	/**
@@ -76,25 +104,31 @@ public class AddressHierarchyI18nCacheImpl implements AddressHierarchyI18nCache
 		}
 		
 		final PersonAddress i18naddress = (PersonAddress) address.clone(); // TODO: We may drop this
+		final Locale locale = Context.getLocale();
 		
-		Map<String, String> addressAsMap = new HashMap<String, String>();
+		StringPropertyAccessors fields;
+		try {
+			fields = StringPropertyAccessors.forClass(i18naddress.getClass(), getOrderedAddressFields());
+		}
+		catch (NoSuchMethodException e) {
+			log.error("The address fields could not be internationalized in " + PersonAddress.class.toString()
+			        + " bean: " + i18naddress.toString(), e);
+			return i18naddress;
+		}
 		
-		for (String fieldName : getOrderedAddressFields()) {
-			String fieldValue = "";
+		for (int i = 0; i < fields.size(); i++) {
 			try {
-				fieldValue = BeanUtils.getProperty(i18naddress, fieldName);
+				String fieldValue = fields.get(i18naddress, i);
 				if (!StringUtils.isEmpty(fieldValue)) {
-					
-					addressAsMap.put(fieldName, fieldValue);
-					
-					if (i18nCache.getCache().containsKey(fieldValue.toLowerCase())) {
-						BeanUtils.setProperty(i18naddress, fieldName, i18nCache.getCache().get(fieldValue.toLowerCase()));
+					String key = i18nCache.findMessageKey(fieldValue, locale);
+					if (key != null) {
+						fields.set(i18naddress, i, key);
 					}
 				}
 			}
 			catch (Exception e) {
-				log.error("'" + fieldName + "' could not be internationalized in " + PersonAddress.class.toString()
-				        + " bean: " + i18naddress.toString(), e);
+				log.error("'" + fields.getName(i) + "' could not be internationalized in "
+				        + PersonAddress.class.toString() + " bean: " + i18naddress.toString(), e);
 				break;
 			}
 		}
@@ -108,6 +142,46 @@ public class AddressHierarchyI18nCacheImpl implements AddressHierarchyI18nCache
 		
 	}
 	
+	@Override
+	public void invalidateTranslations() {
+		i18nCache.invalidateTranslations();
+	}
+	
+	@Override
+	public void invalidateTranslations(Collection<String> keys) {
+		i18nCache.invalidateTranslations(keys);
+	}
+	
+	@Override
+	public void updateTranslations(Locale locale, Collection<String> keys) {
+		i18nCache.updateTranslations(locale, keys);
+	}
+	
+	@Override
+	public long getTranslationsVersion() {
+		return i18nCache.getTranslationsVersion();
+	}
+	
+	@Override
+	public void touchMessage(String key, String message) {
+		i18nCache.touchMessage(key, message);
+	}
+	
+	@Override
+	public void setUntranslatedMaximumSize(int maximumSize) {
+		i18nCache.setUntranslatedMaximumSize(maximumSize);
+	}
+	
+	@Override
+	public void setWordFolding(boolean accents, boolean whitespace) {
+		i18nCache.setWordFolding(accents, whitespace);
+	}
+	
+	@Override
+	public void setCompactStorage(boolean compact) {
+		i18nCache.setCompactStorage(compact);
+	}
+	
 	@Override
 	public boolean isEnabled() {
 		return i18nCache.isEnabled();
@@ -118,6 +192,48 @@ public class AddressHierarchyI18nCacheImpl implements AddressHierarchyI18nCache
 		i18nCache.setEnabled(enabled);
 	}
 	
+	@Override
+	public void setEvictionPolicy(int maximumSize, long expireAfterAccessMillis) {
+		i18nCache.setEvictionPolicy(maximumSize, expireAfterAccessMillis);
+	}
+	
+	@Override
+	public long getEstimatedFootprint() {
+		return i18nCache.getEstimatedFootprint();
+	}
+	
+	/**
+	 * @return A report of the size, usage and footprint of each locale partition.
+	 */
+	public String getFootprintReport() {
+		return i18nCache.getFootprintReport();
+	}
+	
+	@Override
+	public boolean isReady() {
+		return i18nCache.isReady();
+	}
+	
+	@Override
+	public boolean awaitReady(long timeoutMillis) {
+		return i18nCache.awaitReady(timeoutMillis);
+	}
+	
+	@Override
+	public CompletableFuture<Void> preload(Collection<String> prefixes, Collection<Locale> locales, Executor executor) {
+		return i18nCache.preload(prefixes, locales, executor);
+	}
+	
+	@Override
+	public void writeSnapshot(File file) throws IOException {
+		i18nCache.writeSnapshot(file);
+	}
+	
+	@Override
+	public boolean loadSnapshot(File file) throws IOException {
+		return i18nCache.loadSnapshot(file);
+	}
+	
 	@Override
 	public String getMessage(String key, Locale locale) {
 		return i18nCache.getMessage(key, locale);
@@ -132,4 +248,9 @@ public class AddressHierarchyI18nCacheImpl implements AddressHierarchyI18nCache
 	public String getMessageKey(String message) {
 		return i18nCache.getMessageKey(message);
 	}
+	
+	@Override
+	public String getMessageKey(String message, Locale locale) {
+		return i18nCache.getMessageKey(message, locale);
+	}
 }
@@ -2,17 +2,18 @@ package org.openmrs.module.exti18n.api.impl;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.Hibernate;
 import org.openmrs.BaseOpenmrsObject;
 import org.openmrs.Location;
 import org.openmrs.Person;
 import org.openmrs.PersonAddress;
-import org.openmrs.api.context.Context;
 import org.openmrs.module.exti18n.ExtI18nConstants;
 import org.openmrs.module.exti18n.api.AddressHierarchyI18nCache;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,10 +21,20 @@ import org.springframework.beans.factory.annotation.Qualifier;
 
 public class AddressValuesLocalizer extends BaseLocalizer<AddressHierarchyI18nCache> {
 	
+	private static final Class<?>[] COVERED_CLASSES = new Class<?>[] { Location.class, PersonAddress.class,
+	        Person.class };
+	
+	private static final LongAdder LOCALIZED_FIELDS = ExtI18nMetrics.counter("addressValuesLocalizer.fields");
+	
 	@Autowired
 	@Qualifier(ExtI18nConstants.COMPONENT_AH_REVI18N)
 	private AddressHierarchyI18nCache cache;
 	
+	@Override
+	public Class<?>[] getCoveredClasses() {
+		return COVERED_CLASSES;
+	}
+	
 	@Override
 	protected AddressHierarchyI18nCache getCache() {
 		return cache;
@@ -41,6 +52,62 @@ public class AddressValuesLocalizer extends BaseLocalizer<AddressHierarchyI18nCa
 		return original;
 	}
 	
+	@Override
+	protected void prepare(Object original) {
+		super.prepare(original);
+		if (original instanceof Person) {
+			Hibernate.initialize(((Person) original).getAddresses()); // initializing the lazy addresses
+		}
+	}
+	
+	@Override
+	protected void collectLocalizedEntities(Object original, Collection<Object> entities) {
+		if (original instanceof Person) {
+			if (((Person) original).getAddresses() != null) {
+				entities.addAll(((Person) original).getAddresses());
+			}
+		} else {
+			entities.add(original);
+		}
+	}
+	
+	@Override
+	protected String[] getLocalizedValues(Object entity, AddressHierarchyI18nCache cache) throws Exception {
+		if (entity instanceof Person) {
+			return null; // its addresses are the localized entities
+		}
+		StringPropertyAccessors fields = StringPropertyAccessors.forClass(entity.getClass(),
+		    cache.getOrderedAddressFields());
+		String[] values = new String[fields.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = fields.get(entity, i);
+		}
+		return values;
+	}
+	
+	@Override
+	protected void setLocalizedValues(Object entity, String[] values, AddressHierarchyI18nCache cache) throws Exception {
+		StringPropertyAccessors fields = StringPropertyAccessors.forClass(entity.getClass(),
+		    cache.getOrderedAddressFields());
+		if (fields.size() == values.length) {
+			for (int i = 0; i < values.length; i++) {
+				fields.set(entity, i, values[i]);
+			}
+		}
+	}
+	
+	@Override
+	protected void i18n(Object entity, AddressHierarchyI18nCache cache) throws Exception {
+		StringPropertyAccessors fields = StringPropertyAccessors.forClass(entity.getClass(),
+		    cache.getOrderedAddressFields());
+		for (int i = 0; i < fields.size(); i++) {
+			String fieldValue = fields.get(entity, i);
+			if (!StringUtils.isEmpty(fieldValue)) {
+				fields.set(entity, i, cache.getMessageKey(fieldValue));
+			}
+		}
+	}
+	
 	/**
 	 * Localizes the address fields of an OpenMRS base object with address fields.
 	 * 
@@ -51,10 +118,12 @@ public class AddressValuesLocalizer extends BaseLocalizer<AddressHierarchyI18nCa
 	public static Object l10nAddressValues(BaseOpenmrsObject data, AddressHierarchyI18nCache cache)
 	        throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
 		
-		for (String fieldName : cache.getOrderedAddressFields()) {
-			String fieldValue = BeanUtils.getProperty(data, fieldName);
+		StringPropertyAccessors fields = StringPropertyAccessors.forClass(data.getClass(), cache.getOrderedAddressFields());
+		for (int i = 0; i < fields.size(); i++) {
+			String fieldValue = fields.get(data, i);
 			if (!StringUtils.isEmpty(fieldValue)) {
-				BeanUtils.setProperty(data, fieldName, Context.getMessageSourceService().getMessage(fieldValue));
+				fields.set(data, i, cache.getMessage(fieldValue));
+				LOCALIZED_FIELDS.increment();
 			}
 		}
 		return data;
@@ -2,27 +2,66 @@ package org.openmrs.module.exti18n.api.impl;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Hibernate;
 import org.openmrs.BaseOpenmrsMetadata;
 import org.openmrs.BaseOpenmrsObject;
 import org.openmrs.PatientIdentifierType;
 import org.openmrs.Person;
 import org.openmrs.PersonAddress;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.exti18n.ExtI18nConfig;
 import org.openmrs.module.exti18n.api.AddressHierarchyI18nCache;
 import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.LocalizingCollections.ElementLocalizer;
+import org.openmrs.module.exti18n.api.impl.LocalizingCollections.LocalizingView;
+import org.springframework.beans.factory.annotation.Autowired;
 
 abstract public class BaseLocalizer<C extends ReverseI18nCache> {
 	
+	private static final Class<?>[] ALL_CLASSES = new Class<?>[] { Object.class };
+	
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	@Autowired(required = false)
+	protected ExtI18nConfig config;
+	
+	protected ManagedEntities managedEntities = new ManagedEntities();
+	
+	/*
+	 * Metrics, see ExtI18nMetrics, anonymous subclasses count as their superclass
+	 */
+	protected final String metricsName = getMetricsName(getClass());
+	
+	private final LongAdder calls = ExtI18nMetrics.counter(metricsName + ".calls");
+	
+	private final LongAdder nanos = ExtI18nMetrics.counter(metricsName + ".nanos");
+	
+	private final LongAdder localizedObjects = ExtI18nMetrics.counter(metricsName + ".objects");
+	
+	private static String getMetricsName(Class<?> clazz) {
+		while (clazz.isAnonymousClass()) {
+			clazz = clazz.getSuperclass();
+		}
+		return StringUtils.uncapitalize(clazz.getSimpleName());
+	}
+	
 	abstract protected C getCache();
 	
 	/*
@@ -38,14 +77,267 @@ abstract public class BaseLocalizer<C extends ReverseI18nCache> {
 		return true;
 	}
 	
-	private Object l10n(Object original, C cache) throws Exception {
+	/**
+	 * Override this to narrow down the classes of the entities that the localizer processes, service
+	 * methods that can't return any of them are not localized.
+	 * 
+	 * @return The classes of the localized entities. The same array is to be returned until the
+	 *         covered classes change, it is not to be modified.
+	 */
+	public Class<?>[] getCoveredClasses() {
+		return ALL_CLASSES;
+	}
+	
+	/**
+	 * @return A boolean indicating whether the localizer is enabled along with its cache.
+	 */
+	public boolean isEnabled() {
+		C cache = getCache();
+		return cache != null && cache.isEnabled();
+	}
+	
+	/*
+	 * Override this to restore the i18n message keys of an entity localized by this localizer.
+	 */
+	protected void i18n(Object entity, C cache) throws Exception {
+	}
+	
+	/*
+	 * Override this to read the values of the localized fields of an entity, in a fixed order, so
+	 * that the entities localized read-only can be made writable again without losing their edits.
+	 */
+	protected String[] getLocalizedValues(Object entity, C cache) throws Exception {
+		return null;
+	}
+	
+	/*
+	 * Override this along with getLocalizedValues() to set the values of the localized fields.
+	 */
+	protected void setLocalizedValues(Object entity, String[] values, C cache) throws Exception {
+	}
+	
+	/*
+	 * Override this when localizing an object modifies other entities than the object itself.
+	 */
+	protected void collectLocalizedEntities(Object original, Collection<Object> entities) {
+		entities.add(original);
+	}
+	
+	/**
+	 * @return A boolean indicating whether the entities localized by read-only calls should be marked
+	 *         read-only in the Hibernate session.
+	 */
+	public boolean isReadOnlyLocalization() {
+		return config != null && config.isReadOnlyLocalization();
+	}
+	
+	/**
+	 * @return A boolean indicating whether collections are localized lazily through views.
+	 */
+	public boolean isLazyLocalization() {
+		return config != null && config.isLazyLocalization();
+	}
+	
+	/**
+	 * @return A boolean indicating whether a collection of this size is localized in parallel.
+	 */
+	public boolean isParallelLocalization(int size) {
+		int threshold = config != null ? config.getParallelLocalizationThreshold() : 0;
+		return threshold > 0 && size >= threshold;
+	}
+	
+	/*
+	 * Override this to load on the calling thread, ie. within the Hibernate session, whatever is read
+	 * by the localization of an object. This is called before objects are localized in parallel, a
+	 * proxied object is initialized here so that it is not loaded by the pool's threads.
+	 */
+	protected void prepare(Object original) {
+		Hibernate.initialize(original);
+	}
+	
+	private Object l10n(Object original, C cache, boolean readOnly) throws Exception {
 		if (filter(original)) {
-			return process(original, cache);
+			localizedObjects.increment();
+			Map<Object, String[]> keys = readOnly ? readKeys(original, cache) : null;
+			Object result = process(original, cache);
+			if (readOnly) {
+				markReadOnly(original, keys, cache);
+			}
+			return result;
 		} else {
 			return original;
 		}
 	}
 	
+	/*
+	 * The i18n message keys of the entities about to be localized read-only, as in the database.
+	 */
+	private Map<Object, String[]> readKeys(Object original, C cache) throws Exception {
+		Map<Object, String[]> keys = new IdentityHashMap<Object, String[]>();
+		List<Object> entities = new ArrayList<Object>();
+		collectLocalizedEntities(original, entities);
+		for (Object entity : entities) {
+			keys.put(entity, getLocalizedValues(entity, cache));
+		}
+		return keys;
+	}
+	
+	private void markReadOnly(Object original, Map<Object, String[]> keys, C cache) throws Exception {
+		List<Object> entities = new ArrayList<Object>();
+		collectLocalizedEntities(original, entities);
+		for (Object entity : entities) {
+			managedEntities.markReadOnly(entity);
+			managedEntities.rememberLocalizedState(entity, keys.get(entity), getLocalizedValues(entity, cache));
+		}
+	}
+	
+	/*
+	 * Localizes the objects in chunks on the module's pool, the results keep the order of the objects.
+	 * Only the localization itself runs on the pool's threads, anything touching the Hibernate session
+	 * runs on the calling thread.
+	 */
+	private List<Object> l10nInParallel(Collection<?> objects, final C cache, boolean readOnly) throws Exception {
+		
+		final Object[] results = objects.toArray();
+		final boolean[] filtered = new boolean[results.length];
+		final List<Map<Object, String[]>> keys = new ArrayList<Map<Object, String[]>>(results.length);
+		for (int i = 0; i < results.length; i++) {
+			filtered[i] = filter(results[i]);
+			if (filtered[i]) {
+				prepare(results[i]);
+				localizedObjects.increment();
+			}
+			keys.add(filtered[i] && readOnly ? readKeys(results[i], cache) : null);
+		}
+		
+		final UserContext userContext = Context.getUserContext();
+		ForkJoinPool pool = LocalizationPool.getPool();
+		int chunkSize = Math.max(1, (results.length + pool.getParallelism() - 1) / pool.getParallelism());
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int start = 0; start < results.length; start += chunkSize) {
+			final int from = start;
+			final int to = Math.min(start + chunkSize, results.length);
+			futures.add(pool.submit(new Callable<Void>() {
+				
+				@Override
+				public Void call() throws Exception {
+					Context.setUserContext(userContext);
+					try {
+						for (int i = from; i < to; i++) {
+							if (filtered[i]) {
+								results[i] = process(results[i], cache);
+							}
+						}
+					}
+					finally {
+						Context.clearUserContext();
+					}
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		}
+		catch (ExecutionException e) {
+			for (Future<Void> future : futures) {
+				future.cancel(false);
+			}
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+		
+		if (readOnly) {
+			for (int i = 0; i < results.length; i++) {
+				if (filtered[i]) {
+					markReadOnly(results[i], keys.get(i), cache);
+				}
+			}
+		}
+		return new ArrayList<Object>(Arrays.asList(results));
+	}
+	
+	/**
+	 * Makes the entities that were localized in read-only mode writable again, after restoring their
+	 * i18n message keys. This is to be called before they are passed to a service method that may
+	 * save them.
+	 * <p>
+	 * Making an entity writable makes its current state its snapshot, so it is made writable with
+	 * the keys it was loaded with. The values edited meanwhile are then reverse translated and applied
+	 * again, so that they are flushed.
+	 * 
+	 * @param original An instance or a collection of instances that may have been localized.
+	 */
+	public void release(Object original) {
+		
+		C cache = getCache();
+		if (original == null || cache == null) {
+			return;
+		}
+		
+		if (original instanceof LocalizingView) {
+			// only the elements that were accessed may have been localized
+			release(((LocalizingView) original).getOriginal());
+			return;
+		}
+		if (original instanceof Collection<?>) {
+			for (Object obj : (Collection<?>) original) {
+				release(obj);
+			}
+			return;
+		}
+		if (!filter(original)) {
+			return;
+		}
+		
+		List<Object> entities = new ArrayList<Object>();
+		collectLocalizedEntities(original, entities);
+		for (Object entity : entities) {
+			if (managedEntities.isReadOnly(entity)) {
+				ManagedEntities.LocalizedState state = managedEntities.forgetLocalizedState(entity);
+				String[] edits = null;
+				try {
+					String[] values = state != null ? getLocalizedValues(entity, cache) : null;
+					i18n(entity, cache);
+					edits = values != null ? getEdits(state, values, getLocalizedValues(entity, cache)) : null;
+					if (edits != null) {
+						setLocalizedValues(entity, state.getKeys(), cache);
+					}
+				}
+				catch (Exception e) {
+					log.warn("There was an error while internationalizing '" + entity.toString() + "'.", e);
+					edits = null;
+				}
+				managedEntities.markWritable(entity);
+				if (edits != null) {
+					try {
+						setLocalizedValues(entity, edits, cache);
+					}
+					catch (Exception e) {
+						log.warn("The edits of '" + entity.toString() + "' could not be applied again.", e);
+					}
+				}
+			}
+		}
+	}
+	
+	/*
+	 * The values to save: the exact keys of the unedited values and the reverse translations of the
+	 * edited ones, null when the fields changed since the entity was localized.
+	 */
+	private static String[] getEdits(ManagedEntities.LocalizedState state, String[] values, String[] i18nValues) {
+		String[] keys = state.getKeys();
+		if (i18nValues == null || values.length != keys.length || i18nValues.length != keys.length) {
+			return null;
+		}
+		String[] edits = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			edits[i] = StringUtils.equals(values[i], state.getValues()[i]) ? keys[i] : i18nValues[i];
+		}
+		return edits;
+	}
+	
 	/**
 	 * Localizes an instance or a collection of objects.
 	 * 
@@ -53,12 +345,38 @@ abstract public class BaseLocalizer<C extends ReverseI18nCache> {
 	 * @return
 	 */
 	public Object process(Object original) {
+		return process(original, false);
+	}
+	
+	/**
+	 * Localizes an instance or a collection of objects.
+	 * 
+	 * @param original A instance or a collection of instances to be localised.
+	 * @param readOnly Set to true to mark the localized entities read-only in the Hibernate session.
+	 * @return
+	 */
+	public Object process(Object original, boolean readOnly) {
 		
 		C cache = getCache();
 		if (original == null || cache == null || !cache.isEnabled()) {
 			return original;
 		}
 		
+		long start = System.nanoTime();
+		try {
+			return localize(original, cache, readOnly);
+		}
+		finally {
+			calls.increment();
+			nanos.add(System.nanoTime() - start);
+		}
+	}
+	
+	/*
+	 * Lazily localized collections are only counted for the creation of their views.
+	 */
+	private Object localize(Object original, C cache, boolean readOnly) {
+		
 		boolean isCollection = false;
 		if (original instanceof Collection<?>) {
 			isCollection = true;
@@ -67,7 +385,20 @@ abstract public class BaseLocalizer<C extends ReverseI18nCache> {
 		Object result = original;
 		if (!isCollection) {
 			try {
-				result = l10n(original, cache);
+				result = l10n(original, cache, readOnly);
+			}
+			catch (Exception e) {
+				log.warn("There was an error while localizing '" + original.toString()
+				        + "', the original unchanged object was returned.", e);
+				return original;
+			}
+			
+		} else if (isLazyLocalization()) {
+			result = LocalizingCollections.view((Collection<?>) original, newElementLocalizer(cache, readOnly));
+			
+		} else if (isParallelLocalization(((Collection<?>) original).size())) {
+			try {
+				result = l10nInParallel((Collection<?>) original, cache, readOnly);
 			}
 			catch (Exception e) {
 				log.warn("There was an error while localizing '" + original.toString()
@@ -81,7 +412,7 @@ abstract public class BaseLocalizer<C extends ReverseI18nCache> {
 				@SuppressWarnings("unchecked")
 				Collection<Object> objects = (Collection<Object>) original;
 				for (Object obj : objects) {
-					results.add(l10n(obj, cache));
+					results.add(l10n(obj, cache, readOnly));
 				}
 			}
 			catch (Exception e) {
@@ -95,6 +426,22 @@ abstract public class BaseLocalizer<C extends ReverseI18nCache> {
 		return result;
 	}
 	
+	private ElementLocalizer newElementLocalizer(final C cache, final boolean readOnly) {
+		return new ElementLocalizer() {
+			
+			@Override
+			public void l10n(Object element) {
+				try {
+					BaseLocalizer.this.l10n(element, cache, readOnly);
+				}
+				catch (Exception e) {
+					log.warn("There was an error while localizing '" + element.toString()
+					        + "', the original unchanged object was returned.", e);
+				}
+			}
+		};
+	}
+	
 	/**
 	 * Localizes only the description member of an {@link BaseOpenmrsMetadata} based on a reverse
 	 * i18n cache.
@@ -161,10 +508,11 @@ abstract public class BaseLocalizer<C extends ReverseI18nCache> {
 	public static Object l10nAddressValues(BaseOpenmrsObject data, AddressHierarchyI18nCache cache)
 	        throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
 		
-		for (String fieldName : cache.getOrderedAddressFields()) {
-			String fieldValue = BeanUtils.getProperty(data, fieldName);
+		StringPropertyAccessors fields = StringPropertyAccessors.forClass(data.getClass(), cache.getOrderedAddressFields());
+		for (int i = 0; i < fields.size(); i++) {
+			String fieldValue = fields.get(data, i);
 			if (!StringUtils.isEmpty(fieldValue)) {
-				BeanUtils.setProperty(data, fieldName, cache.getMessage(fieldValue));
+				fields.set(data, i, cache.getMessage(fieldValue));
 			}
 		}
 		return data;
@@ -0,0 +1,139 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe Bloom filter of strings, ignoring case. A negative answer is definitive while a
+ * positive answer only means that the string may have been put, so it is used to reject the strings
+ * that are certainly unknown without allocating anything.
+ * <p>
+ * Strings are hashed char by char as they are folded by a {@link WordFolding}, so that a string and
+ * its folded form always hash the same.
+ * <p>
+ * Strings can't be removed, the filter only gets less selective as more strings are put.
+ */
+public class BloomFilter {
+	
+	public static final int DEFAULT_EXPECTED_INSERTIONS = 1 << 16;
+	
+	private static final int BITS_PER_INSERTION = 10;
+	
+	private static final int HASHES = 5;
+	
+	private static final int MAX_BITS = 1 << 26;
+	
+	private final AtomicLongArray bits;
+	
+	private final int mask;
+	
+	private final LongAdder insertions = new LongAdder();
+	
+	private final WordFolding folding;
+	
+	/**
+	 * @param expectedInsertions The count of strings for a false positive rate of about 1%, 0 for the
+	 *            default.
+	 */
+	public BloomFilter(int expectedInsertions) {
+		this(expectedInsertions, WordFolding.CASE);
+	}
+	
+	/**
+	 * @param expectedInsertions The count of strings for a false positive rate of about 1%, 0 for the
+	 *            default.
+	 * @param folding The folding of the strings.
+	 */
+	public BloomFilter(int expectedInsertions, WordFolding folding) {
+		long wanted = (long) (expectedInsertions > 0 ? expectedInsertions : DEFAULT_EXPECTED_INSERTIONS)
+		        * BITS_PER_INSERTION;
+		int size = 64;
+		while (size < wanted && size < MAX_BITS) {
+			size <<= 1;
+		}
+		this.bits = new AtomicLongArray(size / 64);
+		this.mask = size - 1;
+		this.folding = folding;
+	}
+	
+	/**
+	 * @param str A string, ignoring what the folding ignores.
+	 */
+	public void put(CharSequence str) {
+		long hash = hash(str);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < HASHES; i++) {
+			int bit = (h1 + i * h2) & mask;
+			int index = bit >>> 6;
+			long flag = 1L << bit;
+			long word = bits.get(index);
+			while ((word & flag) == 0 && !bits.compareAndSet(index, word, word | flag)) {
+				word = bits.get(index);
+			}
+		}
+		insertions.increment();
+	}
+	
+	/**
+	 * @param str A string, ignoring what the folding ignores.
+	 * @return false if the string was certainly never put, true if it may have been.
+	 */
+	public boolean mightContain(CharSequence str) {
+		long hash = hash(str);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < HASHES; i++) {
+			int bit = (h1 + i * h2) & mask;
+			if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return The count of strings that were put.
+	 */
+	public long getInsertions() {
+		return insertions.sum();
+	}
+	
+	/**
+	 * @return The memory footprint of the bits in bytes.
+	 */
+	public long getFootprint() {
+		return bits.length() * 8L;
+	}
+	
+	/*
+	 * Two 32-bit hashes of the folded chars, the second one being odd so that the probes of double
+	 * hashing cover the whole filter.
+	 */
+	private long hash(CharSequence str) {
+		int h1 = 0x9747b28c;
+		int h2 = 0x85ebca6b;
+		int start = folding.start(str);
+		int end = folding.end(str, start);
+		for (int i = start; i < end; i++) {
+			int c = folding.foldAt(str, i, start);
+			if (c < 0) {
+				continue;
+			}
+			h1 = (h1 ^ c) * 0x01000193;
+			h2 = 31 * h2 + c;
+		}
+		h1 = mix(h1);
+		h2 = mix(h2) | 1;
+		return ((long) h2 << 32) | (h1 & 0xffffffffL);
+	}
+	
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
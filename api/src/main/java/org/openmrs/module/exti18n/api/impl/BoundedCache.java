@@ -0,0 +1,384 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * A concurrent map that can be bounded in size and can expire the entries that were not accessed
+ * for a while.
+ * <p>
+ * Reads never lock. When bounded, entries are evicted with the generalized CLOCK algorithm: each
+ * access gives an entry some credit (up to {@link #MAX_CREDIT}), the clock hand takes one credit
+ * away when it passes over an entry and evicts the first entry that it finds without credit. Hot
+ * entries therefore survive several sweeps while entries that were accessed once go first. A new
+ * entry is always admitted.
+ * <p>
+ * Pinned entries are never evicted nor expired, and they don't count against the maximum size.
+ */
+public class BoundedCache<K, V> {
+	
+	/**
+	 * Notified when an entry is evicted, expired or removed. Not notified when the value of an
+	 * existing entry is replaced.
+	 */
+	public interface RemovalListener<K, V> {
+		
+		void onRemoval(K key, V value);
+	}
+	
+	/**
+	 * Estimates the memory footprint of an entry, in bytes.
+	 */
+	public interface Weigher<K, V> {
+		
+		long weigh(K key, V value);
+	}
+	
+	public static final int MAX_CREDIT = 3;
+	
+	// The amount of puts between two opportunistic sweeps of expired entries
+	private static final int SWEEP_INTERVAL = 64;
+	
+	private static final class Node<K, V> {
+		
+		final K key;
+		
+		final V value;
+		
+		final boolean pinned;
+		
+		final long weight;
+		
+		volatile int credit = 1;
+		
+		volatile long accessTime;
+		
+		volatile boolean removed = false;
+		
+		Node(K key, V value, boolean pinned, long weight, long accessTime) {
+			this.key = key;
+			this.value = value;
+			this.pinned = pinned;
+			this.weight = weight;
+			this.accessTime = accessTime;
+		}
+	}
+	
+	private final ConcurrentHashMap<K, Node<K, V>> map;
+	
+	// The clock of evictable nodes, in insertion order
+	private final ConcurrentLinkedQueue<Node<K, V>> clock = new ConcurrentLinkedQueue<Node<K, V>>();
+	
+	private final AtomicInteger evictableSize = new AtomicInteger();
+	
+	private final AtomicLong weight = new AtomicLong();
+	
+	private final LongAdder evictions = new LongAdder();
+	
+	private final AtomicInteger putsSinceSweep = new AtomicInteger();
+	
+	private final int maximumSize;
+	
+	private final long expireAfterAccessNanos;
+	
+	private final Weigher<? super K, ? super V> weigher;
+	
+	private final RemovalListener<? super K, ? super V> listener;
+	
+	/**
+	 * @param initialCapacity The initial capacity of the cache.
+	 * @param maximumSize The maximum count of evictable entries, 0 for an unbounded cache.
+	 * @param expireAfterAccessMillis The idle time after which an entry expires, 0 for no expiry.
+	 * @param weigher To estimate the footprint of the entries, may be null.
+	 * @param listener To be notified of removed entries, may be null.
+	 */
+	public BoundedCache(int initialCapacity, int maximumSize, long expireAfterAccessMillis,
+	    Weigher<? super K, ? super V> weigher, RemovalListener<? super K, ? super V> listener) {
+		this.map = new ConcurrentHashMap<K, Node<K, V>>(initialCapacity);
+		this.maximumSize = Math.max(0, maximumSize);
+		this.expireAfterAccessNanos = Math.max(0, expireAfterAccessMillis) * 1000000L;
+		this.weigher = weigher;
+		this.listener = listener;
+	}
+	
+	public BoundedCache(int initialCapacity, int maximumSize, long expireAfterAccessMillis) {
+		this(initialCapacity, maximumSize, expireAfterAccessMillis, null, null);
+	}
+	
+	private boolean isTracked() {
+		return maximumSize > 0 || expireAfterAccessNanos > 0;
+	}
+	
+	private boolean isExpired(Node<K, V> node, long now) {
+		return expireAfterAccessNanos > 0 && !node.pinned && now - node.accessTime > expireAfterAccessNanos;
+	}
+	
+	private long now() {
+		return expireAfterAccessNanos > 0 ? System.nanoTime() : 0L;
+	}
+	
+	/**
+	 * @return The value of the key, null if it is not cached.
+	 */
+	public V get(K key) {
+		return access(map.get(key));
+	}
+	
+	/**
+	 * Looks up a key through an object that is equal to it without being a key, eg. a
+	 * {@link WordFolding.Probe}: its hash code is that of the key and its equals method accepts the key.
+	 * 
+	 * @return The value of the key the probe is equal to, null if it is not cached.
+	 */
+	public V getByProbe(Object probe) {
+		return access(map.get(probe));
+	}
+	
+	private V access(Node<K, V> node) {
+		if (node == null) {
+			return null;
+		}
+		if (isTracked()) {
+			long now = now();
+			if (isExpired(node, now)) {
+				expire(node);
+				return null;
+			}
+			node.accessTime = now;
+			if (node.credit < MAX_CREDIT) {
+				node.credit++; // racy but harmless
+			}
+		}
+		return node.value;
+	}
+	
+	/**
+	 * @return The value of the key, null if it is not cached. The access is not recorded.
+	 */
+	public V peek(K key) {
+		Node<K, V> node = map.get(key);
+		return node != null ? node.value : null;
+	}
+	
+	public boolean containsKey(K key) {
+		return get(key) != null;
+	}
+	
+	/**
+	 * Caches an evictable entry.
+	 * 
+	 * @return The previous value of the key, null if there was none.
+	 */
+	public V put(K key, V value) {
+		return put(key, value, false);
+	}
+	
+	/**
+	 * Caches an entry. An entry that was pinned remains pinned when its value is replaced.
+	 * 
+	 * @param pinned Set to true for an entry that should never be evicted nor expired.
+	 * @return The previous value of the key, null if there was none.
+	 */
+	public V put(final K key, final V value, final boolean pinned) {
+		final long now = now();
+		final Node<K, V>[] replaced = newNodeArray();
+		Node<K, V> node = map.compute(key, new BiFunction<K, Node<K, V>, Node<K, V>>() {
+			
+			@Override
+			public Node<K, V> apply(K k, Node<K, V> previous) {
+				replaced[0] = previous;
+				boolean pin = pinned || (previous != null && previous.pinned);
+				return new Node<K, V>(k, value, pin, weigher != null ? weigher.weigh(k, value) : 0L, now);
+			}
+		});
+		
+		Node<K, V> previous = replaced[0];
+		if (previous != null) {
+			previous.removed = true;
+			weight.addAndGet(-previous.weight);
+			if (!previous.pinned) {
+				evictableSize.decrementAndGet();
+			}
+		}
+		weight.addAndGet(node.weight);
+		if (!node.pinned) {
+			evictableSize.incrementAndGet();
+			if (isTracked()) {
+				clock.offer(node);
+				evict(node);
+			}
+		}
+		return previous != null ? previous.value : null;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <K, V> Node<K, V>[] newNodeArray() {
+		return new Node[1];
+	}
+	
+	/**
+	 * Removes an entry, whether it is pinned or not.
+	 */
+	public V remove(K key) {
+		Node<K, V> node = map.get(key);
+		if (node != null && remove(node)) {
+			return node.value;
+		}
+		return null;
+	}
+	
+	/**
+	 * Removes an entry if it still has a value, whether it is pinned or not.
+	 * 
+	 * @return true if the entry was removed.
+	 */
+	public boolean remove(K key, V value) {
+		Node<K, V> node = map.get(key);
+		return node != null && node.value.equals(value) && remove(node);
+	}
+	
+	private boolean remove(Node<K, V> node) {
+		if (!map.remove(node.key, node)) {
+			return false;
+		}
+		node.removed = true;
+		weight.addAndGet(-node.weight);
+		if (!node.pinned) {
+			evictableSize.decrementAndGet();
+		}
+		if (listener != null) {
+			listener.onRemoval(node.key, node.value);
+		}
+		return true;
+	}
+	
+	/*
+	 * Runs the clock until the cache fits its maximum size, also sweeps some expired entries.
+	 */
+	private void evict(Node<K, V> candidate) {
+		long now = now();
+		if (expireAfterAccessNanos > 0 && putsSinceSweep.incrementAndGet() >= SWEEP_INTERVAL) {
+			putsSinceSweep.set(0);
+			for (int i = 0; i < SWEEP_INTERVAL; i++) {
+				Node<K, V> node = clock.poll();
+				if (node == null) {
+					break;
+				}
+				if (!node.removed) {
+					if (isExpired(node, now)) {
+						expire(node);
+					} else {
+						clock.offer(node);
+					}
+				}
+			}
+		}
+		if (maximumSize == 0) {
+			return;
+		}
+		// bounded, in case concurrent puts are not on the clock yet
+		int steps = (MAX_CREDIT + 2) * (evictableSize.get() + 1);
+		while (evictableSize.get() > maximumSize && steps-- > 0) {
+			Node<K, V> node = clock.poll();
+			if (node == null) {
+				return;
+			}
+			if (node.removed) {
+				continue;
+			}
+			if (isExpired(node, now) || (node.credit <= 0 && node != candidate)) {
+				expire(node);
+			} else {
+				if (node.credit > 0) {
+					node.credit--;
+				}
+				clock.offer(node);
+			}
+		}
+	}
+	
+	private void expire(Node<K, V> node) {
+		if (remove(node)) {
+			evictions.increment();
+		}
+	}
+	
+	/**
+	 * Removes all the expired entries.
+	 */
+	public void cleanUp() {
+		if (expireAfterAccessNanos == 0) {
+			return;
+		}
+		long now = now();
+		for (Node<K, V> node : map.values()) {
+			if (isExpired(node, now)) {
+				expire(node);
+			}
+		}
+	}
+	
+	public void clear() {
+		for (Node<K, V> node : map.values()) {
+			remove(node);
+		}
+	}
+	
+	/**
+	 * @return A view of the cached keys.
+	 */
+	public Set<K> keySet() {
+		return map.keySet();
+	}
+	
+	/**
+	 * @return A snapshot of the cached entries.
+	 */
+	public Map<K, V> asMap() {
+		Map<K, V> entries = new ConcurrentHashMap<K, V>(map.size());
+		for (Node<K, V> node : map.values()) {
+			entries.put(node.key, node.value);
+		}
+		return entries;
+	}
+	
+	/**
+	 * @return A boolean indicating whether the entry of the key is pinned.
+	 */
+	public boolean isPinned(K key) {
+		Node<K, V> node = map.get(key);
+		return node != null && node.pinned;
+	}
+	
+	public int size() {
+		return map.size();
+	}
+	
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+	
+	public long getExpireAfterAccessMillis() {
+		return expireAfterAccessNanos / 1000000L;
+	}
+	
+	/**
+	 * @return The count of entries that were evicted or expired.
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+	
+	/**
+	 * @return The estimated footprint of the entries in bytes, 0 without a weigher.
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+}
@@ -0,0 +1,411 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A compact table of folded words to i18n message keys, for the pinned words of the locale
+ * partitions of very large caches, eg. a preloaded national address hierarchy.
+ * <p>
+ * The words are packed one after the other in a char arena and their keys are dictionary-encoded
+ * through a {@link KeyDictionary} shared across the locales. Words are hashed into an
+ * open-addressing table of word ids, with linear probing, and are looked up through a
+ * {@link WordFolding.Probe} without allocating. A word costs about 24 bytes plus its chars, where a
+ * {@link BoundedCache} entry costs about 150 bytes plus the chars of the word and of its key.
+ * <p>
+ * Pinned words are never evicted, they are only removed when the translation of their key changes.
+ * A removed word keeps its slot and its chars with no key, as a tombstone that a later put of the
+ * same word revives. Puts and removals lock, lookups never do: a word is only visible once the
+ * count of words that is published after it was written covers its id, and the arrays are replaced
+ * as a whole when they grow.
+ * <p>
+ * An optional index of the trigrams of the words narrows down the substring searches, the same way
+ * {@link TrigramIndex} does but with postings of word ids.
+ */
+public class CompactWordTable {
+	
+	private static final int INITIAL_CAPACITY = 256;
+	
+	// The ints of each word in the words array
+	private static final int HASH = 0;
+	
+	private static final int OFFSET = 1;
+	
+	private static final int LENGTH = 2;
+	
+	private static final int KEY = 3;
+	
+	private static final int STRIDE = 4;
+	
+	private static final int N = 3;
+	
+	// The key id of a removed word
+	private static final int REMOVED = -1;
+	
+	/*
+	 * The arrays of the table, replaced as a whole so that lookups read a consistent set.
+	 */
+	private static final class Tables {
+		
+		// The word ids plus one by hash, 0 for an empty slot
+		final int[] slots;
+		
+		final int[] words;
+		
+		final char[] chars;
+		
+		Tables(int[] slots, int[] words, char[] chars) {
+			this.slots = slots;
+			this.words = words;
+			this.chars = chars;
+		}
+	}
+	
+	/*
+	 * The ids of the words containing a trigram, in insertion order.
+	 */
+	private static final class Postings {
+		
+		volatile int[] ids = new int[4];
+		
+		volatile int size = 0;
+		
+		// Only called while the table is locked
+		void add(int id) {
+			int[] ids = this.ids;
+			if (size > 0 && ids[size - 1] == id) {
+				return; // the same trigram again in the same word
+			}
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+				this.ids = ids;
+			}
+			ids[size] = id;
+			size = size + 1;
+		}
+	}
+	
+	private final KeyDictionary keys;
+	
+	private volatile Tables tables;
+	
+	private volatile int size = 0;
+	
+	private volatile int removedCount = 0;
+	
+	// The count of chars used in the arena, only accessed while locked
+	private int charsSize = 0;
+	
+	private final ConcurrentMap<Long, Postings> postings;
+	
+	/**
+	 * @param keys The dictionary of the i18n message keys, shared by the partitions of a cache.
+	 * @param substringIndexed Set to true to index the words for substring searches.
+	 */
+	public CompactWordTable(KeyDictionary keys, boolean substringIndexed) {
+		this.keys = keys;
+		this.tables = new Tables(new int[INITIAL_CAPACITY * 2], new int[INITIAL_CAPACITY * STRIDE],
+		        new char[INITIAL_CAPACITY * 16]);
+		this.postings = substringIndexed ? new ConcurrentHashMap<Long, Postings>() : null;
+	}
+	
+	/**
+	 * @param word A folded translated expression.
+	 * @return The i18n message key, null if the word is not in the table.
+	 */
+	public String get(String word) {
+		int size = this.size; // read first, see find()
+		Tables tables = this.tables;
+		return decode(tables, find(tables, size, word.hashCode(), word, null));
+	}
+	
+	/**
+	 * @param probe A probe set with a translated expression, see {@link WordFolding.Probe}.
+	 * @return The i18n message key, null if the expression is not in the table.
+	 */
+	public String get(WordFolding.Probe probe) {
+		int size = this.size;
+		Tables tables = this.tables;
+		return decode(tables, find(tables, size, probe.hashCode(), null, probe));
+	}
+	
+	private String decode(Tables tables, int id) {
+		if (id < 0) {
+			return null;
+		}
+		int keyId = tables.words[id * STRIDE + KEY];
+		return keyId != REMOVED ? keys.decode(keyId) : null;
+	}
+	
+	/*
+	 * Matches the word, or the probe when the word is null. The arrays hold at least the words below
+	 * the size that was read before them, the words above that size are skipped.
+	 */
+	private static int find(Tables tables, int size, int hash, String word, WordFolding.Probe probe) {
+		int[] slots = tables.slots;
+		int[] words = tables.words;
+		int mask = slots.length - 1;
+		for (int i = KeyDictionary.spread(hash) & mask; slots[i] != 0; i = (i + 1) & mask) {
+			int id = slots[i] - 1;
+			if (id >= size || words[id * STRIDE + HASH] != hash) {
+				continue;
+			}
+			int offset = words[id * STRIDE + OFFSET];
+			int length = words[id * STRIDE + LENGTH];
+			if (word != null ? regionEquals(word, tables.chars, offset, length) : probe.matches(tables.chars, offset,
+			    length)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+	
+	private static boolean regionEquals(String word, char[] chars, int offset, int length) {
+		if (word.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (word.charAt(i) != chars[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Puts a word, or replaces the key of a word that is already in the table.
+	 * 
+	 * @param word A folded translated expression.
+	 * @param key The i18n message key of the translated expression.
+	 * @return true if the word was not in the table.
+	 */
+	public synchronized boolean put(String word, String key) {
+		int keyId = keys.encode(key);
+		int hash = word.hashCode();
+		Tables tables = this.tables;
+		int id = find(tables, size, hash, word, null);
+		if (id >= 0) {
+			if (tables.words[id * STRIDE + KEY] == REMOVED) {
+				removedCount = removedCount - 1;
+			}
+			tables.words[id * STRIDE + KEY] = keyId;
+			return false;
+		}
+		
+		id = size;
+		tables = ensureCapacity(tables, id + 1, charsSize + word.length());
+		int[] words = tables.words;
+		words[id * STRIDE + HASH] = hash;
+		words[id * STRIDE + OFFSET] = charsSize;
+		words[id * STRIDE + LENGTH] = word.length();
+		words[id * STRIDE + KEY] = keyId;
+		word.getChars(0, word.length(), tables.chars, charsSize);
+		charsSize += word.length();
+		size = id + 1; // published before the word can be found
+		
+		int[] slots = tables.slots;
+		int mask = slots.length - 1;
+		int i = KeyDictionary.spread(hash) & mask;
+		while (slots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		slots[i] = id + 1;
+		if (size * 2 > slots.length) {
+			this.tables = new Tables(rehash(words, size, slots.length * 2), words, tables.chars);
+		}
+		
+		if (postings != null) {
+			index(word, id);
+		}
+		return true;
+	}
+	
+	/**
+	 * Removes a word if it still points to an i18n message key.
+	 * 
+	 * @param word A folded translated expression.
+	 * @param key The i18n message key the word should point to.
+	 * @return true if the word was removed.
+	 */
+	public synchronized boolean remove(String word, String key) {
+		Tables tables = this.tables;
+		int id = find(tables, size, word.hashCode(), word, null);
+		if (!key.equals(decode(tables, id))) {
+			return false;
+		}
+		tables.words[id * STRIDE + KEY] = REMOVED;
+		removedCount = removedCount + 1;
+		return true;
+	}
+	
+	/**
+	 * Removes all the words that point to some i18n message keys, going through the whole table.
+	 * 
+	 * @param keys The i18n message keys.
+	 * @param removedKeys The collection where the keys of the removed words are added.
+	 */
+	public synchronized void removeKeys(Set<String> keys, Collection<String> removedKeys) {
+		Tables tables = this.tables;
+		for (int id = 0; id < size; id++) {
+			String key = decode(tables, id);
+			if (key != null && keys.contains(key)) {
+				tables.words[id * STRIDE + KEY] = REMOVED;
+				removedCount = removedCount + 1;
+				removedKeys.add(key);
+			}
+		}
+	}
+	
+	private Tables ensureCapacity(Tables tables, int wordsCount, int charsCount) {
+		int[] words = tables.words;
+		char[] chars = tables.chars;
+		if (wordsCount * STRIDE <= words.length && charsCount <= chars.length) {
+			return tables;
+		}
+		if (wordsCount * STRIDE > words.length) {
+			words = Arrays.copyOf(words, words.length * 2);
+		}
+		if (charsCount > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charsCount));
+		}
+		tables = new Tables(tables.slots, words, chars);
+		this.tables = tables;
+		return tables;
+	}
+	
+	private static int[] rehash(int[] words, int size, int capacity) {
+		int[] slots = new int[capacity];
+		int mask = capacity - 1;
+		for (int id = 0; id < size; id++) {
+			int i = KeyDictionary.spread(words[id * STRIDE + HASH]) & mask;
+			while (slots[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			slots[i] = id + 1;
+		}
+		return slots;
+	}
+	
+	private void index(String word, int id) {
+		for (int i = 0; i + N <= word.length(); i++) {
+			Long gram = gram(word, i);
+			Postings ids = postings.get(gram);
+			if (ids == null) {
+				ids = new Postings();
+				postings.put(gram, ids);
+			}
+			ids.add(id);
+		}
+	}
+	
+	/*
+	 * The words are already folded, a trigram is packed as is
+	 */
+	private static Long gram(String word, int start) {
+		return Long.valueOf((long) word.charAt(start) << 32 | (long) word.charAt(start + 1) << 16
+		        | word.charAt(start + 2));
+	}
+	
+	/**
+	 * Collects the i18n message keys of all the words that contain a folded search string.
+	 * 
+	 * @param foldedSearch A folded search string, not empty.
+	 * @param keys The collection where matching keys are added.
+	 */
+	public void collectKeysContaining(String foldedSearch, Collection<String> keys) {
+		int size = this.size;
+		Tables tables = this.tables;
+		if (postings != null && foldedSearch.length() >= N && !hasSurrogates(foldedSearch)) {
+			Postings candidates = null;
+			for (int i = 0; i + N <= foldedSearch.length(); i++) {
+				Postings ids = postings.get(gram(foldedSearch, i));
+				if (ids == null) {
+					return;
+				}
+				if (candidates == null || ids.size < candidates.size) {
+					candidates = ids;
+				}
+			}
+			int count = candidates.size; // read first, see Postings.add()
+			int[] ids = candidates.ids;
+			for (int i = 0; i < count; i++) {
+				if (ids[i] < size) {
+					collectKeyIfContaining(tables, ids[i], foldedSearch, keys);
+				}
+			}
+			return;
+		}
+		for (int id = 0; id < size; id++) {
+			collectKeyIfContaining(tables, id, foldedSearch, keys);
+		}
+	}
+	
+	private void collectKeyIfContaining(Tables tables, int id, String foldedSearch, Collection<String> keys) {
+		char[] chars = tables.chars;
+		int offset = tables.words[id * STRIDE + OFFSET];
+		int last = offset + tables.words[id * STRIDE + LENGTH] - foldedSearch.length();
+		for (int i = offset; i <= last; i++) {
+			if (regionEquals(foldedSearch, chars, i, foldedSearch.length())) {
+				String key = decode(tables, id);
+				if (key != null) {
+					keys.add(key);
+				}
+				return;
+			}
+		}
+	}
+	
+	/*
+	 * Supplementary characters are compared as code points, they are not indexed
+	 */
+	private static boolean hasSurrogates(String str) {
+		for (int i = 0; i < str.length(); i++) {
+			if (Character.isSurrogate(str.charAt(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Copies the words and their i18n message keys, eg. to write a snapshot.
+	 * 
+	 * @param entries The map where the words and their keys are put.
+	 */
+	public void collectEntries(Map<String, String> entries) {
+		int size = this.size;
+		Tables tables = this.tables;
+		for (int id = 0; id < size; id++) {
+			String key = decode(tables, id);
+			if (key != null) {
+				entries.put(
+				    new String(tables.chars, tables.words[id * STRIDE + OFFSET], tables.words[id * STRIDE + LENGTH]), key);
+			}
+		}
+	}
+	
+	/**
+	 * @return The count of words in the table, without the removed ones.
+	 */
+	public int size() {
+		return size - removedCount;
+	}
+	
+	/**
+	 * @return The estimated memory footprint of the table in bytes, without the shared key dictionary.
+	 */
+	public long getFootprint() {
+		Tables tables = this.tables;
+		long footprint = 3 * 16 + 4L * tables.slots.length + 4L * tables.words.length + 2L * tables.chars.length;
+		if (postings != null) {
+			for (Postings ids : postings.values()) {
+				footprint += 32 + 16 + 24 + 16 + 4L * ids.ids.length; // the map node, the key and the postings
+			}
+		}
+		return footprint;
+	}
+}
@@ -0,0 +1,199 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.exti18n.ExtI18nConstants;
+
+/**
+ * The module's registry of metrics, pulled through {@link #getValues()} or through JMX once
+ * {@link #registerMBean()} was called.
+ * <p>
+ * Counters are striped {@link LongAdder}s: the instrumented classes look them up once and keep them
+ * in fields, so that counting on a hot path never contends. Gauges are computed when the metrics
+ * are pulled.
+ */
+public class ExtI18nMetrics {
+	
+	private static final Log log = LogFactory.getLog(ExtI18nMetrics.class);
+	
+	public static final String OBJECT_NAME = "org.openmrs.module." + ExtI18nConstants.MODULE_ARTIFACT_ID + ":type=Metrics";
+	
+	/**
+	 * A metric computed when it is pulled, eg. a cache size.
+	 */
+	public interface Gauge {
+		
+		public long getValue();
+	}
+	
+	private static final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+	
+	private static final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+	
+	private ExtI18nMetrics() {
+	}
+	
+	/**
+	 * @param name The name of the counter, eg. "reverseI18nCache.hits".
+	 * @return The counter, created if needed. The same counter is returned for the same name.
+	 */
+	public static LongAdder counter(String name) {
+		LongAdder counter = counters.get(name);
+		if (counter == null) {
+			LongAdder newCounter = new LongAdder();
+			counter = counters.putIfAbsent(name, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		return counter;
+	}
+	
+	/**
+	 * Registers a gauge, replacing any previous gauge with the same name.
+	 */
+	public static void gauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+	
+	/**
+	 * @return The current value of a metric, null if there is no such metric.
+	 */
+	public static Long getValue(String name) {
+		LongAdder counter = counters.get(name);
+		if (counter != null) {
+			return counter.sum();
+		}
+		Gauge gauge = gauges.get(name);
+		if (gauge != null) {
+			try {
+				return gauge.getValue();
+			}
+			catch (RuntimeException e) {
+				log.debug("The gauge " + name + " could not be computed.", e);
+				return -1L;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return The current values of all the metrics, sorted by name.
+	 */
+	public static SortedMap<String, Long> getValues() {
+		SortedMap<String, Long> values = new TreeMap<String, Long>();
+		for (String name : counters.keySet()) {
+			values.put(name, getValue(name));
+		}
+		for (String name : gauges.keySet()) {
+			values.put(name, getValue(name));
+		}
+		return values;
+	}
+	
+	/**
+	 * Exposes the metrics through the platform MBean server, one read-only attribute per metric.
+	 */
+	public static synchronized void registerMBean() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name); // left over by a previous instance of the module
+			}
+			server.registerMBean(new MetricsMBean(), name);
+		}
+		catch (JMException e) {
+			log.warn("The metrics could not be exposed through JMX.", e);
+		}
+	}
+	
+	public static synchronized void unregisterMBean() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		}
+		catch (JMException e) {
+			log.warn("The metrics could not be removed from JMX.", e);
+		}
+	}
+	
+	/*
+	 * The metrics are read-only attributes of type long, the attributes list follows the registry.
+	 */
+	private static class MetricsMBean implements DynamicMBean {
+		
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Long value = getValue(attribute);
+			if (value == null) {
+				throw new AttributeNotFoundException(attribute);
+			}
+			return value;
+		}
+		
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				Long value = getValue(attribute);
+				if (value != null) {
+					list.add(new Attribute(attribute, value));
+				}
+			}
+			return list;
+		}
+		
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("The metrics are read-only.");
+		}
+		
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+		
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		}
+		
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+			Set<String> names = new TreeSet<String>(counters.keySet());
+			names.addAll(gauges.keySet());
+			for (String name : names) {
+				attributes.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+			}
+			return new MBeanInfo(ExtI18nMetrics.class.getName(), "The " + ExtI18nConstants.MODULE_NAME + " metrics.",
+			        attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.exti18n.ExtI18nConfig;
+import org.openmrs.module.exti18n.ExtI18nConstants;
+import org.openmrs.module.exti18n.ExtI18nGlobalPropertyListener;
+import org.openmrs.module.exti18n.api.I18nInvalidation;
+import org.openmrs.module.exti18n.api.I18nInvalidationTransport;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Propagates the changes made to the i18n caches of this node to the other nodes of a cluster,
+ * through the {@link I18nInvalidationTransport} bean if there is one. Without a transport this
+ * component does nothing.
+ * <p>
+ * The changes are coalesced for a short while and then published as a single delta: the state of
+ * the reverse translation caching, whether GPs changed and the i18n message keys whose translations
+ * changed. Too many keys degrade into an invalidation of all the translations.
+ * <p>
+ * Received invalidations are applied in epoch order per publishing node. Duplicates and late
+ * invalidations are dropped, and a gap in the epochs means that some invalidations were missed, in
+ * which case everything is invalidated and the GPs are read again.
+ */
+public class I18nInvalidationBroadcaster implements I18nInvalidationTransport.Listener {
+	
+	public static final long DEFAULT_COALESCING_MILLIS = 200;
+	
+	public static final int MAX_DELTA_KEYS = 1000;
+	
+	protected final Log log = LogFactory.getLog(getClass());
+	
+	@Autowired
+	protected AddressHierarchyI18nCacheImpl ahI18nCache;
+	
+	@Autowired
+	protected ReverseI18nCacheImpl revI18nCache;
+	
+	@Autowired
+	protected ExtI18nConfig config;
+	
+	@Autowired(required = false)
+	protected I18nInvalidationTransport transport;
+	
+	private final String nodeId = UUID.randomUUID().toString();
+	
+	private final AtomicLong epoch = new AtomicLong();
+	
+	// The last epoch applied per publishing node
+	private final Map<String, Long> epochs = new HashMap<String, Long>();
+	
+	private volatile long coalescingMillis = DEFAULT_COALESCING_MILLIS;
+	
+	private ScheduledExecutorService executor;
+	
+	// The changes that are not published yet, guarded by this
+	private Boolean pendingEnabled;
+	
+	private boolean pendingEvictionPolicy;
+	
+	private boolean pendingConfig;
+	
+	private boolean pendingAllTranslations;
+	
+	private Set<String> pendingKeys = new LinkedHashSet<String>();
+	
+	private boolean pending;
+	
+	public String getNodeId() {
+		return nodeId;
+	}
+	
+	public void setTransport(I18nInvalidationTransport transport) {
+		this.transport = transport;
+	}
+	
+	public void setCoalescingMillis(long coalescingMillis) {
+		this.coalescingMillis = coalescingMillis;
+	}
+	
+	/**
+	 * Subscribes to the transport, if any.
+	 */
+	public synchronized void start() {
+		if (transport == null || executor != null) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, ExtI18nConstants.MODULE_ARTIFACT_ID + "-invalidations");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		transport.subscribe(this);
+		log.info("Propagating the i18n caches invalidations as node " + nodeId + ".");
+	}
+	
+	/**
+	 * Publishes the pending changes and unsubscribes from the transport.
+	 */
+	public void stop() {
+		ScheduledExecutorService executor;
+		synchronized (this) {
+			executor = this.executor;
+			this.executor = null;
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+			flush();
+			transport.unsubscribe(this);
+		}
+	}
+	
+	public void publishEnabled(boolean enabled) {
+		synchronized (this) {
+			pendingEnabled = enabled;
+			schedule();
+		}
+	}
+	
+	public void publishEvictionPolicyChanged() {
+		synchronized (this) {
+			pendingEvictionPolicy = true;
+			schedule();
+		}
+	}
+	
+	public void publishConfigChanged() {
+		synchronized (this) {
+			pendingConfig = true;
+			schedule();
+		}
+	}
+	
+	/**
+	 * @param keys The i18n message keys whose translations changed, null or empty when all of them may
+	 *            have.
+	 */
+	public void publishTranslationsChanged(Collection<String> keys) {
+		synchronized (this) {
+			if (CollectionUtils.isEmpty(keys) || pendingKeys.size() + keys.size() > MAX_DELTA_KEYS) {
+				pendingAllTranslations = true;
+				pendingKeys.clear();
+			} else if (!pendingAllTranslations) {
+				pendingKeys.addAll(keys);
+			}
+			schedule();
+		}
+	}
+	
+	/*
+	 * Schedules the publication of the changes once the coalescing delay elapsed, guarded by this.
+	 */
+	private void schedule() {
+		if (pending || executor == null) {
+			return;
+		}
+		pending = true;
+		executor.schedule(new Runnable() {
+			
+			@Override
+			public void run() {
+				flush();
+			}
+		}, coalescingMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Publishes the pending changes right away.
+	 */
+	public void flush() {
+		I18nInvalidation invalidation;
+		synchronized (this) {
+			if (!pending || transport == null) {
+				return;
+			}
+			invalidation = new I18nInvalidation(nodeId, epoch.incrementAndGet(), pendingEnabled, pendingEvictionPolicy,
+			        pendingConfig, pendingAllTranslations, pendingKeys);
+			pendingEnabled = null;
+			pendingEvictionPolicy = false;
+			pendingConfig = false;
+			pendingAllTranslations = false;
+			pendingKeys = new LinkedHashSet<String>();
+			pending = false;
+		}
+		try {
+			transport.publish(invalidation);
+		}
+		catch (RuntimeException e) {
+			log.warn("The i18n caches invalidation " + invalidation + " could not be published.", e);
+		}
+	}
+	
+	@Override
+	public void onInvalidation(I18nInvalidation invalidation) {
+		if (nodeId.equals(invalidation.getNodeId())) {
+			return;
+		}
+		boolean missed;
+		synchronized (epochs) {
+			Long last = epochs.get(invalidation.getNodeId());
+			if (last != null && invalidation.getEpoch() <= last) {
+				return; // duplicate or late
+			}
+			missed = last != null && invalidation.getEpoch() > last + 1;
+			epochs.put(invalidation.getNodeId(), invalidation.getEpoch());
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Applying " + invalidation + (missed ? " after missed invalidations." : "."));
+		}
+		
+		boolean opened = openSession(); // delivered on the transport's threads, outside of any request
+		try {
+			apply(invalidation, missed);
+		}
+		finally {
+			if (opened) {
+				closeSession();
+			}
+		}
+	}
+	
+	/*
+	 * Applies a received invalidation, the GPs and the i18n messages are read again through the
+	 * services.
+	 */
+	private void apply(I18nInvalidation invalidation, boolean missed) {
+		if (missed) {
+			reloadGlobalProperties(true, true, true);
+			ahI18nCache.invalidateTranslations();
+			revI18nCache.invalidateTranslations();
+			return;
+		}
+		if (invalidation.getEnabled() != null) {
+			ahI18nCache.setEnabled(invalidation.getEnabled());
+			revI18nCache.setEnabled(invalidation.getEnabled());
+		}
+		if (invalidation.isEvictionPolicy() || invalidation.isConfig()) {
+			reloadGlobalProperties(false, invalidation.isEvictionPolicy(), invalidation.isConfig());
+		}
+		if (invalidation.isAllTranslations()) {
+			ahI18nCache.invalidateTranslations();
+			revI18nCache.invalidateTranslations();
+		} else if (!invalidation.getKeys().isEmpty()) {
+			ahI18nCache.updateTranslations(null, invalidation.getKeys()); // the locales of the changes are not published
+			revI18nCache.updateTranslations(null, invalidation.getKeys());
+		}
+	}
+	
+	/**
+	 * Applies the GPs again, they are shared by all the nodes through the database. This is called
+	 * within the session opened for the received invalidation.
+	 */
+	protected void reloadGlobalProperties(boolean enabled, boolean evictionPolicy, boolean config) {
+		if (enabled) {
+			boolean enable = Boolean.parseBoolean(Context.getAdministrationService().getGlobalProperty(
+			    ExtI18nConstants.GLOBAL_PROP_REV_I18N_SUPPORT, Boolean.TRUE.toString()));
+			ahI18nCache.setEnabled(enable);
+			revI18nCache.setEnabled(enable);
+		}
+		if (evictionPolicy) {
+			ExtI18nGlobalPropertyListener.setEvictionPolicy(Context.getAdministrationService(), ahI18nCache, revI18nCache);
+		}
+		if (config) {
+			ExtI18nGlobalPropertyListener.setConfig(Context.getAdministrationService(), this.config);
+		}
+	}
+	
+	/**
+	 * Opens a session for a received invalidation, that is delivered outside of any request.
+	 * 
+	 * @return true if a session was opened, false if the thread already had one.
+	 */
+	protected boolean openSession() {
+		if (Context.isSessionOpen()) {
+			return false;
+		}
+		Context.openSession();
+		return true;
+	}
+	
+	/**
+	 * Closes a session opened by {@link #openSession()}.
+	 */
+	protected void closeSession() {
+		Context.closeSession();
+	}
+}
@@ -0,0 +1,94 @@
+package org.openmrs.module.exti18n.api.impl;
+
+/**
+ * A dictionary encoding of i18n message keys to int ids, shared by the locale partitions of a
+ * compact cache so that a key reverse translated in several locales is held once, see
+ * {@link CompactWordTable}.
+ * <p>
+ * Keys are hashed into an open-addressing table of ids, with linear probing. Keys are never
+ * removed, a dictionary is dropped along with its cache when the cache is reset. Encoding locks,
+ * decoding never does.
+ */
+public class KeyDictionary {
+	
+	private static final int INITIAL_CAPACITY = 256;
+	
+	// The keys by id, replaced when grown
+	private volatile String[] keys = new String[INITIAL_CAPACITY];
+	
+	private volatile int size = 0;
+	
+	// The ids plus one of the keys by hash, 0 for an empty slot, only accessed while locked
+	private int[] slots = new int[INITIAL_CAPACITY * 2];
+	
+	private volatile long charsCount = 0;
+	
+	/**
+	 * @param key An i18n message key.
+	 * @return The id of the key, a new id if the key was not encoded yet.
+	 */
+	public synchronized int encode(String key) {
+		int mask = slots.length - 1;
+		int i = spread(key.hashCode()) & mask;
+		for (int slot = slots[i]; slot != 0; slot = slots[i]) {
+			if (keys[slot - 1].equals(key)) {
+				return slot - 1;
+			}
+			i = (i + 1) & mask;
+		}
+		
+		int id = size;
+		String[] keys = this.keys;
+		if (id == keys.length) {
+			String[] grown = new String[keys.length * 2];
+			System.arraycopy(keys, 0, grown, 0, id);
+			keys = grown;
+		}
+		keys[id] = key;
+		this.keys = keys;
+		charsCount += key.length();
+		size = id + 1; // published before the id is handed out
+		slots[i] = id + 1;
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		return id;
+	}
+	
+	private void rehash(int capacity) {
+		int[] rehashed = new int[capacity];
+		int mask = capacity - 1;
+		for (int id = 0; id < size; id++) {
+			int i = spread(keys[id].hashCode()) & mask;
+			while (rehashed[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			rehashed[i] = id + 1;
+		}
+		slots = rehashed;
+	}
+	
+	static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+	
+	/**
+	 * @param id An id returned by {@link #encode(String)}.
+	 * @return The i18n message key of the id.
+	 */
+	public String decode(int id) {
+		return keys[id];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return The estimated memory footprint of the dictionary in bytes, including its keys.
+	 */
+	public long getFootprint() {
+		int capacity = keys.length;
+		return 2 * 16 + 4L * capacity + 4L * capacity * 2 + 40L * size + 2 * charsCount;
+	}
+}
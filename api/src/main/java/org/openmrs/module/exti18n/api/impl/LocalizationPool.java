@@ -0,0 +1,57 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import org.openmrs.module.exti18n.ExtI18nConstants;
+
+/**
+ * The module's own fork-join pool for localizing large collections in parallel. It is bounded to the
+ * number of available processors and created on first use, so that it costs nothing as long as the
+ * parallel localization is not used.
+ */
+public class LocalizationPool {
+	
+	private static ForkJoinPool pool;
+	
+	private LocalizationPool() {
+	}
+	
+	/**
+	 * @return The pool, created if needed.
+	 */
+	public static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			final ClassLoader classLoader = LocalizationPool.class.getClassLoader();
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinWorkerThreadFactory() {
+				
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					thread.setName(ExtI18nConstants.MODULE_ARTIFACT_ID + "-l10n-" + thread.getPoolIndex());
+					thread.setContextClassLoader(classLoader);
+					return thread;
+				}
+			}, null, false);
+		}
+		return pool;
+	}
+	
+	/**
+	 * Shuts the pool down, waiting briefly for the running localizations to complete.
+	 */
+	public static synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			try {
+				pool.awaitTermination(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			pool = null;
+		}
+	}
+}
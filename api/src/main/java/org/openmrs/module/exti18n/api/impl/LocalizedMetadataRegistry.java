@@ -0,0 +1,192 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.OpenmrsMetadata;
+import org.openmrs.module.exti18n.ExtI18nConstants;
+import org.openmrs.util.OpenmrsClassLoader;
+
+/**
+ * The metadata classes that are localized and their localized fields, as configured by the
+ * {@link ExtI18nConstants#GLOBAL_PROP_L10N_METADATA} global property, eg.
+ * "Location:name,description;VisitType:name,description". Class names without a package are
+ * resolved in the 'org.openmrs' package.
+ * <p>
+ * The plan of a configured class, ie. its compiled field accessors, is built once when the registry
+ * is parsed. Any other class, eg. a Hibernate proxy, is dispatched to the plan of its closest
+ * configured superclass through a {@link ClassValue}, so that checking an entity is one lookup
+ * however many classes are configured. A configuration change replaces the registry as a whole.
+ */
+public class LocalizedMetadataRegistry {
+	
+	private static final Log log = LogFactory.getLog(LocalizedMetadataRegistry.class);
+	
+	private static final String DEFAULT_PACKAGE = "org.openmrs.";
+	
+	private static final LocalizedMetadataRegistry DEFAULT = parse(ExtI18nConstants.DEFAULT_L10N_METADATA);
+	
+	/**
+	 * The localized fields of a metadata class and their compiled accessors.
+	 */
+	public static final class Plan {
+		
+		private final Class<?> metadataClass;
+		
+		private final List<String> fields;
+		
+		private final StringPropertyAccessors accessors;
+		
+		Plan(Class<?> metadataClass, List<String> fields) throws NoSuchMethodException {
+			this.metadataClass = metadataClass;
+			this.fields = fields;
+			this.accessors = new StringPropertyAccessors(metadataClass, fields);
+		}
+		
+		/**
+		 * @return The configured class this plan was built for.
+		 */
+		public Class<?> getMetadataClass() {
+			return metadataClass;
+		}
+		
+		/**
+		 * @return The names of the localized fields, the same list for as long as the registry lives.
+		 */
+		public List<String> getFields() {
+			return fields;
+		}
+		
+		/**
+		 * @return The values of the localized fields of the metadata, in the order of the fields.
+		 */
+		public String[] getValues(Object metadata) throws InvocationTargetException {
+			String[] values = new String[accessors.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = accessors.get(metadata, i);
+			}
+			return values;
+		}
+		
+		/**
+		 * Sets the values of the localized fields of the metadata, in the order of the fields.
+		 */
+		public void setValues(Object metadata, String[] values) throws InvocationTargetException {
+			for (int i = 0; i < values.length; i++) {
+				accessors.set(metadata, i, values[i]);
+			}
+		}
+	}
+	
+	// The plans of the configured classes, in the configuration order
+	private final Map<Class<?>, Plan> configuredPlans;
+	
+	private final Class<?>[] coveredClasses;
+	
+	// The plan of each class, null when not covered
+	private final ClassValue<Plan> plans = new ClassValue<Plan>() {
+		
+		@Override
+		protected Plan computeValue(Class<?> clazz) {
+			for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+				Plan plan = configuredPlans.get(c);
+				if (plan != null) {
+					return plan;
+				}
+			}
+			return null;
+		}
+	};
+	
+	protected LocalizedMetadataRegistry(Map<Class<?>, Plan> configuredPlans) {
+		this.configuredPlans = configuredPlans;
+		this.coveredClasses = configuredPlans.keySet().toArray(new Class<?>[configuredPlans.size()]);
+	}
+	
+	/**
+	 * @return The registry of the metadata that is localized by default.
+	 */
+	public static LocalizedMetadataRegistry getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * Parses the configuration of the localized metadata, the invalid entries are logged and skipped.
+	 * 
+	 * @param config Entries separated by semicolons or new lines, each made of a class name followed by
+	 *            a colon and a comma separated list of String properties of the class.
+	 * @return The registry of the configured metadata.
+	 */
+	public static LocalizedMetadataRegistry parse(String config) {
+		Map<Class<?>, Plan> plans = new LinkedHashMap<Class<?>, Plan>();
+		for (String entry : StringUtils.split(StringUtils.defaultString(config), ";\n")) {
+			if (StringUtils.isBlank(entry)) {
+				continue;
+			}
+			String className = StringUtils.trim(StringUtils.substringBefore(entry, ":"));
+			List<String> fields = new ArrayList<String>();
+			for (String field : StringUtils.split(StringUtils.substringAfter(entry, ":"), ",")) {
+				if (StringUtils.isNotBlank(field)) {
+					fields.add(field.trim());
+				}
+			}
+			if (fields.isEmpty()) {
+				log.warn("No localized fields configured for '" + className + "', it is not localized.");
+				continue;
+			}
+			try {
+				Class<?> clazz = loadClass(className);
+				if (!OpenmrsMetadata.class.isAssignableFrom(clazz)) {
+					log.warn("'" + className + "' is not a metadata class, it is not localized.");
+					continue;
+				}
+				plans.put(clazz, new Plan(clazz, Collections.unmodifiableList(fields)));
+			}
+			catch (ClassNotFoundException e) {
+				log.warn("The metadata class '" + className + "' could not be found, it is not localized.");
+			}
+			catch (NoSuchMethodException e) {
+				log.warn("The localized fields of '" + className + "' are invalid, it is not localized: "
+				        + e.getMessage());
+			}
+		}
+		return new LocalizedMetadataRegistry(plans);
+	}
+	
+	private static Class<?> loadClass(String className) throws ClassNotFoundException {
+		if (className.indexOf('.') < 0) {
+			className = DEFAULT_PACKAGE + className;
+		}
+		return OpenmrsClassLoader.getInstance().loadClass(className);
+	}
+	
+	/**
+	 * @param clazz The class of an entity.
+	 * @return The plan of the entity class, null when it is not localized.
+	 */
+	public Plan getPlan(Class<?> clazz) {
+		return plans.get(clazz);
+	}
+	
+	/**
+	 * @return A boolean indicating whether entities of this class are localized.
+	 */
+	public boolean isCovered(Class<?> clazz) {
+		return plans.get(clazz) != null;
+	}
+	
+	/**
+	 * @return The configured metadata classes, the same array for the lifetime of the registry. It is
+	 *         not to be modified.
+	 */
+	public Class<?>[] getCoveredClasses() {
+		return coveredClasses;
+	}
+}
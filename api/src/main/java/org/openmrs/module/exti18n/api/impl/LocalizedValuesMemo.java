@@ -0,0 +1,151 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded memo of the localized field values of entities, keyed by entity uuid, date changed and
+ * locale. Localizing an unchanged entity again then boils down to copying the memoized values.
+ * <p>
+ * An entry is only a hit when the entity's field values are still the i18n keys that were localized
+ * into the memoized values, so that unsaved changes of an entity are never overwritten. Entries are
+ * also stamped with:
+ * <ul>
+ * <li>the memo's generation, bumped by {@link #invalidateAll()},</li>
+ * <li>the translations version of the reverse i18n cache, that changes when the i18n messages
+ * change.</li>
+ * </ul>
+ * Stale entries are simply ignored and replaced.
+ */
+public class LocalizedValuesMemo {
+	
+	public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+	
+	/*
+	 * The localized values of one entity in one locale.
+	 */
+	private static final class Values {
+		
+		private final long generation;
+		
+		private final long translationsVersion;
+		
+		private final String[] keys;
+		
+		private final String[] values;
+		
+		Values(long generation, long translationsVersion, String[] keys, String[] values) {
+			this.generation = generation;
+			this.translationsVersion = translationsVersion;
+			this.keys = keys;
+			this.values = values;
+		}
+	}
+	
+	/*
+	 * The localized values of one version of an entity, per locale.
+	 */
+	private static final class Entity {
+		
+		private final long dateChanged;
+		
+		private final ConcurrentMap<Locale, Values> locales = new ConcurrentHashMap<Locale, Values>(4);
+		
+		Entity(long dateChanged) {
+			this.dateChanged = dateChanged;
+		}
+	}
+	
+	// Stands for the null locale in the concurrent maps
+	private static final Locale NO_LOCALE = new Locale("");
+	
+	private final AtomicLong generation = new AtomicLong();
+	
+	private final BoundedCache<String, Entity> entities;
+	
+	public LocalizedValuesMemo() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+	
+	public LocalizedValuesMemo(int maximumSize) {
+		entities = new BoundedCache<String, Entity>(256, maximumSize, 0);
+	}
+	
+	/**
+	 * @return The current generation, to be read before localizing the values to be memoized.
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+	
+	/**
+	 * @param uuid The entity uuid.
+	 * @param dateChanged The entity date changed, null if it was never changed.
+	 * @param locale The locale of the localized values.
+	 * @param keys The current field values of the entity.
+	 * @param translationsVersion The current translations version of the reverse i18n cache.
+	 * @return The memoized localized values, null when there are none or they are stale.
+	 */
+	public String[] get(String uuid, Date dateChanged, Locale locale, String[] keys, long translationsVersion) {
+		Entity entity = entities.get(uuid);
+		if (entity == null || entity.dateChanged != toMillis(dateChanged)) {
+			return null;
+		}
+		Values values = entity.locales.get(locale != null ? locale : NO_LOCALE);
+		if (values == null || values.generation != generation.get()
+		        || values.translationsVersion != translationsVersion || !Arrays.equals(values.keys, keys)) {
+			return null;
+		}
+		return values.values;
+	}
+	
+	/**
+	 * Memoizes the localized values of an entity.
+	 * 
+	 * @param generation The generation read before the values were localized.
+	 * @see #get(String, Date, Locale, String[], long)
+	 */
+	public void put(String uuid, Date dateChanged, Locale locale, String[] keys, String[] localizedValues,
+	        long translationsVersion, long generation) {
+		if (uuid == null || generation != this.generation.get()) {
+			return;
+		}
+		long millis = toMillis(dateChanged);
+		Entity entity = entities.get(uuid);
+		if (entity == null || entity.dateChanged != millis) {
+			entity = new Entity(millis);
+			entities.put(uuid, entity);
+		}
+		entity.locales.put(locale != null ? locale : NO_LOCALE, new Values(generation, translationsVersion, keys,
+		        localizedValues));
+	}
+	
+	/**
+	 * Drops the memoized values of an entity, eg. when it is saved.
+	 */
+	public void invalidate(String uuid) {
+		if (uuid != null) {
+			entities.remove(uuid);
+		}
+	}
+	
+	/**
+	 * Drops all the memoized values.
+	 */
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		entities.clear();
+	}
+	
+	public int size() {
+		return entities.size();
+	}
+	
+	private static long toMillis(Date date) {
+		return date != null ? date.getTime() : Long.MIN_VALUE;
+	}
+}
@@ -0,0 +1,371 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.AbstractSequentialList;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Views of collections that localize each element on first access, so that only the elements that
+ * are actually read get localized. A view has the same collection type as the original collection
+ * (list, set or plain collection) and writes through to it.
+ * <p>
+ * Like the collections they wrap, the views are not thread-safe.
+ */
+public class LocalizingCollections {
+	
+	/**
+	 * Localizes one element of a collection in place.
+	 */
+	public interface ElementLocalizer {
+		
+		void l10n(Object element);
+	}
+	
+	/**
+	 * Implemented by all views.
+	 */
+	public interface LocalizingView {
+		
+		/**
+		 * @return The wrapped collection, whose elements may or may not have been localized yet.
+		 */
+		Collection<?> getOriginal();
+	}
+	
+	private LocalizingCollections() {
+	}
+	
+	/**
+	 * @param original A collection of instances to be localized.
+	 * @param localizer The element localizer.
+	 * @return A view of the same collection type as the original collection.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Collection<Object> view(Collection<?> original, ElementLocalizer localizer) {
+		if (original instanceof LocalizingView) {
+			return (Collection<Object>) original;
+		}
+		if (original instanceof List<?>) {
+			if (original instanceof RandomAccess) {
+				return new RandomAccessList((List<Object>) original, localizer);
+			}
+			return new SequentialList((List<Object>) original, localizer);
+		}
+		if (original instanceof Set<?>) {
+			return new LocalizingSet((Set<Object>) original, localizer);
+		}
+		return new LocalizingCollection((Collection<Object>) original, localizer);
+	}
+	
+	/*
+	 * Tracks the localized elements by identity, the tracking set is only allocated on first access.
+	 */
+	private static class IdentityTracker {
+		
+		private final ElementLocalizer localizer;
+		
+		private Set<Object> localized;
+		
+		IdentityTracker(ElementLocalizer localizer) {
+			this.localizer = localizer;
+		}
+		
+		Object l10n(Object element) {
+			if (element == null) {
+				return null;
+			}
+			if (localized == null) {
+				localized = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			}
+			if (localized.add(element)) {
+				localizer.l10n(element);
+			}
+			return element;
+		}
+	}
+	
+	/*
+	 * An iterator localizing the elements it returns.
+	 */
+	private static class LocalizingIterator implements Iterator<Object> {
+		
+		private final Iterator<Object> iterator;
+		
+		private final IdentityTracker tracker;
+		
+		LocalizingIterator(Iterator<Object> iterator, IdentityTracker tracker) {
+			this.iterator = iterator;
+			this.tracker = tracker;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+		
+		@Override
+		public Object next() {
+			return tracker.l10n(iterator.next());
+		}
+		
+		@Override
+		public void remove() {
+			iterator.remove();
+		}
+	}
+	
+	/*
+	 * The elements of array backed lists are tracked by index. Any structural change localizes all
+	 * remaining elements first, so that the indexes never need to be shifted. An element that is set
+	 * or added is localized on first access, like the original elements.
+	 */
+	private static class RandomAccessList extends AbstractList<Object> implements RandomAccess, LocalizingView {
+		
+		private final List<Object> original;
+		
+		private final ElementLocalizer localizer;
+		
+		private BitSet localized;
+		
+		private boolean all = false;
+		
+		RandomAccessList(List<Object> original, ElementLocalizer localizer) {
+			this.original = original;
+			this.localizer = localizer;
+		}
+		
+		@Override
+		public Collection<?> getOriginal() {
+			return original;
+		}
+		
+		@Override
+		public Object get(int index) {
+			Object element = original.get(index);
+			if (all || element == null) {
+				return element;
+			}
+			if (localized == null) {
+				localized = new BitSet();
+			}
+			if (localized.get(index)) {
+				return element;
+			}
+			localized.set(index);
+			localizer.l10n(element);
+			return element;
+		}
+		
+		@Override
+		public int size() {
+			return original.size();
+		}
+		
+		@Override
+		public Object set(int index, Object element) {
+			Object previous = get(index);
+			original.set(index, element);
+			unmark(index);
+			return previous;
+		}
+		
+		@Override
+		public void add(int index, Object element) {
+			l10nAll();
+			original.add(index, element);
+			unmark(index);
+			modCount++;
+		}
+		
+		@Override
+		public Object remove(int index) {
+			Object previous = get(index);
+			l10nAll();
+			original.remove(index);
+			modCount++;
+			return previous;
+		}
+		
+		/*
+		 * The element at the index is no longer localized
+		 */
+		private void unmark(int index) {
+			if (all) {
+				localized = new BitSet();
+				localized.set(0, original.size());
+				all = false;
+			}
+			if (localized != null) {
+				localized.clear(index);
+			}
+		}
+		
+		private void l10nAll() {
+			if (!all) {
+				for (int i = 0; i < original.size(); i++) {
+					get(i);
+				}
+				all = true;
+				localized = null;
+			}
+		}
+	}
+	
+	private static class SequentialList extends AbstractSequentialList<Object> implements LocalizingView {
+		
+		private final List<Object> original;
+		
+		private final IdentityTracker tracker;
+		
+		SequentialList(List<Object> original, ElementLocalizer localizer) {
+			this.original = original;
+			this.tracker = new IdentityTracker(localizer);
+		}
+		
+		@Override
+		public Collection<?> getOriginal() {
+			return original;
+		}
+		
+		@Override
+		public int size() {
+			return original.size();
+		}
+		
+		@Override
+		public ListIterator<Object> listIterator(int index) {
+			final ListIterator<Object> iterator = original.listIterator(index);
+			return new ListIterator<Object>() {
+				
+				@Override
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+				
+				@Override
+				public Object next() {
+					return tracker.l10n(iterator.next());
+				}
+				
+				@Override
+				public boolean hasPrevious() {
+					return iterator.hasPrevious();
+				}
+				
+				@Override
+				public Object previous() {
+					return tracker.l10n(iterator.previous());
+				}
+				
+				@Override
+				public int nextIndex() {
+					return iterator.nextIndex();
+				}
+				
+				@Override
+				public int previousIndex() {
+					return iterator.previousIndex();
+				}
+				
+				@Override
+				public void remove() {
+					iterator.remove();
+				}
+				
+				@Override
+				public void set(Object element) {
+					iterator.set(element);
+				}
+				
+				@Override
+				public void add(Object element) {
+					iterator.add(element);
+				}
+			};
+		}
+	}
+	
+	private static class LocalizingSet extends AbstractSet<Object> implements LocalizingView {
+		
+		private final Set<Object> original;
+		
+		private final IdentityTracker tracker;
+		
+		LocalizingSet(Set<Object> original, ElementLocalizer localizer) {
+			this.original = original;
+			this.tracker = new IdentityTracker(localizer);
+		}
+		
+		@Override
+		public Collection<?> getOriginal() {
+			return original;
+		}
+		
+		@Override
+		public Iterator<Object> iterator() {
+			return new LocalizingIterator(original.iterator(), tracker);
+		}
+		
+		@Override
+		public int size() {
+			return original.size();
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			return original.contains(o);
+		}
+		
+		@Override
+		public boolean add(Object e) {
+			return original.add(e);
+		}
+		
+		@Override
+		public boolean remove(Object o) {
+			return original.remove(o);
+		}
+	}
+	
+	private static class LocalizingCollection extends AbstractCollection<Object> implements LocalizingView {
+		
+		private final Collection<Object> original;
+		
+		private final IdentityTracker tracker;
+		
+		LocalizingCollection(Collection<Object> original, ElementLocalizer localizer) {
+			this.original = original;
+			this.tracker = new IdentityTracker(localizer);
+		}
+		
+		@Override
+		public Collection<?> getOriginal() {
+			return original;
+		}
+		
+		@Override
+		public Iterator<Object> iterator() {
+			return new LocalizingIterator(original.iterator(), tracker);
+		}
+		
+		@Override
+		public int size() {
+			return original.size();
+		}
+		
+		@Override
+		public boolean add(Object e) {
+			return original.add(e);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.openmrs.module.exti18n.api.I18nInvalidation;
+import org.openmrs.module.exti18n.api.I18nInvalidationTransport;
+
+/**
+ * An in-process transport that delivers the invalidations synchronously to all the listeners that
+ * subscribed to the same instance, eg. to several nodes simulated in a test. Invalidations are
+ * serialized on the way, like a network transport would.
+ */
+public class LoopbackI18nInvalidationTransport implements I18nInvalidationTransport {
+	
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	
+	@Override
+	public void publish(I18nInvalidation invalidation) {
+		for (Listener listener : listeners) {
+			listener.onInvalidation(copy(invalidation));
+		}
+	}
+	
+	@Override
+	public void subscribe(Listener listener) {
+		listeners.add(listener);
+	}
+	
+	@Override
+	public void unsubscribe(Listener listener) {
+		listeners.remove(listener);
+	}
+	
+	private static I18nInvalidation copy(I18nInvalidation invalidation) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(invalidation);
+			out.close();
+			return (I18nInvalidation) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
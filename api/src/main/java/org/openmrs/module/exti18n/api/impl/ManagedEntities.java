@@ -0,0 +1,128 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openmrs.api.context.Context;
+
+/**
+ * Marks entities read-only or writable in the current Hibernate session, provided that they are
+ * managed by it. Read-only entities are not dirty checked when the session is flushed, so their
+ * localized values are neither seen as changes nor saved.
+ * <p>
+ * Marking an entity writable again makes its current state its new snapshot, so the i18n message
+ * keys and the localized values of the entities marked read-only are remembered: the keys are put
+ * back before the entity is made writable, so that its snapshot matches the database, and the
+ * values edited meanwhile are then applied again to be seen as changes.
+ */
+public class ManagedEntities {
+	
+	protected final Log log = LogFactory.getLog(getClass());
+	
+	private volatile SessionFactory sessionFactory;
+	
+	/**
+	 * The i18n message keys of the localized fields of an entity and the values they were localized
+	 * to, in the order of the fields.
+	 */
+	public static final class LocalizedState {
+		
+		private final WeakReference<Object> entity;
+		
+		private final String[] keys;
+		
+		private final String[] values;
+		
+		private LocalizedState(Object entity, String[] keys, String[] values) {
+			this.entity = new WeakReference<Object>(entity);
+			this.keys = keys;
+			this.values = values;
+		}
+		
+		public String[] getKeys() {
+			return keys;
+		}
+		
+		public String[] getValues() {
+			return values;
+		}
+	}
+	
+	// Weakly keyed, the entities are dropped along with their session
+	private final Map<Object, LocalizedState> states = Collections
+	        .synchronizedMap(new WeakHashMap<Object, LocalizedState>());
+	
+	/**
+	 * @return The current Hibernate session, null if there is none.
+	 */
+	protected Session getSession() {
+		try {
+			SessionFactory factory = sessionFactory;
+			if (factory == null) {
+				factory = Context.getRegisteredComponent("sessionFactory", SessionFactory.class);
+				sessionFactory = factory;
+			}
+			return factory.getCurrentSession();
+		}
+		catch (RuntimeException e) {
+			log.debug("No current Hibernate session to track the localized entities.", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Marks a managed entity read-only, its current state becomes its new snapshot.
+	 */
+	public void markReadOnly(Object entity) {
+		Session session = getSession();
+		if (session != null && session.contains(entity) && !session.isReadOnly(entity)) {
+			session.setReadOnly(entity, true);
+		}
+	}
+	
+	/**
+	 * Marks a managed entity writable again, its current state becomes its new snapshot.
+	 */
+	public void markWritable(Object entity) {
+		Session session = getSession();
+		if (session != null && session.contains(entity) && session.isReadOnly(entity)) {
+			session.setReadOnly(entity, false);
+		}
+	}
+	
+	/**
+	 * Remembers the localized state of an entity marked read-only.
+	 * 
+	 * @param keys The i18n message keys of the localized fields, as in the database.
+	 * @param values The localized values of the fields.
+	 */
+	public void rememberLocalizedState(Object entity, String[] keys, String[] values) {
+		if (keys != null && values != null && keys.length == values.length) {
+			states.put(entity, new LocalizedState(entity, keys, values));
+		}
+	}
+	
+	/**
+	 * Forgets the localized state of an entity.
+	 * 
+	 * @return The localized state of the entity, null if none was remembered.
+	 */
+	public LocalizedState forgetLocalizedState(Object entity) {
+		LocalizedState state = states.remove(entity);
+		return state != null && state.entity.get() == entity ? state : null; // not an equal entity of another session
+	}
+	
+	/**
+	 * @return true if the entity is managed by the current session and is read-only.
+	 */
+	public boolean isReadOnly(Object entity) {
+		Session session = getSession();
+		return session != null && session.contains(entity) && session.isReadOnly(entity);
+	}
+}
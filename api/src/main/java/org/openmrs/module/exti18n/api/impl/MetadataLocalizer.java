@@ -1,42 +1,125 @@
 package org.openmrs.module.exti18n.api.impl;
 
-import org.openmrs.BaseOpenmrsMetadata;
-import org.openmrs.Location;
-import org.openmrs.PatientIdentifierType;
-import org.openmrs.PersonAttributeType;
-import org.openmrs.VisitType;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openmrs.OpenmrsMetadata;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.exti18n.ExtI18nConstants;
 import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.LocalizedMetadataRegistry.Plan;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+/**
+ * Localizes the fields of the metadata classes configured in the
+ * {@link ExtI18nConstants#GLOBAL_PROP_L10N_METADATA} global property, see
+ * {@link LocalizedMetadataRegistry}.
+ */
 public class MetadataLocalizer extends BaseLocalizer<ReverseI18nCache> {
 	
+	@Override
+	public Class<?>[] getCoveredClasses() {
+		return getLocalizedMetadata().getCoveredClasses();
+	}
+	
 	@Override
 	protected boolean filter(Object original) {
-		Class<?> clazz = original.getClass();
-		return Location.class.isAssignableFrom(clazz) || VisitType.class.isAssignableFrom(clazz)
-		        || PersonAttributeType.class.isAssignableFrom(clazz) || PatientIdentifierType.class.isAssignableFrom(clazz);
+		return getLocalizedMetadata().isCovered(original.getClass());
+	}
+	
+	/**
+	 * @return The localized metadata classes and their localized fields.
+	 */
+	public LocalizedMetadataRegistry getLocalizedMetadata() {
+		return config != null ? config.getLocalizedMetadata() : LocalizedMetadataRegistry.getDefault();
 	}
 	
 	@Autowired
 	@Qualifier(ExtI18nConstants.COMPONENT_REVI18N)
 	private ReverseI18nCache cache;
 	
+	@Autowired(required = false)
+	@Qualifier(ExtI18nConstants.COMPONENT_L10N_MEMO)
+	protected LocalizedValuesMemo memo;
+	
+	private final LongAdder localizedFields = ExtI18nMetrics.counter(metricsName + ".fields");
+	
+	private final LongAdder memoHits = ExtI18nMetrics.counter(metricsName + ".memoHits");
+	
 	@Override
 	protected ReverseI18nCache getCache() {
 		return cache;
 	}
 	
+	/*
+	 * Repeat localizations of an unchanged metadata just copy the memoized values.
+	 */
 	@Override
 	protected Object process(Object original, ReverseI18nCache cache) throws Exception {
-		if (PatientIdentifierType.class.isAssignableFrom(original.getClass())) {
-			original = l10nPatientIdentifierType((PatientIdentifierType) original, cache);
-		} else if (PersonAttributeType.class.isAssignableFrom(original.getClass())) {
-			original = l10nDescription((BaseOpenmrsMetadata) original, cache);
-		} else {
-			original = l10nMetadata((BaseOpenmrsMetadata) original, cache);
+		Plan plan = getLocalizedMetadata().getPlan(original.getClass());
+		if (plan == null) {
+			return original; // no longer covered
+		}
+		OpenmrsMetadata metadata = (OpenmrsMetadata) original;
+		String[] keys = plan.getValues(metadata);
+		localizedFields.add(keys.length);
+		if (memo == null || metadata.getUuid() == null) {
+			plan.setValues(metadata, l10n(keys, cache));
+			return metadata;
+		}
+		
+		Locale locale = Context.getLocale();
+		long generation = memo.getGeneration();
+		long translationsVersion = cache.getTranslationsVersion();
+		String[] values = memo.get(metadata.getUuid(), metadata.getDateChanged(), locale, keys, translationsVersion);
+		if (values != null) {
+			memoHits.increment();
+			for (int i = 0; i < keys.length; i++) {
+				cache.touchMessage(keys[i], values[i]); // not evicted while displayed
+			}
+			plan.setValues(metadata, values);
+			return metadata;
+		}
+		
+		values = l10n(keys, cache);
+		plan.setValues(metadata, values);
+		memo.put(metadata.getUuid(), metadata.getDateChanged(), locale, keys, values, translationsVersion, generation);
+		return metadata;
+	}
+	
+	private static String[] l10n(String[] keys, ReverseI18nCache cache) {
+		String[] values = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			values[i] = cache.getMessage(keys[i]);
+		}
+		return values;
+	}
+	
+	@Override
+	protected String[] getLocalizedValues(Object entity, ReverseI18nCache cache) throws Exception {
+		Plan plan = getLocalizedMetadata().getPlan(entity.getClass());
+		return plan != null ? plan.getValues(entity) : null;
+	}
+	
+	@Override
+	protected void setLocalizedValues(Object entity, String[] values, ReverseI18nCache cache) throws Exception {
+		Plan plan = getLocalizedMetadata().getPlan(entity.getClass());
+		if (plan != null && plan.getFields().size() == values.length) {
+			plan.setValues(entity, values);
+		}
+	}
+	
+	@Override
+	protected void i18n(Object entity, ReverseI18nCache cache) throws Exception {
+		Plan plan = getLocalizedMetadata().getPlan(entity.getClass());
+		if (plan == null) {
+			return;
+		}
+		String[] values = plan.getValues(entity);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = cache.getMessageKey(values[i]);
 		}
-		return original;
+		plan.setValues(entity, values);
 	}
 }
@@ -1,42 +1,377 @@
 package org.openmrs.module.exti18n.api.impl;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang.LocaleUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
 import org.openmrs.messagesource.MessageSourceService;
+import org.openmrs.messagesource.PresentationMessage;
 import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nPartition.Translation;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nSnapshot.Entry;
+import org.openmrs.util.LocaleUtility;
 
 /**
  * The reverse translation cache that allows to go back from translated words in the current locale
  * to i18n messages keys. This class also exposes various utility i18n and l10n methods.
+ * <p>
+ * The reverse translations are partitioned per locale, see {@link ReverseI18nPartition}. A lookup
+ * probes the partition of the requested locale first and then falls back on its less specific
+ * locales (eg. 'fr_CA' then 'fr').
+ * <p>
+ * Each partition also memoizes the forward translations of its locale, so that rendering a hot
+ * i18n message is a probe of the memo of its partition: the reverse cache is only probed again once
+ * words were removed from it. The memo is dropped by {@link #invalidateTranslations()}, or key by
+ * key by {@link #updateTranslations(Locale, Collection)} when only some i18n messages change.
+ * <p>
+ * The cache is shared by all request threads (that fill it through {@link #getMessage(String)})
+ * and the Hibernate flush threads (that read it through {@link #getMessageKey(String)}). Reads
+ * never lock and writes only contend on the bins of the underlying {@link ConcurrentHashMap}.
+ * <p>
+ * Consistency contract while traffic is running:
+ * <ul>
+ * <li>{@link #reset()} swaps in a new set of empty partitions, readers see either the old or the
+ * new partitions but never partially cleared ones. Once it returns, every entry of the cache was
+ * put by a {@link #getMessage(String)} call that translated its key after the reset, entries
+ * computed before the reset by in-flight calls are written to the discarded partitions.</li>
+ * <li>Once {@link #setEnabled(boolean) setEnabled(false)} returns, the cache is empty and stays
+ * empty until it is enabled again, even when calls to {@link #getMessage(String)} are in flight.</li>
+ * </ul>
  */
 public class ReverseI18nCacheImpl implements ReverseI18nCache {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
-	// The cache of translated words to i18n message keys
-	protected Map<String, String> cache = new HashMap<String, String>();
+	// The caches of translated words to i18n message keys, one per locale
+	protected volatile ConcurrentMap<Locale, ReverseI18nPartition> partitions = new ConcurrentHashMap<Locale, ReverseI18nPartition>();
 	
-	protected boolean enabled = true;
+	// The locales to probe, in order, when looking up a word for a given locale
+	private final ConcurrentMap<Locale, List<Locale>> fallbackChains = new ConcurrentHashMap<Locale, List<Locale>>();
+	
+	protected volatile boolean enabled = true;
+	
+	// Counted down once the ongoing preload, if any, is over
+	protected volatile CountDownLatch readyLatch = new CountDownLatch(0);
+	
+	// The prefixes of the i18n message keys that were ever preloaded, their words are pinned
+	private final Set<String> preloadedPrefixes = new CopyOnWriteArraySet<String>();
+	
+	protected int partitionInitialCapacity = 256;
+	
+	protected boolean substringIndexed = false;
+	
+	// The dictionary of the i18n message keys of the compact partitions, null when not compact
+	protected volatile KeyDictionary keyDictionary = null;
+	
+	protected volatile int maximumSize = 0;
+	
+	protected volatile long expireAfterAccessMillis = 0;
+	
+	protected volatile int untranslatedMaximumSize = 0;
+	
+	protected volatile WordFolding wordFolding = WordFolding.CASE;
+	
+	// The probes through which the messages are looked up without folding them
+	private static final ThreadLocal<WordFolding.Probe> probes = new ThreadLocal<WordFolding.Probe>() {
+		
+		@Override
+		protected WordFolding.Probe initialValue() {
+			return new WordFolding.Probe();
+		}
+	};
+	
+	// The locale of the base i18n messages, eg. messages.properties
+	private static final Locale BASE_LOCALE = Locale.ENGLISH;
+	
+	private final AtomicLong translationsVersion = new AtomicLong();
+	
+	// The last computed checksum of the i18n messages, valid until the translations version changes
+	private volatile MessagesChecksum messagesChecksum = null;
+	
+	/*
+	 * Metrics, see ExtI18nMetrics
+	 */
+	private final LongAdder hits;
+	
+	private final LongAdder misses;
+	
+	private final LongAdder rejections;
+	
+	private final LongAdder translationHits;
+	
+	private final LongAdder translationMisses;
+	
+	private final LongAdder puts;
+	
+	private final LongAdder resets;
+	
+	public ReverseI18nCacheImpl() {
+		this("reverseI18nCache");
+	}
 	
 	/**
-	 * Accessor to the internal map. This method is not part of the API.
+	 * @param metricsName The prefix of the names of the cache metrics.
 	 */
-	public Map<String, String> getCache() {
-		return cache;
+	public ReverseI18nCacheImpl(String metricsName) {
+		hits = ExtI18nMetrics.counter(metricsName + ".hits");
+		misses = ExtI18nMetrics.counter(metricsName + ".misses");
+		rejections = ExtI18nMetrics.counter(metricsName + ".rejections");
+		translationHits = ExtI18nMetrics.counter(metricsName + ".translationHits");
+		translationMisses = ExtI18nMetrics.counter(metricsName + ".translationMisses");
+		puts = ExtI18nMetrics.counter(metricsName + ".puts");
+		resets = ExtI18nMetrics.counter(metricsName + ".resets");
+		ExtI18nMetrics.gauge(metricsName + ".size", new ExtI18nMetrics.Gauge() {
+			
+			@Override
+			public long getValue() {
+				return size();
+			}
+		});
+		ExtI18nMetrics.gauge(metricsName + ".footprint", new ExtI18nMetrics.Gauge() {
+			
+			@Override
+			public long getValue() {
+				return getEstimatedFootprint();
+			}
+		});
+		ExtI18nMetrics.gauge(metricsName + ".partitionHits", new ExtI18nMetrics.Gauge() {
+			
+			@Override
+			public long getValue() {
+				long sum = 0;
+				for (ReverseI18nPartition partition : partitions.values()) {
+					sum += partition.getHits();
+				}
+				return sum;
+			}
+		});
+		ExtI18nMetrics.gauge(metricsName + ".partitionMisses", new ExtI18nMetrics.Gauge() {
+			
+			@Override
+			public long getValue() {
+				long sum = 0;
+				for (ReverseI18nPartition partition : partitions.values()) {
+					sum += partition.getMisses();
+				}
+				return sum;
+			}
+		});
 	}
 	
 	/**
-	 * Resets the reverse translation cache.
+	 * Sets the initial capacity of each new locale partition.
+	 */
+	public void setPartitionInitialCapacity(int partitionInitialCapacity) {
+		this.partitionInitialCapacity = partitionInitialCapacity;
+	}
+	
+	/**
+	 * Sets whether the new locale partitions index their words for substring searches.
+	 */
+	public void setSubstringIndexed(boolean substringIndexed) {
+		this.substringIndexed = substringIndexed;
+	}
+	
+	/**
+	 * Sets whether the preloaded words are stored compactly, for very large caches: they are packed in
+	 * char arenas with their i18n message keys dictionary-encoded across the locales, see
+	 * {@link CompactWordTable}. Changing the storage resets the cache, so it is meant to be set before
+	 * preloading.
 	 */
 	@Override
-	public void reset() {
-		cache.clear();
+	public synchronized void setCompactStorage(boolean compact) {
+		if (compact != isCompactStorage()) {
+			keyDictionary = compact ? new KeyDictionary() : null;
+			reset();
+		}
+	}
+	
+	public boolean isCompactStorage() {
+		return keyDictionary != null;
+	}
+	
+	/**
+	 * Accessor to the internal partitions. This method is not part of the API.
+	 */
+	public Collection<ReverseI18nPartition> getPartitions() {
+		return Collections.unmodifiableCollection(partitions.values());
+	}
+	
+	/**
+	 * Accessor to an internal partition. This method is not part of the API.
+	 * 
+	 * @return The partition of the locale, null if nothing was cached yet for this locale.
+	 */
+	public ReverseI18nPartition getPartition(Locale locale) {
+		return partitions.get(locale);
+	}
+	
+	/**
+	 * Accessor to the internal partitions that are probed for a locale, in order. This method is not
+	 * part of the API.
+	 */
+	public List<ReverseI18nPartition> getPartitions(Locale locale) {
+		final ConcurrentMap<Locale, ReverseI18nPartition> partitions = this.partitions;
+		List<ReverseI18nPartition> list = new ArrayList<ReverseI18nPartition>();
+		for (Locale l : getFallbackChain(locale)) {
+			ReverseI18nPartition partition = partitions.get(l);
+			if (partition != null) {
+				list.add(partition);
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * @return The number of reverse translations cached across all locales.
+	 */
+	public int size() {
+		int size = 0;
+		for (ReverseI18nPartition partition : partitions.values()) {
+			size += partition.size();
+		}
+		return size;
+	}
+	
+	/**
+	 * @return The estimated memory footprint of the cached words in bytes, across all locales.
+	 */
+	@Override
+	public long getEstimatedFootprint() {
+		final KeyDictionary keyDictionary = this.keyDictionary;
+		long footprint = keyDictionary != null ? keyDictionary.getFootprint() : 0;
+		for (ReverseI18nPartition partition : partitions.values()) {
+			footprint += partition.getEstimatedFootprint();
+		}
+		return footprint;
+	}
+	
+	/**
+	 * @return A report of the size, usage and footprint of each locale partition.
+	 */
+	public String getFootprintReport() {
+		StringBuilder report = new StringBuilder();
+		report.append(getClass().getSimpleName()).append(": ").append(size()).append(" words, ")
+		        .append(getEstimatedFootprint()).append(" bytes");
+		for (ReverseI18nPartition partition : partitions.values()) {
+			report.append("\n\t").append(partition);
+		}
+		return report.toString();
+	}
+	
+	/**
+	 * Bounds the cache. The words that were not preloaded are evicted least frequently used first
+	 * once a locale holds more than the maximum, and expire when not looked up for a while. The words
+	 * already cached are carried over to the new partitions, the preloaded ones remain pinned.
+	 * <p>
+	 * A word that was just cached is never the one evicted to make room, so that the values rendered
+	 * to a user can still be reverse translated when they are saved back.
+	 * 
+	 * @param maximumSize The maximum count of evictable words per locale, 0 for no maximum.
+	 * @param expireAfterAccessMillis The idle time after which a word expires, 0 for no expiry.
+	 */
+	@Override
+	public synchronized void setEvictionPolicy(int maximumSize, long expireAfterAccessMillis) {
+		maximumSize = Math.max(0, maximumSize);
+		expireAfterAccessMillis = Math.max(0, expireAfterAccessMillis);
+		if (maximumSize == this.maximumSize && expireAfterAccessMillis == this.expireAfterAccessMillis) {
+			return;
+		}
+		this.maximumSize = maximumSize;
+		this.expireAfterAccessMillis = expireAfterAccessMillis;
+		
+		final ConcurrentMap<Locale, ReverseI18nPartition> newPartitions = new ConcurrentHashMap<Locale, ReverseI18nPartition>();
+		for (ReverseI18nPartition partition : partitions.values()) {
+			ReverseI18nPartition newPartition = getOrCreatePartition(newPartitions, partition.getLocale());
+			newPartition.reserveFilters(partition.size());
+			for (Map.Entry<String, String> entry : partition.getEntries().entrySet()) {
+				newPartition.put(entry.getKey(), entry.getValue(), partition.isPinned(entry.getKey()));
+			}
+		}
+		if (isEnabled()) {
+			partitions = newPartitions; // concurrent puts into the old partitions are lost, they will be put again
+		}
+		log.info("Reverse translations eviction policy set to " + maximumSize + " words per locale, expiring after "
+		        + expireAfterAccessMillis + " ms.");
+	}
+	
+	/**
+	 * Bounds the negative cache of each locale, that remembers the i18n message keys that have no
+	 * translation so that they don't go through the message source service again. The negative
+	 * caches are dropped along with the memoized translations.
+	 * 
+	 * @param maximumSize The maximum count of keys per locale, 0 to disable the negative caches.
+	 */
+	@Override
+	public synchronized void setUntranslatedMaximumSize(int maximumSize) {
+		untranslatedMaximumSize = Math.max(0, maximumSize);
+		for (ReverseI18nPartition partition : partitions.values()) {
+			partition.setUntranslatedMaximumSize(untranslatedMaximumSize);
+		}
+	}
+	
+	/**
+	 * Sets how the translated expressions are folded before being reverse translated, the case is
+	 * always folded. Changing the folding resets the cache, so it is meant to be set before preloading.
+	 * 
+	 * @param accents Set to true to also fold the accents, eg. 'Côte' is looked up as 'cote'.
+	 * @param whitespace Set to true to also fold the leading, trailing and repeated whitespace.
+	 */
+	@Override
+	public synchronized void setWordFolding(boolean accents, boolean whitespace) {
+		WordFolding folding = WordFolding.of(accents, whitespace);
+		if (!folding.equals(wordFolding)) {
+			wordFolding = folding;
+			reset();
+		}
+	}
+	
+	/**
+	 * @return The folding of the translated expressions.
+	 */
+	public WordFolding getWordFolding() {
+		return wordFolding;
+	}
+	
+	/**
+	 * Resets the reverse translation cache. This locks like the other settings, so that a concurrent
+	 * change of the eviction policy can't swap the carried over partitions in once it was reset.
+	 */
+	@Override
+	public synchronized void reset() {
+		if (keyDictionary != null) {
+			keyDictionary = new KeyDictionary(); // the keys of the dropped partitions
+		}
+		partitions = new ConcurrentHashMap<Locale, ReverseI18nPartition>();
+		translationsVersion.incrementAndGet();
+		resets.increment();
 	}
 	
 	/**
@@ -49,16 +384,296 @@ public class ReverseI18nCacheImpl implements ReverseI18nCache {
 	
 	/**
 	 * Enables/disables the reverse translation caching. Setting enabled to false also resets the
-	 * cache.
+	 * cache. This locks like the other settings, so that a concurrent change of the eviction policy
+	 * can't swap the carried over partitions in once the cache was disabled.
 	 * 
 	 * @param enabled
 	 */
 	@Override
-	public void setEnabled(boolean enabled) {
+	public synchronized void setEnabled(boolean enabled) {
+		this.enabled = enabled;
 		if (enabled == false) {
-			reset();
+			reset(); // after flipping the flag so that in-flight calls can't refill the new partitions
 		}
-		this.enabled = enabled;
+	}
+	
+	/**
+	 * @return A boolean indicating whether the cache is not being preloaded.
+	 */
+	@Override
+	public boolean isReady() {
+		return readyLatch.getCount() == 0;
+	}
+	
+	/**
+	 * Waits for the ongoing preload, if any, to be over.
+	 * 
+	 * @param timeoutMillis The maximum time to wait in milliseconds.
+	 * @return true if the cache is ready, false if the timeout elapsed before that.
+	 */
+	@Override
+	public boolean awaitReady(long timeoutMillis) {
+		try {
+			return readyLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return isReady();
+		}
+	}
+	
+	/**
+	 * Fills the cache with the reverse translations of all the i18n messages whose keys start with
+	 * any of the provided prefixes, one task per locale. The cache is not ready until all the tasks
+	 * are over.
+	 * 
+	 * @param prefixes The i18n message keys prefixes, eg. "addresshierarchy."
+	 * @param locales The locales to preload.
+	 * @param executor The executor running the preload tasks.
+	 * @return The future completion of the preload.
+	 */
+	@Override
+	public CompletableFuture<Void> preload(final Collection<String> prefixes, Collection<Locale> locales,
+	        Executor executor) {
+		
+		final ConcurrentMap<Locale, ReverseI18nPartition> partitions = this.partitions;
+		if (!isEnabled() || CollectionUtils.isEmpty(prefixes) || CollectionUtils.isEmpty(locales)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		final CountDownLatch latch = new CountDownLatch(1);
+		readyLatch = latch;
+		preloadedPrefixes.addAll(prefixes);
+		
+		final long start = System.currentTimeMillis();
+		final AtomicInteger count = new AtomicInteger();
+		List<CompletableFuture<Void>> tasks = new ArrayList<CompletableFuture<Void>>();
+		for (final Locale locale : locales) {
+			tasks.add(CompletableFuture.runAsync(new Runnable() {
+				
+				@Override
+				public void run() {
+					boolean opened = openSession(); // the preload threads are outside of any request
+					try {
+						count.addAndGet(preload(partitions, prefixes, locale));
+					}
+					finally {
+						if (opened) {
+							closeSession();
+						}
+					}
+				}
+			}, executor));
+		}
+		
+		return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[tasks.size()])).whenComplete(
+		    new BiConsumer<Void, Throwable>() {
+			
+			    @Override
+			    public void accept(Void result, Throwable error) {
+				    latch.countDown();
+				    if (error != null) {
+					    log.error("The reverse translations could not be fully preloaded.", error);
+				    }
+				    log.info("Preloaded " + count.get() + " reverse translations for prefixes " + prefixes
+				            + " in locales " + locales + " in " + (System.currentTimeMillis() - start) + " ms.");
+			    }
+		    });
+	}
+	
+	/*
+	 * Preloads one locale, returns the count of reverse translations that were cached.
+	 */
+	private int preload(ConcurrentMap<Locale, ReverseI18nPartition> partitions, Collection<String> prefixes,
+	        Locale locale) {
+		List<String> keys = new ArrayList<String>();
+		for (PresentationMessage pm : getPresentations(locale)) {
+			if (startsWithAny(pm.getCode(), prefixes)) {
+				keys.add(pm.getCode());
+			}
+		}
+		if (keys.isEmpty()) {
+			return 0;
+		}
+		ReverseI18nPartition partition = getOrCreatePartition(partitions, locale);
+		partition.reserveFilters(keys.size());
+		
+		int count = 0;
+		for (String key : keys) {
+			String translation = translate(key, locale);
+			if (translation != null && !StringUtils.equals(translation, key)) {
+				partition.put(partition.getFolding().fold(translation), key, true); // pinned, nothing would put it back
+				count++;
+				puts.increment();
+			}
+		}
+		return count;
+	}
+	
+	private static boolean startsWithAny(String key, Collection<String> prefixes) {
+		for (String prefix : prefixes) {
+			if (key.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Opens a session for a thread that is outside of any request, so that it can go through the
+	 * message source service.
+	 * 
+	 * @return true if a session was opened, false if the thread already had one.
+	 */
+	protected boolean openSession() {
+		if (Context.isSessionOpen()) {
+			return false;
+		}
+		Context.openSession();
+		return true;
+	}
+	
+	/**
+	 * Closes a session opened by {@link #openSession()}.
+	 */
+	protected void closeSession() {
+		Context.closeSession();
+	}
+	
+	/**
+	 * Fetches the i18n messages of a locale from the message source service.
+	 * 
+	 * @param locale The locale of the i18n messages.
+	 * @return The i18n messages defined for the locale.
+	 */
+	protected Collection<PresentationMessage> getPresentations(Locale locale) {
+		return Context.getMessageSourceService().getPresentationsInLocale(locale);
+	}
+	
+	/**
+	 * Writes the reverse translations of all locales to a snapshot file, see
+	 * {@link ReverseI18nSnapshot}.
+	 * 
+	 * @param file The snapshot file, replaced once fully written.
+	 */
+	@Override
+	public void writeSnapshot(File file) throws IOException {
+		final ConcurrentMap<Locale, ReverseI18nPartition> partitions = this.partitions;
+		Map<Locale, List<Entry>> entries = new LinkedHashMap<Locale, List<Entry>>();
+		for (ReverseI18nPartition partition : partitions.values()) {
+			Map<String, String> words = partition.getEntries();
+			if (words.isEmpty() || partition.getLocale() == null) {
+				continue;
+			}
+			List<Entry> list = new ArrayList<Entry>(words.size());
+			for (Map.Entry<String, String> word : words.entrySet()) {
+				list.add(new Entry(word.getKey(), word.getValue(), partition.isPinned(word.getKey())));
+			}
+			entries.put(partition.getLocale(), list);
+		}
+		new ReverseI18nSnapshot(getSnapshotChecksum(entries.keySet()), entries).write(file);
+	}
+	
+	/**
+	 * Fills the cache with the reverse translations of a snapshot file, unless the i18n messages
+	 * changed since it was written.
+	 * 
+	 * @param file The snapshot file.
+	 * @return true if the snapshot was loaded, false if there is none or it is stale or corrupted.
+	 */
+	@Override
+	public boolean loadSnapshot(File file) throws IOException {
+		final ConcurrentMap<Locale, ReverseI18nPartition> partitions = this.partitions;
+		if (!isEnabled()) {
+			return false;
+		}
+		ReverseI18nSnapshot snapshot = ReverseI18nSnapshot.read(file);
+		if (snapshot == null) {
+			log.info("No valid reverse translations snapshot found at " + file + ".");
+			return false;
+		}
+		if (snapshot.getMessagesChecksum() != getSnapshotChecksum(snapshot.getLocales())) {
+			log.info("The reverse translations snapshot " + file
+			        + " is stale, the i18n messages or the folding of the words changed since.");
+			return false;
+		}
+		int count = 0;
+		for (Map.Entry<Locale, List<Entry>> locale : snapshot.getEntries().entrySet()) {
+			ReverseI18nPartition partition = getOrCreatePartition(partitions, locale.getKey());
+			partition.reserveFilters(locale.getValue().size());
+			for (Entry entry : locale.getValue()) {
+				partition.put(entry.getWord(), entry.getKey(), entry.isPinned());
+			}
+			count += locale.getValue().size();
+			puts.add(locale.getValue().size());
+		}
+		log.info("Loaded " + count + " reverse translations in locales " + snapshot.getLocales() + " from " + file + ".");
+		return true;
+	}
+	
+	/*
+	 * The snapshot words were folded when it was written, so it is stale if the folding changed since.
+	 * The checksum of the i18n messages is only computed again once they changed, ie. once the
+	 * translations were invalidated or updated, or for other locales.
+	 */
+	private long getSnapshotChecksum(Collection<Locale> locales) {
+		long version = translationsVersion.get();
+		MessagesChecksum checksum = messagesChecksum;
+		if (checksum == null || checksum.version != version || !checksum.locales.equals(locales)) {
+			Set<Locale> copy = new LinkedHashSet<Locale>(locales);
+			checksum = new MessagesChecksum(copy, version, getMessagesChecksum(copy));
+			messagesChecksum = checksum;
+		}
+		return checksum.value * 31 + wordFolding.hashCode();
+	}
+	
+	private static class MessagesChecksum {
+		
+		private final Set<Locale> locales;
+		
+		private final long version;
+		
+		private final long value;
+		
+		private MessagesChecksum(Set<Locale> locales, long version, long value) {
+			this.locales = locales;
+			this.version = version;
+			this.value = value;
+		}
+	}
+	
+	/**
+	 * Computes a checksum of the i18n messages of some locales and of all the locales they fall back
+	 * on, see {@link #getRenderedLocales(Locale)}, that does not depend on the order in which the
+	 * messages are fetched.
+	 * 
+	 * @param locales The locales of the i18n messages.
+	 * @return The checksum.
+	 */
+	protected long getMessagesChecksum(Collection<Locale> locales) {
+		Set<Locale> chain = new LinkedHashSet<Locale>();
+		for (Locale locale : locales) {
+			chain.addAll(getRenderedLocales(locale));
+		}
+		long checksum = chain.size();
+		for (Locale locale : chain) {
+			for (PresentationMessage pm : getPresentations(locale)) {
+				long hash = hash(0xcbf29ce484222325L, locale.toString());
+				hash = hash(hash, pm.getCode());
+				hash = hash(hash, pm.getMessage());
+				checksum += hash ^ (hash >>> 29); // summed so that the order does not matter
+			}
+		}
+		return checksum;
+	}
+	
+	private static long hash(long hash, String str) {
+		if (str != null) {
+			for (int i = 0; i < str.length(); i++) {
+				hash = (hash ^ str.charAt(i)) * 0x100000001b3L;
+			}
+		}
+		return (hash ^ 0xff) * 0x100000001b3L; // separator
 	}
 	
 	/**
@@ -73,17 +688,164 @@ public class ReverseI18nCacheImpl implements ReverseI18nCache {
 	@Override
 	public String getMessage(String key, Locale locale) {
 		
+		final ConcurrentMap<Locale, ReverseI18nPartition> partitions = this.partitions; // read before the flag, see the consistency contract
 		if (!isEnabled() || StringUtils.isEmpty(key)) {
 			return key;
 		}
+		if (locale == null) {
+			locale = Context.getLocale();
+		}
 		
-		String translation = Context.getMessageSourceService().getMessage(key, null, locale);
-		if (!StringUtils.equals(translation, key)) {
-			cache.put(translation.toLowerCase(), key);
+		ReverseI18nPartition partition = getOrCreatePartition(partitions, locale);
+		BoundedCache<String, Translation> translations = partition.getTranslations(); // read before translating, see invalidateTranslations()
+		Translation memo = translations.get(key);
+		if (memo != null) {
+			translationHits.increment();
+			partition.touchTranslation(memo, key);
+			return memo.getText();
+		}
+		BoundedCache<String, Boolean> untranslated = partition.getUntranslated();
+		if (untranslated != null && untranslated.get(key) != null) {
+			translationHits.increment();
+			return key;
+		}
+		
+		translationMisses.increment();
+		long keysInvalidations = partition.getKeysInvalidations();
+		String translation = translate(key, locale);
+		if (translation != null && !StringUtils.equals(translation, key)) {
+			partition.putTranslation(translations, key, translation);
+			puts.increment();
+		} else if (translation != null && untranslated != null) {
+			untranslated.put(key, Boolean.TRUE);
+		}
+		if (partition.getKeysInvalidations() != keysInvalidations) {
+			partition.invalidateTranslations(Collections.singleton(key)); // possibly translated before the change
 		}
 		return translation;
 	}
 	
+	/**
+	 * Drops the memoized forward translations of all locales, to be called when the i18n messages
+	 * change. The reverse translations are kept: the words that were rendered before the change may
+	 * still be saved back.
+	 */
+	@Override
+	public void invalidateTranslations() {
+		for (ReverseI18nPartition partition : partitions.values()) {
+			partition.invalidateTranslations();
+		}
+		translationsVersion.incrementAndGet();
+	}
+	
+	/**
+	 * Drops the memoized forward translations of some i18n message keys in all locales, to be called
+	 * when only these i18n messages change.
+	 */
+	@Override
+	public void invalidateTranslations(Collection<String> keys) {
+		if (CollectionUtils.isEmpty(keys)) {
+			return;
+		}
+		for (ReverseI18nPartition partition : partitions.values()) {
+			partition.invalidateTranslations(keys);
+		}
+		translationsVersion.incrementAndGet();
+	}
+	
+	/**
+	 * The previous words of the keys are removed from the reverse cache, those of the memoized
+	 * translations directly and the others by going through the partition. The new translations are
+	 * cached in the reverse cache only, they are memoized again when they are next rendered. They are
+	 * pinned when their keys would have been preloaded or when their previous words were pinned.
+	 */
+	@Override
+	public void updateTranslations(Locale locale, Collection<String> keys) {
+		if (CollectionUtils.isEmpty(keys)) {
+			return;
+		}
+		for (ReverseI18nPartition partition : partitions.values()) {
+			if (locale != null && !getRenderedLocales(partition.getLocale()).contains(locale)) {
+				continue;
+			}
+			
+			// The keys that were reverse translated in this partition, whether they are pinned
+			Map<String, Boolean> cachedKeys = new LinkedHashMap<String, Boolean>();
+			Map<String, String> previousWords = new HashMap<String, String>();
+			Set<String> unknownWordsKeys = new HashSet<String>();
+			BoundedCache<String, Translation> translations = partition.getTranslations();
+			for (String key : keys) {
+				Translation memo = translations.peek(key);
+				if (memo != null) {
+					previousWords.put(key, memo.getWord());
+				} else if (partition.mightContainKey(key)) {
+					unknownWordsKeys.add(key);
+				}
+				if (memo != null || partition.mightContainKey(key)) {
+					cachedKeys.put(key,
+					    startsWithAny(key, preloadedPrefixes) || memo != null && partition.isPinned(memo.getWord()));
+				}
+			}
+			
+			// the previous words are removed once they can't be touched again through the memo
+			partition.invalidateTranslations(keys);
+			for (Map.Entry<String, String> previousWord : previousWords.entrySet()) {
+				partition.remove(previousWord.getValue(), previousWord.getKey());
+			}
+			if (!unknownWordsKeys.isEmpty()) {
+				Set<String> pinnedKeys = new HashSet<String>();
+				partition.removeKeys(unknownWordsKeys, pinnedKeys);
+				for (String key : pinnedKeys) {
+					cachedKeys.put(key, true);
+				}
+			}
+			for (Map.Entry<String, Boolean> cachedKey : cachedKeys.entrySet()) {
+				String key = cachedKey.getKey();
+				String translation = translate(key, partition.getLocale());
+				if (translation != null && !StringUtils.equals(translation, key)) {
+					partition.put(partition.getFolding().fold(translation), key, cachedKey.getValue());
+					puts.increment();
+				}
+			}
+		}
+		translationsVersion.incrementAndGet();
+	}
+	
+	@Override
+	public long getTranslationsVersion() {
+		return translationsVersion.get();
+	}
+	
+	@Override
+	public void touchMessage(String key, String message) {
+		touchMessage(key, message, Context.getLocale());
+	}
+	
+	/**
+	 * @param key The i18n message key.
+	 * @param message The translation of the key.
+	 * @param locale The locale of the translation.
+	 * @see #touchMessage(String, String)
+	 */
+	public void touchMessage(String key, String message, Locale locale) {
+		final ConcurrentMap<Locale, ReverseI18nPartition> partitions = this.partitions; // read before the flag, see the consistency contract
+		if (!isEnabled() || StringUtils.isEmpty(key) || StringUtils.isEmpty(message) || key.equals(message)) {
+			return;
+		}
+		getOrCreatePartition(partitions, locale).touch(key, message);
+	}
+	
+	/**
+	 * Fetches the translation of an i18n message key from the message source service.
+	 * 
+	 * @param key The i18n message key.
+	 * @param locale The locale to use for the translation.
+	 * @return The translation of the i18n message key.
+	 */
+	protected String translate(String key, Locale locale) {
+		return Context.getMessageSourceService().getMessage(key, null, locale);
+	}
+	
 	/**
 	 * This method translates a i18n message key based on the context's locale. From the outside if
 	 * does the same as {@link MessageSourceService#getMessage(String)}, however while doing so it
@@ -103,15 +865,123 @@ public class ReverseI18nCacheImpl implements ReverseI18nCache {
 	 */
 	@Override
 	public String getMessageKey(String message) {
+		return getMessageKey(message, Context.getLocale());
+	}
+	
+	/**
+	 * @param message A translated expression in the provided locale.
+	 * @param locale The locale of the translated expression.
+	 * @return The i18n message key.
+	 */
+	@Override
+	public String getMessageKey(String message, Locale locale) {
 		
 		if (!isEnabled() || StringUtils.isEmpty(message)) {
 			return message;
 		}
 		
-		String key = message;
-		if (cache.containsKey(message.toLowerCase())) {
-			key = cache.get(message.toLowerCase());
+		String key = findMessageKey(message, locale != null ? locale : Context.getLocale());
+		return key != null ? key : message;
+	}
+	
+	/**
+	 * Looks up a translated expression in the partition of the provided locale and then in those of
+	 * its fallback locales. This method is not part of the API.
+	 * 
+	 * @param message A translated expression in the provided locale.
+	 * @param locale The locale of the translated expression.
+	 * @return The i18n message key, null if the translated expression is not cached.
+	 */
+	public String findMessageKey(String message, Locale locale) {
+		final ConcurrentMap<Locale, ReverseI18nPartition> partitions = this.partitions;
+		final List<Locale> chain = getFallbackChain(locale);
+		if (!mightContainWord(partitions, chain, message)) {
+			rejections.increment();
+			misses.increment();
+			return null;
+		}
+		final WordFolding.Probe probe = probes.get();
+		try {
+			for (Locale l : chain) {
+				ReverseI18nPartition partition = partitions.get(l);
+				if (partition != null) {
+					String key = partition.get(probe.set(partition.getFolding(), message));
+					if (key != null) {
+						hits.increment();
+						return key;
+					}
+				}
+			}
+		}
+		finally {
+			probe.clear();
+		}
+		misses.increment();
+		return null;
+	}
+	
+	/*
+	 * Rejects the unknown messages, eg. i18n message keys or free text, without allocating anything.
+	 */
+	private static boolean mightContainWord(ConcurrentMap<Locale, ReverseI18nPartition> partitions, List<Locale> chain,
+	        String message) {
+		for (int i = 0; i < chain.size(); i++) {
+			ReverseI18nPartition partition = partitions.get(chain.get(i));
+			if (partition != null && partition.mightContainWord(message)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return The locales to probe, in order, when looking up a word for the provided locale. Eg.
+	 *         'fr_CA' then 'fr'.
+	 */
+	@SuppressWarnings("unchecked")
+	protected List<Locale> getFallbackChain(Locale locale) {
+		List<Locale> chain = fallbackChains.get(locale);
+		if (chain == null) {
+			chain = Collections.unmodifiableList(LocaleUtils.localeLookupList(locale));
+			fallbackChains.putIfAbsent(locale, chain);
+		}
+		return chain;
+	}
+	
+	/**
+	 * @return The locales whose i18n messages may be rendered for the provided locale: its fallback
+	 *         chain, then the chain of the default locale and the locale of the base messages, that
+	 *         the keys missing in the provided locale fall back on.
+	 */
+	protected Set<Locale> getRenderedLocales(Locale locale) {
+		Set<Locale> locales = new LinkedHashSet<Locale>(getFallbackChain(locale));
+		Locale defaultLocale = getDefaultLocale();
+		if (defaultLocale != null) {
+			locales.addAll(getFallbackChain(defaultLocale));
+		}
+		locales.add(BASE_LOCALE);
+		return locales;
+	}
+	
+	/**
+	 * @return The default locale of the message source.
+	 */
+	protected Locale getDefaultLocale() {
+		return LocaleUtility.getDefaultLocale();
+	}
+	
+	protected ReverseI18nPartition getOrCreatePartition(ConcurrentMap<Locale, ReverseI18nPartition> partitions,
+	        Locale locale) {
+		ReverseI18nPartition partition = partitions.get(locale);
+		if (partition == null) {
+			ReverseI18nPartition newPartition = new ReverseI18nPartition(locale, partitionInitialCapacity, substringIndexed,
+			        maximumSize, expireAfterAccessMillis, wordFolding, keyDictionary);
+			newPartition.setUntranslatedMaximumSize(untranslatedMaximumSize);
+			partition = partitions.putIfAbsent(locale, newPartition);
+			if (partition == null) {
+				partition = newPartition;
+			}
 		}
-		return key;
+		return partition;
 	}
 }
@@ -0,0 +1,632 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The reverse translations of a single locale, along with its usage statistics. Words are stored
+ * folded, see {@link WordFolding}, and point to their i18n message key. They are looked up without
+ * folding the messages.
+ * <p>
+ * A partition can be bounded in size and can expire idle words, see {@link BoundedCache}. Preloaded
+ * words are pinned: they are never evicted since nothing else would put them back. In compact
+ * partitions the pinned words are held in a {@link CompactWordTable} rather than in the bounded
+ * cache, with their i18n message keys dictionary-encoded across the locales.
+ * <p>
+ * A partition also memoizes the forward translations of its locale (i18n message keys to
+ * translated expressions) so that rendering the same message again doesn't go through the message
+ * source service. The i18n message keys that have no translation, typically free text, are
+ * remembered in a separately bounded negative cache.
+ * <p>
+ * Bloom filters of the words and of the i18n message keys that were put let lookups of unknown
+ * words, eg. values that already are i18n message keys, be rejected without probing the words. They
+ * are sized for the pinned words plus the maximum count of evictable words, and are rebuilt from the
+ * cached words once more strings were put than they were sized for, eg. after a preload or as
+ * evicted words are put again.
+ */
+public class ReverseI18nPartition {
+	
+	private final Locale locale;
+	
+	private final WordFolding folding;
+	
+	private final BoundedCache<String, String> cache;
+	
+	// The pinned words of a compact partition, null otherwise
+	private final CompactWordTable pinnedWords;
+	
+	// Optional index for substring searches
+	private final TrigramIndex index;
+	
+	/*
+	 * The Bloom filters of the words and of the keys, replaced as a whole when rebuilt.
+	 */
+	private static final class Filters {
+		
+		// All the words and keys put since the filters were built, including the evicted ones
+		final BloomFilter words;
+		
+		final BloomFilter keys;
+		
+		// The count of strings the filters were sized for
+		final int capacity;
+		
+		Filters(int capacity, WordFolding folding) {
+			this.words = new BloomFilter(capacity, folding);
+			this.keys = new BloomFilter(capacity);
+			this.capacity = capacity > 0 ? capacity : BloomFilter.DEFAULT_EXPECTED_INSERTIONS;
+		}
+		
+		void put(String word, String key) {
+			words.put(word);
+			keys.put(key);
+		}
+	}
+	
+	private volatile Filters filters;
+	
+	// The filters being rebuilt, if any
+	private volatile Filters nextFilters;
+	
+	private final Object filtersLock = new Object();
+	
+	// The memoized forward translations, replaced when the i18n messages change
+	private volatile BoundedCache<String, Translation> translations;
+	
+	// The i18n message keys known to have no translation, replaced when the i18n messages change
+	private volatile BoundedCache<String, Boolean> untranslated;
+	
+	private volatile int untranslatedMaximumSize = 0;
+	
+	// Bumped whenever some memoized translations are dropped key by key
+	private final AtomicLong keysInvalidations = new AtomicLong();
+	
+	// Bumped whenever words are removed, the memoized translations touched before are touched again
+	private final AtomicInteger removals = new AtomicInteger();
+	
+	private final int maximumSize;
+	
+	private final long expireAfterAccessMillis;
+	
+	private final LongAdder hits = new LongAdder();
+	
+	private final LongAdder misses = new LongAdder();
+	
+	private final LongAdder puts = new LongAdder();
+	
+	public ReverseI18nPartition(Locale locale, int initialCapacity) {
+		this(locale, initialCapacity, false);
+	}
+	
+	/**
+	 * @param locale The locale of the partition.
+	 * @param initialCapacity The initial capacity of the partition.
+	 * @param substringIndexed Set to true to index the words for substring searches.
+	 */
+	public ReverseI18nPartition(Locale locale, int initialCapacity, boolean substringIndexed) {
+		this(locale, initialCapacity, substringIndexed, 0, 0);
+	}
+	
+	/**
+	 * @param locale The locale of the partition.
+	 * @param initialCapacity The initial capacity of the partition.
+	 * @param substringIndexed Set to true to index the words for substring searches.
+	 * @param maximumSize The maximum count of evictable words, 0 for an unbounded partition.
+	 * @param expireAfterAccessMillis The idle time after which a word expires, 0 for no expiry.
+	 */
+	public ReverseI18nPartition(Locale locale, int initialCapacity, boolean substringIndexed, int maximumSize,
+	    long expireAfterAccessMillis) {
+		this(locale, initialCapacity, substringIndexed, maximumSize, expireAfterAccessMillis, WordFolding.CASE);
+	}
+	
+	/**
+	 * @param locale The locale of the partition.
+	 * @param initialCapacity The initial capacity of the partition.
+	 * @param substringIndexed Set to true to index the words for substring searches.
+	 * @param maximumSize The maximum count of evictable words, 0 for an unbounded partition.
+	 * @param expireAfterAccessMillis The idle time after which a word expires, 0 for no expiry.
+	 * @param folding The folding of the words.
+	 */
+	public ReverseI18nPartition(Locale locale, int initialCapacity, boolean substringIndexed, int maximumSize,
+	    long expireAfterAccessMillis, WordFolding folding) {
+		this(locale, initialCapacity, substringIndexed, maximumSize, expireAfterAccessMillis, folding, null);
+	}
+	
+	/**
+	 * @param locale The locale of the partition.
+	 * @param initialCapacity The initial capacity of the partition.
+	 * @param substringIndexed Set to true to index the words for substring searches.
+	 * @param maximumSize The maximum count of evictable words, 0 for an unbounded partition.
+	 * @param expireAfterAccessMillis The idle time after which a word expires, 0 for no expiry.
+	 * @param folding The folding of the words.
+	 * @param keyDictionary The dictionary of the i18n message keys shared by the compact partitions of
+	 *            a cache, null for a partition that is not compact.
+	 */
+	public ReverseI18nPartition(Locale locale, int initialCapacity, boolean substringIndexed, int maximumSize,
+	    long expireAfterAccessMillis, WordFolding folding, KeyDictionary keyDictionary) {
+		this.locale = locale;
+		this.folding = folding;
+		this.maximumSize = maximumSize;
+		this.expireAfterAccessMillis = expireAfterAccessMillis;
+		this.translations = newTranslations();
+		this.filters = new Filters(maximumSize, folding);
+		this.index = substringIndexed ? new TrigramIndex() : null;
+		this.pinnedWords = keyDictionary != null ? new CompactWordTable(keyDictionary, substringIndexed) : null;
+		this.cache = new BoundedCache<String, String>(initialCapacity, maximumSize, expireAfterAccessMillis,
+		        new BoundedCache.Weigher<String, String>() {
+			
+			        @Override
+			        public long weigh(String word, String key) {
+				        return estimateFootprint(word, key);
+			        }
+		        }, new BoundedCache.RemovalListener<String, String>() {
+			
+			        @Override
+			        public void onRemoval(String word, String key) {
+				        removals.incrementAndGet();
+				        if (index != null) {
+					        index.remove(word);
+					        if (cache.peek(word) != null) {
+						        index.add(word); // it was put back in the meantime
+					        }
+				        }
+			        }
+		        });
+	}
+	
+	/*
+	 * The two strings plus the map node and the cache node, on a 64-bit JVM with compressed oops.
+	 */
+	private static long estimateFootprint(String word, String key) {
+		return 2 * 40 + 2L * (word.length() + key.length()) + 32 + 40;
+	}
+	
+	/**
+	 * A memoized translation, along with its folded word in the reverse cache.
+	 */
+	public static final class Translation {
+		
+		private final String text;
+		
+		private final String word;
+		
+		// The count of removals and the time when the word was last touched, racy but harmless
+		private int touchedRemovals;
+		
+		private long touchedNanos;
+		
+		private Translation(String text, String word, int touchedRemovals, long touchedNanos) {
+			this.text = text;
+			this.word = word;
+			this.touchedRemovals = touchedRemovals;
+			this.touchedNanos = touchedNanos;
+		}
+		
+		public String getText() {
+			return text;
+		}
+		
+		public String getWord() {
+			return word;
+		}
+	}
+	
+	private BoundedCache<String, Translation> newTranslations() {
+		return new BoundedCache<String, Translation>(16, maximumSize, expireAfterAccessMillis);
+	}
+	
+	/**
+	 * Accessor to the current memo of forward translations. Callers that translate a message after a
+	 * memo miss should put the translation into the memo they read before translating, so that a
+	 * translation computed before {@link #invalidateTranslations()} can't outlive it.
+	 * 
+	 * @return The memo of i18n message keys to their translations.
+	 */
+	public BoundedCache<String, Translation> getTranslations() {
+		return translations;
+	}
+	
+	/**
+	 * Memoizes the forward translation of an i18n message key and caches its reverse translation.
+	 * 
+	 * @param translations The memo read before translating the key, see {@link #getTranslations()}.
+	 * @param key The i18n message key.
+	 * @param text The translation of the key, different from the key.
+	 */
+	public void putTranslation(BoundedCache<String, Translation> translations, String key, String text) {
+		Translation translation = new Translation(text, folding.fold(text), removals.get(), touchNanos());
+		translations.put(key, translation);
+		put(translation.getWord(), key);
+	}
+	
+	/**
+	 * Ensures that a memoized translation can still be reverse translated, its word may have been
+	 * evicted from the reverse cache. This is a no-op unless words were removed since the translation
+	 * was last touched, or its word is about to expire. A word that another key with the same
+	 * translation was put for is left to that key.
+	 * 
+	 * @param translation A memoized translation.
+	 * @param key The i18n message key of the translation.
+	 */
+	public void touchTranslation(Translation translation, String key) {
+		int removals = this.removals.get();
+		long now = touchNanos();
+		if (translation.touchedRemovals == removals
+		        && (expireAfterAccessMillis == 0 || now - translation.touchedNanos < expireAfterAccessMillis * 500000L)) {
+			return;
+		}
+		if (lookUp(translation.getWord()) == null) { // the lookup also refreshes the word's access time
+			put(translation.getWord(), key);
+		}
+		translation.touchedRemovals = removals;
+		translation.touchedNanos = now;
+	}
+	
+	private long touchNanos() {
+		return expireAfterAccessMillis > 0 ? System.nanoTime() : 0L;
+	}
+	
+	/**
+	 * Ensures that a translation rendered without going through the memo can still be reverse
+	 * translated, see {@link #touchTranslation(Translation, String)}. The translation is only folded
+	 * when it is not the memoized one.
+	 * 
+	 * @param key The i18n message key.
+	 * @param text The translation of the key.
+	 */
+	public void touch(String key, String text) {
+		Translation translation = translations.get(key);
+		if (translation != null && translation.getText().equals(text)) {
+			touchTranslation(translation, key);
+			return;
+		}
+		String word = folding.fold(text);
+		if (lookUp(word) == null) {
+			put(word, key);
+		}
+	}
+	
+	/**
+	 * Drops the memoized forward translations, to be called when the i18n messages change.
+	 */
+	public void invalidateTranslations() {
+		translations = newTranslations();
+		untranslated = newUntranslated();
+	}
+	
+	/**
+	 * Drops the memoized forward translations of some i18n message keys, to be called when only
+	 * these i18n messages change.
+	 * 
+	 * @param keys The i18n message keys whose translations changed.
+	 */
+	public void invalidateTranslations(Collection<String> keys) {
+		keysInvalidations.incrementAndGet();
+		BoundedCache<String, Translation> translations = this.translations;
+		BoundedCache<String, Boolean> untranslated = this.untranslated;
+		for (String key : keys) {
+			translations.remove(key);
+			if (untranslated != null) {
+				untranslated.remove(key);
+			}
+		}
+	}
+	
+	/**
+	 * Callers that translate a message after a memo miss should read this count before translating
+	 * and drop what they memoized if it changed meanwhile, see {@link #invalidateTranslations(Collection)}.
+	 * 
+	 * @return The count of key by key invalidations.
+	 */
+	public long getKeysInvalidations() {
+		return keysInvalidations.get();
+	}
+	
+	private BoundedCache<String, Boolean> newUntranslated() {
+		int maximumSize = untranslatedMaximumSize;
+		return maximumSize > 0 ? new BoundedCache<String, Boolean>(16, maximumSize, expireAfterAccessMillis) : null;
+	}
+	
+	/**
+	 * Bounds the negative cache of the i18n message keys that have no translation, its current
+	 * content is dropped.
+	 * 
+	 * @param maximumSize The maximum count of keys, 0 to disable the negative cache.
+	 */
+	public void setUntranslatedMaximumSize(int maximumSize) {
+		untranslatedMaximumSize = Math.max(0, maximumSize);
+		untranslated = newUntranslated();
+	}
+	
+	/**
+	 * Accessor to the current negative cache, to be read before translating for the same reason as
+	 * {@link #getTranslations()}.
+	 * 
+	 * @return The i18n message keys known to have no translation, null when there is no negative
+	 *         cache.
+	 */
+	public BoundedCache<String, Boolean> getUntranslated() {
+		return untranslated;
+	}
+	
+	public Locale getLocale() {
+		return locale;
+	}
+	
+	public WordFolding getFolding() {
+		return folding;
+	}
+	
+	/**
+	 * @param word A folded translated expression.
+	 * @return The i18n message key, null if the word is not cached in this partition.
+	 */
+	public String get(String word) {
+		return count(lookUp(word));
+	}
+	
+	private String lookUp(String word) {
+		String key = pinnedWords != null ? pinnedWords.get(word) : null;
+		return key != null ? key : cache.get(word);
+	}
+	
+	/**
+	 * @param probe A probe set with a translated expression, see {@link WordFolding.Probe}.
+	 * @return The i18n message key, null if the expression is not cached in this partition.
+	 */
+	public String get(WordFolding.Probe probe) {
+		String key = pinnedWords != null ? pinnedWords.get(probe) : null;
+		return count(key != null ? key : cache.getByProbe(probe));
+	}
+	
+	private String count(String key) {
+		if (key != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return key;
+	}
+	
+	/**
+	 * @param message A translated expression, ignoring what the folding ignores.
+	 * @return false if the expression is certainly not cached, true if it may be.
+	 */
+	public boolean mightContainWord(CharSequence message) {
+		return filters.words.mightContain(message);
+	}
+	
+	/**
+	 * @param key An i18n message key.
+	 * @return false if the key was certainly never cached, true if it may have been.
+	 */
+	public boolean mightContainKey(CharSequence key) {
+		return filters.keys.mightContain(key);
+	}
+	
+	/**
+	 * @param word A folded translated expression.
+	 * @param key The i18n message key of the translated expression.
+	 */
+	public void put(String word, String key) {
+		put(word, key, false);
+	}
+	
+	/**
+	 * @param word A folded translated expression.
+	 * @param key The i18n message key of the translated expression.
+	 * @param pinned Set to true for a word that should never be evicted.
+	 */
+	public void put(String word, String key, boolean pinned) {
+		// filtered before being cached, so that a cached word always passes the filter
+		Filters filters = this.filters;
+		filters.put(word, key);
+		if (pinnedWords != null && (pinned || pinnedWords.get(word) != null)) {
+			pinnedWords.put(word, key); // replacing the key of a pinned word keeps it pinned
+			cache.remove(word);
+		} else if (cache.put(word, key, pinned) == null && index != null) {
+			index.add(word);
+		}
+		puts.increment();
+		
+		// read in this order, see rebuildFilters()
+		Filters next = nextFilters;
+		Filters current = this.filters;
+		if (next != null) {
+			next.put(word, key);
+		}
+		if (current != filters) {
+			current.put(word, key);
+		}
+		if (current.words.getInsertions() > current.capacity) {
+			rebuildFilters(2 * (size() + maximumSize));
+		}
+	}
+	
+	/**
+	 * Ensures that the Bloom filters are sized for some more pinned words, eg. before a preload, so
+	 * that they don't get less selective as the words are put.
+	 * 
+	 * @param count The count of words about to be pinned.
+	 */
+	public void reserveFilters(int count) {
+		rebuildFilters(size() + count + maximumSize);
+	}
+	
+	/*
+	 * Rebuilds the filters from the cached words if they are too small or too full. A word put
+	 * concurrently is either cached before the words are gone through, or it reads the next filters,
+	 * or it reads the rebuilt filters.
+	 */
+	private void rebuildFilters(int capacity) {
+		synchronized (filtersLock) {
+			Filters filters = this.filters;
+			if (filters.capacity >= capacity && filters.words.getInsertions() <= filters.capacity) {
+				return;
+			}
+			Filters next = new Filters(Math.max(capacity, filters.capacity), folding);
+			nextFilters = next;
+			for (Map.Entry<String, String> entry : getEntries().entrySet()) {
+				next.put(entry.getKey(), entry.getValue());
+			}
+			this.filters = next;
+			nextFilters = null;
+		}
+	}
+	
+	/**
+	 * Removes a word if it still points to an i18n message key, eg. when the translation of the key
+	 * changed. Pinned words are removed too.
+	 * 
+	 * @param word A folded translated expression.
+	 * @param key The i18n message key the word should point to.
+	 * @return true if the word was removed.
+	 */
+	public boolean remove(String word, String key) {
+		if (pinnedWords != null && pinnedWords.remove(word, key)) {
+			removals.incrementAndGet();
+			return true;
+		}
+		return cache.remove(word, key);
+	}
+	
+	/**
+	 * Removes all the words that point to some i18n message keys, going through the whole partition.
+	 * This is for the keys whose previous translations are not known.
+	 * 
+	 * @param keys The i18n message keys.
+	 * @param pinnedKeys The collection where the keys of the removed pinned words are added.
+	 */
+	public void removeKeys(Set<String> keys, Collection<String> pinnedKeys) {
+		if (pinnedWords != null) {
+			pinnedWords.removeKeys(keys, pinnedKeys);
+			removals.incrementAndGet();
+		}
+		for (String word : cache.keySet()) {
+			String key = cache.peek(word);
+			if (key != null && keys.contains(key)) {
+				boolean pinned = cache.isPinned(word);
+				if (cache.remove(word, key) && pinned) {
+					pinnedKeys.add(key);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Collects the i18n message keys of all the words that contain a search string, ignoring what the
+	 * folding ignores.
+	 * 
+	 * @param searchString The search string.
+	 * @param keys The collection where matching keys are added.
+	 */
+	public void collectKeysContaining(String searchString, Collection<String> keys) {
+		String foldedSearch = folding.fold(searchString);
+		if (foldedSearch.isEmpty()) {
+			return;
+		}
+		if (pinnedWords != null) {
+			pinnedWords.collectKeysContaining(foldedSearch, keys);
+		}
+		Collection<String> words = index != null ? index.getCandidates(foldedSearch) : null;
+		if (words == null) {
+			words = cache.keySet();
+		}
+		for (String word : words) {
+			if (word.contains(foldedSearch)) {
+				String key = cache.peek(word);
+				if (key != null) {
+					keys.add(key);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return A snapshot of the folded words to i18n message keys.
+	 */
+	public Map<String, String> getEntries() {
+		if (pinnedWords == null) {
+			return cache.asMap();
+		}
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		pinnedWords.collectEntries(entries);
+		entries.putAll(cache.asMap());
+		return entries;
+	}
+	
+	/**
+	 * @return A boolean indicating whether the word was preloaded and will never be evicted.
+	 */
+	public boolean isPinned(String word) {
+		return pinnedWords != null && pinnedWords.get(word) != null || cache.isPinned(word);
+	}
+	
+	/**
+	 * @return A boolean indicating whether the pinned words are held in a {@link CompactWordTable}.
+	 */
+	public boolean isCompact() {
+		return pinnedWords != null;
+	}
+	
+	public int size() {
+		return pinnedWords != null ? pinnedWords.size() + cache.size() : cache.size();
+	}
+	
+	public int getMaximumSize() {
+		return cache.getMaximumSize();
+	}
+	
+	public long getExpireAfterAccessMillis() {
+		return cache.getExpireAfterAccessMillis();
+	}
+	
+	/**
+	 * @return The count of words that were evicted or expired.
+	 */
+	public long getEvictions() {
+		return cache.getEvictions();
+	}
+	
+	/**
+	 * @return The estimated memory footprint of the partition in bytes, without the substring index of
+	 *         the evictable words nor the shared key dictionary of a compact partition.
+	 */
+	public long getEstimatedFootprint() {
+		Filters filters = this.filters;
+		long footprint = cache.getWeight() + filters.words.getFootprint() + filters.keys.getFootprint();
+		return pinnedWords != null ? footprint + pinnedWords.getFootprint() : footprint;
+	}
+	
+	/**
+	 * Removes the expired words.
+	 */
+	public void cleanUp() {
+		cache.cleanUp();
+	}
+	
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	public long getPuts() {
+		return puts.sum();
+	}
+	
+	@Override
+	public String toString() {
+		return "ReverseI18nPartition [locale=" + locale + ", size=" + size() + ", hits=" + getHits() + ", misses="
+		        + getMisses() + ", puts=" + getPuts() + ", evictions=" + getEvictions() + ", footprint="
+		        + getEstimatedFootprint() + "]";
+	}
+}
@@ -0,0 +1,204 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A compact binary snapshot of the reverse translations of a cache, so that a restarted cache can
+ * be filled again without going through the message source service. The layout is:
+ *
+ * <pre>
+ * int    magic number
+ * int    format version
+ * long   checksum of the i18n messages and of the word folding the snapshot was taken from
+ * int    count of locales
+ *   string  locale language tag
+ *   int     count of words
+ *     string  folded word
+ *     string  i18n message key
+ *     byte    1 if the word is pinned, 0 otherwise
+ * long   CRC32 of all the above
+ * </pre>
+ *
+ * Strings are written as their count of UTF-8 bytes followed by the bytes. Snapshots are written to
+ * a temporary file that then replaces the previous snapshot, and read through a memory-mapped
+ * buffer.
+ */
+public class ReverseI18nSnapshot {
+	
+	private static final int MAGIC = 0x45583138; // "EX18"
+	
+	public static final int VERSION = 2;
+	
+	/**
+	 * A word and its i18n message key.
+	 */
+	public static final class Entry {
+		
+		private final String word;
+		
+		private final String key;
+		
+		private final boolean pinned;
+		
+		public Entry(String word, String key, boolean pinned) {
+			this.word = word;
+			this.key = key;
+			this.pinned = pinned;
+		}
+		
+		public String getWord() {
+			return word;
+		}
+		
+		public String getKey() {
+			return key;
+		}
+		
+		public boolean isPinned() {
+			return pinned;
+		}
+	}
+	
+	private final long messagesChecksum;
+	
+	private final Map<Locale, List<Entry>> entries;
+	
+	public ReverseI18nSnapshot(long messagesChecksum, Map<Locale, List<Entry>> entries) {
+		this.messagesChecksum = messagesChecksum;
+		this.entries = entries;
+	}
+	
+	public long getMessagesChecksum() {
+		return messagesChecksum;
+	}
+	
+	public Collection<Locale> getLocales() {
+		return entries.keySet();
+	}
+	
+	public Map<Locale, List<Entry>> getEntries() {
+		return entries;
+	}
+	
+	/**
+	 * Writes the snapshot, replacing the file only once it is fully written.
+	 */
+	public void write(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)),
+		        new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(messagesChecksum);
+			out.writeInt(entries.size());
+			for (Map.Entry<Locale, List<Entry>> locale : entries.entrySet()) {
+				writeString(out, locale.getKey().toLanguageTag());
+				out.writeInt(locale.getValue().size());
+				for (Entry entry : locale.getValue()) {
+					writeString(out, entry.word);
+					writeString(out, entry.key);
+					out.writeByte(entry.pinned ? 1 : 0);
+				}
+			}
+			out.flush();
+			out.writeLong(checked.getChecksum().getValue());
+		}
+		finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Reads a snapshot through a memory-mapped buffer.
+	 * 
+	 * @return The snapshot, null if the file does not exist, is corrupted or of another format
+	 *         version.
+	 */
+	public static ReverseI18nSnapshot read(File file) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() < 28 || channel.size() > Integer.MAX_VALUE) {
+				return null;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			
+			ByteBuffer body = buffer.duplicate();
+			body.limit(buffer.limit() - 8);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			if (crc.getValue() != buffer.getLong(buffer.limit() - 8)) {
+				return null;
+			}
+			
+			buffer.limit(buffer.limit() - 8);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				return null;
+			}
+			long messagesChecksum = buffer.getLong();
+			int localesCount = buffer.getInt();
+			Map<Locale, List<Entry>> entries = new LinkedHashMap<Locale, List<Entry>>();
+			for (int i = 0; i < localesCount; i++) {
+				Locale locale = Locale.forLanguageTag(readString(buffer));
+				int count = buffer.getInt();
+				List<Entry> list = new ArrayList<Entry>(count);
+				for (int j = 0; j < count; j++) {
+					list.add(new Entry(readString(buffer), readString(buffer), buffer.get() == 1));
+				}
+				entries.put(locale, list);
+			}
+			return new ReverseI18nSnapshot(messagesChecksum, entries);
+		}
+		catch (BufferUnderflowException e) {
+			return null;
+		}
+		catch (IllegalArgumentException e) {
+			return null;
+		}
+		finally {
+			raf.close();
+		}
+	}
+	
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,153 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.beanutils.MethodUtils;
+
+/**
+ * The compiled accessors to some String properties of a class, eg. the address fields of
+ * {@link org.openmrs.PersonAddress} or the localized fields of metadata. The getters and setters
+ * are resolved once per class and per list of properties, and then invoked through method handles
+ * without any introspection or conversion.
+ * <p>
+ * Plans are cached per class by {@link #forClass(Class, List)} and rebuilt when the list of
+ * properties is replaced, eg. the address fields. The {@link LocalizedMetadataRegistry} builds its
+ * own plans for the localized fields of metadata.
+ */
+public class StringPropertyAccessors {
+	
+	private static final MethodType GETTER_TYPE = MethodType.methodType(String.class, Object.class);
+	
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, String.class);
+	
+	private static final ClassValue<AtomicReference<StringPropertyAccessors>> PLANS = new ClassValue<AtomicReference<StringPropertyAccessors>>() {
+		
+		@Override
+		protected AtomicReference<StringPropertyAccessors> computeValue(Class<?> clazz) {
+			return new AtomicReference<StringPropertyAccessors>();
+		}
+	};
+	
+	// The list of properties the plan was built for, compared by identity
+	private final List<String> fields;
+	
+	private final String[] names;
+	
+	private final MethodHandle[] getters;
+	
+	private final MethodHandle[] setters;
+	
+	/**
+	 * @param clazz The class holding the properties.
+	 * @param fields The names of the String bean properties of the class.
+	 * @return The accessors plan of the class for the properties.
+	 * @throws NoSuchMethodException When a property is not a readable and writable String
+	 *             property of the class.
+	 */
+	public static StringPropertyAccessors forClass(Class<?> clazz, List<String> fields) throws NoSuchMethodException {
+		AtomicReference<StringPropertyAccessors> ref = PLANS.get(clazz);
+		StringPropertyAccessors plan = ref.get();
+		if (plan == null || plan.fields != fields) {
+			plan = new StringPropertyAccessors(clazz, fields);
+			ref.set(plan);
+		}
+		return plan;
+	}
+	
+	protected StringPropertyAccessors(Class<?> clazz, List<String> fields) throws NoSuchMethodException {
+		this.fields = fields;
+		this.names = fields.toArray(new String[fields.size()]);
+		this.getters = new MethodHandle[names.length];
+		this.setters = new MethodHandle[names.length];
+		
+		Map<String, PropertyDescriptor> descriptors = new HashMap<String, PropertyDescriptor>();
+		try {
+			for (PropertyDescriptor descriptor : Introspector.getBeanInfo(clazz).getPropertyDescriptors()) {
+				descriptors.put(descriptor.getName(), descriptor);
+			}
+		}
+		catch (IntrospectionException e) {
+			throw (NoSuchMethodException) new NoSuchMethodException("Could not introspect " + clazz).initCause(e);
+		}
+		
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		for (int i = 0; i < names.length; i++) {
+			PropertyDescriptor descriptor = descriptors.get(names[i]);
+			if (descriptor == null || descriptor.getPropertyType() != String.class) {
+				throw new NoSuchMethodException("'" + names[i] + "' is not a String property of " + clazz);
+			}
+			Method getter = MethodUtils.getAccessibleMethod(clazz, descriptor.getReadMethod());
+			Method setter = MethodUtils.getAccessibleMethod(clazz, descriptor.getWriteMethod());
+			if (getter == null || setter == null) {
+				throw new NoSuchMethodException("'" + names[i] + "' is not a readable and writable property of " + clazz);
+			}
+			try {
+				getters[i] = lookup.unreflect(getter).asType(GETTER_TYPE);
+				setters[i] = lookup.unreflect(setter).asType(SETTER_TYPE);
+			}
+			catch (IllegalAccessException e) {
+				throw (NoSuchMethodException) new NoSuchMethodException("'" + names[i] + "' is not accessible in "
+				        + clazz).initCause(e);
+			}
+		}
+	}
+	
+	/**
+	 * @return The count of properties.
+	 */
+	public int size() {
+		return names.length;
+	}
+	
+	/**
+	 * @return The name of the i-th property.
+	 */
+	public String getName(int i) {
+		return names[i];
+	}
+	
+	/**
+	 * @return The value of the i-th property of the bean.
+	 */
+	public String get(Object bean, int i) throws InvocationTargetException {
+		try {
+			return (String) getters[i].invokeExact(bean);
+		}
+		catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	/**
+	 * Sets the value of the i-th property of the bean.
+	 */
+	public void set(Object bean, int i, String value) throws InvocationTargetException {
+		try {
+			setters[i].invokeExact(bean, value);
+		}
+		catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+	
+	private static InvocationTargetException rethrow(Throwable t) {
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return new InvocationTargetException(t);
+	}
+}
@@ -0,0 +1,89 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An incrementally maintained index of the case insensitive trigrams of a set of words. It narrows
+ * down the words that may contain a search string to those sharing its least frequent trigram.
+ * <p>
+ * The indexed words and the search strings are expected to be folded by the same
+ * {@link WordFolding}, and the characters of the trigrams are also folded by
+ * {@link WordFolding#foldCase(char)}, so that the candidates are always a superset of the words
+ * containing the folded search string. Candidates must still be verified, see
+ * {@link ReverseI18nPartition#collectKeysContaining(String, java.util.Collection)}.
+ */
+public class TrigramIndex {
+	
+	private static final int N = 3;
+	
+	private final ConcurrentMap<String, Set<String>> postings = new ConcurrentHashMap<String, Set<String>>();
+	
+	public void add(String word) {
+		for (int i = 0; i + N <= word.length(); i++) {
+			String gram = gram(word, i);
+			Set<String> words = postings.get(gram);
+			if (words == null) {
+				Set<String> newWords = ConcurrentHashMap.newKeySet();
+				words = postings.putIfAbsent(gram, newWords);
+				if (words == null) {
+					words = newWords;
+				}
+			}
+			words.add(word);
+		}
+	}
+	
+	public void remove(String word) {
+		for (int i = 0; i + N <= word.length(); i++) {
+			Set<String> words = postings.get(gram(word, i));
+			if (words != null) {
+				words.remove(word); // empty postings are left behind, they are few and likely reused
+			}
+		}
+	}
+	
+	/**
+	 * @param search The search string.
+	 * @return The words that may contain the search string ignoring case, or null when the index
+	 *         can't narrow down the search and all words must be scanned.
+	 */
+	public Set<String> getCandidates(String search) {
+		if (search.length() < N || hasSurrogates(search)) {
+			return null;
+		}
+		Set<String> candidates = null;
+		for (int i = 0; i + N <= search.length(); i++) {
+			Set<String> words = postings.get(gram(search, i));
+			if (words == null || words.isEmpty()) {
+				return Collections.emptySet();
+			}
+			if (candidates == null || words.size() < candidates.size()) {
+				candidates = words;
+			}
+		}
+		return candidates;
+	}
+	
+	private static String gram(String word, int start) {
+		char[] chars = new char[N];
+		for (int i = 0; i < N; i++) {
+			chars[i] = WordFolding.foldCase(word.charAt(start + i));
+		}
+		return new String(chars);
+	}
+	
+	/*
+	 * Supplementary characters are compared as code points ignoring case, they are not indexed
+	 */
+	private static boolean hasSurrogates(String str) {
+		for (int i = 0; i < str.length(); i++) {
+			if (Character.isSurrogate(str.charAt(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,278 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.text.Normalizer;
+
+/**
+ * The normalization of the translated expressions of the reverse i18n caches, so that a message can
+ * be reverse translated whatever its case and, optionally, its accents and whitespace. The folding
+ * is locale independent: Turkish dotted and dotless i are both folded to 'i'.
+ * <p>
+ * The words are folded once, when they are cached. Lookups fold the messages char by char as they
+ * hash and compare them, through a reusable {@link Probe}, so that they never allocate a folded copy.
+ * Folding is done char by char:
+ * <ul>
+ * <li>Case: each char is folded as {@link String#regionMatches(boolean, int, String, int, int)}
+ * does, the combining dot above that lower casing adds after an 'I' with a dot is dropped.</li>
+ * <li>Accents: precomposed letters are folded to their base letter and combining marks are dropped,
+ * eg. 'Côte' is folded to 'cote'.</li>
+ * <li>Whitespace: leading and trailing whitespace is dropped and inner whitespace runs are folded
+ * to a single space.</li>
+ * </ul>
+ */
+public final class WordFolding {
+	
+	/**
+	 * Folds the case only.
+	 */
+	public static final WordFolding CASE = new WordFolding(false, false);
+	
+	private static final char COMBINING_DOT_ABOVE = '\u0307';
+	
+	// The base letters of the precomposed letters of the first blocks, up to Latin Extended Additional
+	private static final char[] BASE_LETTERS = new char[0x2000];
+	
+	static {
+		for (char c = 0; c < BASE_LETTERS.length; c++) {
+			String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+			BASE_LETTERS[c] = decomposed.length() > 1 && isCombiningMark(decomposed.charAt(1)) ? decomposed.charAt(0) : c;
+		}
+	}
+	
+	private final boolean accents;
+	
+	private final boolean whitespace;
+	
+	private WordFolding(boolean accents, boolean whitespace) {
+		this.accents = accents;
+		this.whitespace = whitespace;
+	}
+	
+	/**
+	 * @param accents Set to true to also fold the accents.
+	 * @param whitespace Set to true to also fold the whitespace.
+	 * @return The folding.
+	 */
+	public static WordFolding of(boolean accents, boolean whitespace) {
+		return accents || whitespace ? new WordFolding(accents, whitespace) : CASE;
+	}
+	
+	public boolean isFoldingAccents() {
+		return accents;
+	}
+	
+	public boolean isFoldingWhitespace() {
+		return whitespace;
+	}
+	
+	/**
+	 * Folds the case of a char, two chars are equal ignoring case when their folds are equal.
+	 */
+	public static char foldCase(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+	
+	private static boolean isCombiningMark(char c) {
+		return Character.getType(c) == Character.NON_SPACING_MARK;
+	}
+	
+	private static boolean isWhitespace(char c) {
+		return Character.isWhitespace(c) || Character.isSpaceChar(c);
+	}
+	
+	/**
+	 * @return The index of the first char to fold, past the leading whitespace when it is folded.
+	 */
+	public int start(CharSequence str) {
+		int start = 0;
+		if (whitespace) {
+			while (start < str.length() && isWhitespace(str.charAt(start))) {
+				start++;
+			}
+		}
+		return start;
+	}
+	
+	/**
+	 * @return The index after the last char to fold, before the trailing whitespace when it is folded.
+	 */
+	public int end(CharSequence str, int start) {
+		int end = str.length();
+		if (whitespace) {
+			while (end > start && isWhitespace(str.charAt(end - 1))) {
+				end--;
+			}
+		}
+		return end;
+	}
+	
+	/**
+	 * @param str The string being folded.
+	 * @param i The index of a char between {@link #start(CharSequence)} and
+	 *            {@link #end(CharSequence, int)}.
+	 * @param start The index of the first char to fold.
+	 * @return The folded char, -1 when the char is dropped.
+	 */
+	public int foldAt(CharSequence str, int i, int start) {
+		char c = str.charAt(i);
+		if (c == COMBINING_DOT_ABOVE) {
+			return -1;
+		}
+		if (whitespace && isWhitespace(c)) {
+			return i > start && isWhitespace(str.charAt(i - 1)) ? -1 : ' ';
+		}
+		if (accents) {
+			if (isCombiningMark(c)) {
+				return -1;
+			}
+			if (c < BASE_LETTERS.length) {
+				c = BASE_LETTERS[c];
+			}
+		}
+		return foldCase(c);
+	}
+	
+	/**
+	 * Folds a translated expression, to be done once when it is cached.
+	 * 
+	 * @return The folded expression.
+	 */
+	public String fold(CharSequence str) {
+		int start = start(str);
+		int end = end(str, start);
+		StringBuilder sb = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			int c = foldAt(str, i, start);
+			if (c >= 0) {
+				sb.append((char) c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * @return The hash code of the folded expression, without folding it, see {@link String#hashCode()}.
+	 */
+	public int hashCode(CharSequence str) {
+		int start = start(str);
+		int end = end(str, start);
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			int c = foldAt(str, i, start);
+			if (c >= 0) {
+				hash = 31 * hash + c;
+			}
+		}
+		return hash;
+	}
+	
+	/**
+	 * @param str An expression.
+	 * @param folded A folded expression.
+	 * @return true if the expression folds into the folded expression, without folding it.
+	 */
+	public boolean matches(CharSequence str, String folded) {
+		int start = start(str);
+		int end = end(str, start);
+		int j = 0;
+		for (int i = start; i < end; i++) {
+			int c = foldAt(str, i, start);
+			if (c < 0) {
+				continue;
+			}
+			if (j == folded.length() || folded.charAt(j++) != c) {
+				return false;
+			}
+		}
+		return j == folded.length();
+	}
+	
+	/**
+	 * @param str An expression.
+	 * @param chars The chars holding a folded expression.
+	 * @param offset The index of the first char of the folded expression.
+	 * @param length The length of the folded expression.
+	 * @return true if the expression folds into the folded expression, without folding it.
+	 */
+	public boolean matches(CharSequence str, char[] chars, int offset, int length) {
+		int start = start(str);
+		int end = end(str, start);
+		int j = offset;
+		int foldedEnd = offset + length;
+		for (int i = start; i < end; i++) {
+			int c = foldAt(str, i, start);
+			if (c < 0) {
+				continue;
+			}
+			if (j == foldedEnd || chars[j++] != c) {
+				return false;
+			}
+		}
+		return j == foldedEnd;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof WordFolding && ((WordFolding) obj).accents == accents
+		        && ((WordFolding) obj).whitespace == whitespace;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (accents ? 2 : 0) | (whitespace ? 1 : 0);
+	}
+	
+	@Override
+	public String toString() {
+		return "WordFolding [case" + (accents ? ", accents" : "") + (whitespace ? ", whitespace" : "") + "]";
+	}
+	
+	/**
+	 * Looks up a message among folded words without folding it: it hashes as the folded message and
+	 * it is equal to the folded message. It is not equal to other probes, so it is only meant to be
+	 * passed to {@link java.util.Map#get(Object)} and the likes, or to {@link CompactWordTable}. A
+	 * probe is reused by its thread.
+	 */
+	public static final class Probe {
+		
+		private WordFolding folding;
+		
+		private CharSequence message;
+		
+		private int hash;
+		
+		/**
+		 * @return This probe, set to look up the message.
+		 */
+		public Probe set(WordFolding folding, CharSequence message) {
+			this.folding = folding;
+			this.message = message;
+			this.hash = folding.hashCode(message);
+			return this;
+		}
+		
+		/**
+		 * Releases the message.
+		 */
+		public void clear() {
+			this.message = null;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		/**
+		 * @return true if the message folds into the folded expression held by the chars, see
+		 *         {@link WordFolding#matches(CharSequence, char[], int, int)}.
+		 */
+		public boolean matches(char[] chars, int offset, int length) {
+			return folding.matches(message, chars, offset, length);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof String && ((String) obj).hashCode() == hash && folding.matches(message, (String) obj);
+		}
+	}
+}
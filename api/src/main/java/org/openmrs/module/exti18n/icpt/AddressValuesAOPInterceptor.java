@@ -1,7 +1,5 @@
 package org.openmrs.module.exti18n.icpt;
 
-import org.aopalliance.intercept.MethodInterceptor;
-import org.aopalliance.intercept.MethodInvocation;
 import org.openmrs.Location;
 import org.openmrs.PersonAddress;
 import org.openmrs.api.context.Context;
@@ -15,14 +13,10 @@ import org.openmrs.module.exti18n.api.impl.BaseLocalizer;
  * that only i18n messages values get returned from the database when it comes to address values.
  * Note that only the fields that correspond to the address hierarchy levels are being localized.
  */
-public class AddressValuesAOPInterceptor implements MethodInterceptor {
+public class AddressValuesAOPInterceptor extends BaseL10nAOPInterceptor {
 	
 	@Override
-	public Object invoke(MethodInvocation invocation) throws Throwable {
-		
-		BaseLocalizer<?> l10n = Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_ADDRESSVALUES_LOCALIZER,
-		    AddressValuesLocalizer.class);
-		
-		return l10n.process(invocation.proceed());
+	protected BaseLocalizer<?> lookupLocalizer() {
+		return Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_ADDRESSVALUES_LOCALIZER, AddressValuesLocalizer.class);
 	}
 }
@@ -1,14 +1,14 @@
 package org.openmrs.module.exti18n.icpt;
 
 import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.hibernate.EmptyInterceptor;
 import org.hibernate.type.Type;
 import org.openmrs.Location;
 import org.openmrs.PersonAddress;
+import org.openmrs.module.exti18n.api.ReverseI18nCache;
 import org.openmrs.module.exti18n.api.impl.AddressHierarchyI18nCacheImpl;
+import org.openmrs.module.exti18n.api.impl.ExtI18nMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
 
 /**
@@ -18,18 +18,34 @@ import org.springframework.beans.factory.annotation.Autowired;
  * address values. Note that only the fields that correspond to the address hierarchy levels are
  * being internationalized.
  */
-public class AddressValuesHibernateInterceptor extends EmptyInterceptor {
+public class AddressValuesHibernateInterceptor extends BaseI18nHibernateInterceptor {
 	
 	private static final long serialVersionUID = 442693627741326089L;
 	
+	/*
+	 * Metrics: the intercepted entities, see ExtI18nMetrics
+	 */
+	private static final LongAdder ENTITIES = ExtI18nMetrics.counter("addressValuesHibernateInterceptor.entities");
+	
 	@Autowired
 	private AddressHierarchyI18nCacheImpl i18nCache;
 	
+	public AddressValuesHibernateInterceptor() {
+		super("addressValuesHibernateInterceptor");
+	}
+	
+	@Override
+	protected ReverseI18nCache getI18nCache() {
+		return i18nCache;
+	}
+	
 	@Override
 	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
 		
 		if (i18nCache.isEnabled() && (entity instanceof PersonAddress || entity instanceof Location)) {
-			i18nAddressValues(propertyNames, state);
+			awaitReadyCache();
+			ENTITIES.increment();
+			i18nAddressValues(entity.getClass(), propertyNames, state, null);
 			return true;
 		}
 		
@@ -41,7 +57,9 @@ public class AddressValuesHibernateInterceptor extends EmptyInterceptor {
 	        String[] propertyNames, Type[] types) {
 		
 		if (i18nCache.isEnabled() && (entity instanceof PersonAddress || entity instanceof Location)) {
-			i18nAddressValues(propertyNames, currentState);
+			awaitReadyCache();
+			ENTITIES.increment();
+			i18nAddressValues(entity.getClass(), propertyNames, currentState, previousState);
 			return true;
 		}
 		
@@ -51,15 +69,9 @@ public class AddressValuesHibernateInterceptor extends EmptyInterceptor {
 	/*
 	 * Only for the address fields of the AH
 	 */
-	protected void i18nAddressValues(String[] fields, Object[] values) {
-		final Set<String> i18nFields = new HashSet<String>(i18nCache.getOrderedAddressFields());
-		for (int i = 0; i < fields.length; i++) {
-			if (!i18nFields.contains(fields[i])) {
-				continue;
-			}
-			if (values[i] != null && values[i] instanceof String) {
-				values[i] = i18nCache.getMessageKey((String) values[i]);
-			}
+	protected void i18nAddressValues(Class<?> entityClass, String[] fields, Object[] values, Object[] previousValues) {
+		for (int i : plans.getIndexes(entityClass, fields, i18nCache.getOrderedAddressFields())) {
+			values[i] = i18nValue(values[i], previousValues != null ? previousValues[i] : null);
 		}
 	}
 }
@@ -0,0 +1,93 @@
+package org.openmrs.module.exti18n.icpt;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.EmptyInterceptor;
+import org.openmrs.module.exti18n.ExtI18nConstants;
+import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.ExtI18nMetrics;
+
+/**
+ * Base interceptor internationalizing the localized fields of entities (=substituting their values
+ * with i18n message keys) before they are saved. The indexes of the fields in the Hibernate state
+ * arrays are planned once per entity class, see {@link PropertyIndexPlans}.
+ */
+public abstract class BaseI18nHibernateInterceptor extends EmptyInterceptor {
+	
+	private static final Log log = LogFactory.getLog(BaseI18nHibernateInterceptor.class);
+	
+	private static final long serialVersionUID = 3094512867423197521L;
+	
+	/*
+	 * Metrics: the reverse translated fields and the fields whose text had no i18n message key, see
+	 * ExtI18nMetrics
+	 */
+	private final LongAdder fieldsCounter;
+	
+	private final LongAdder rawWritesCounter;
+	
+	protected final PropertyIndexPlans plans = new PropertyIndexPlans();
+	
+	// Whether waiting for the ongoing preload timed out, see awaitReadyCache()
+	private volatile boolean awaitTimedOut = false;
+	
+	/**
+	 * @param metricsName The name prefix of the metrics of the interceptor, eg.
+	 *            "metadataHibernateInterceptor".
+	 */
+	protected BaseI18nHibernateInterceptor(String metricsName) {
+		this.fieldsCounter = ExtI18nMetrics.counter(metricsName + ".fields");
+		this.rawWritesCounter = ExtI18nMetrics.counter(metricsName + ".rawWrites");
+	}
+	
+	/**
+	 * @return The cache through which the values are reverse translated.
+	 */
+	protected abstract ReverseI18nCache getI18nCache();
+	
+	/*
+	 * The reverse translations of a cache being preloaded may not be there yet. A flush only waits
+	 * briefly for them, and once a wait timed out the next flushes don't wait at all until the preload
+	 * is over: meanwhile the values are restored through the keys of their previous state, see
+	 * i18nValue().
+	 */
+	protected void awaitReadyCache() {
+		ReverseI18nCache i18nCache = getI18nCache();
+		if (i18nCache.isReady()) {
+			awaitTimedOut = false;
+			return;
+		}
+		if (!awaitTimedOut && !i18nCache.awaitReady(ExtI18nConstants.PRELOAD_AWAIT_MILLIS)) {
+			awaitTimedOut = true;
+			log.warn("The reverse i18n cache is still being preloaded, some values may not be internationalized.");
+		}
+	}
+	
+	/*
+	 * A value that is the translation of its previous state is restored to that exact i18n key, only
+	 * the edited values are reverse translated.
+	 */
+	protected Object i18nValue(Object value, Object previousValue) {
+		if (!(value instanceof String)) {
+			return value;
+		}
+		ReverseI18nCache i18nCache = getI18nCache();
+		if (previousValue instanceof String) {
+			if (value.equals(previousValue)) {
+				return value;
+			}
+			if (value.equals(i18nCache.getMessage((String) previousValue))) {
+				fieldsCounter.increment();
+				return previousValue;
+			}
+		}
+		fieldsCounter.increment();
+		String key = i18nCache.getMessageKey((String) value);
+		if (value.equals(key)) {
+			rawWritesCounter.increment();
+		}
+		return key;
+	}
+}
@@ -0,0 +1,225 @@
+package org.openmrs.module.exti18n.icpt;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.exti18n.api.impl.BaseLocalizer;
+import org.openmrs.module.exti18n.api.impl.ExtI18nMetrics;
+
+/**
+ * Base advice localizing the results of service methods. The localizer is looked up once, and each
+ * service method is classified once based on its return type, or again when the covered classes
+ * change (ie. when the localizer returns another array of covered classes): only the methods that
+ * can return covered entities, or collections of them, are localized. The others, such as void
+ * saves, counts or purges, just proceed.
+ * <p>
+ * In read-only localization mode, the entities localized by calls that don't take any entity as
+ * argument are marked read-only in the Hibernate session. Entities passed as arguments are made
+ * writable again, with their i18n message keys restored, before the call proceeds.
+ * <p>
+ * The same advice type is stacked on several services that call each other, so only the outermost
+ * advised call of each thread localizes its results. The nested calls return their results as is
+ * to the calling service, which would otherwise get them localized several times.
+ */
+public abstract class BaseL10nAOPInterceptor implements MethodInterceptor {
+	
+	/*
+	 * The advised calls depth of the current thread, whether its outermost call localizes its results,
+	 * and the count of avoided nested localizations, per advice type.
+	 */
+	private static class NestingGuard {
+		
+		private static final int DEPTH = 0;
+		
+		private static final int OUTERMOST_LOCALIZES = 1;
+		
+		private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+			
+			@Override
+			protected int[] initialValue() {
+				return new int[2];
+			}
+		};
+		
+		private final LongAdder avoidedPasses;
+		
+		NestingGuard(LongAdder avoidedPasses) {
+			this.avoidedPasses = avoidedPasses;
+		}
+	}
+	
+	private static final ClassValue<NestingGuard> GUARDS = new ClassValue<NestingGuard>() {
+		
+		@Override
+		protected NestingGuard computeValue(Class<?> type) {
+			return new NestingGuard(ExtI18nMetrics.counter(StringUtils.uncapitalize(type.getSimpleName())
+			        + ".avoidedPasses"));
+		}
+	};
+	
+	private final NestingGuard guard = GUARDS.get(getClass());
+	
+	private volatile BaseLocalizer<?> localizer;
+	
+	/*
+	 * Whether each service method can return covered entities, for a given set of covered classes.
+	 */
+	private static class Applicability {
+		
+		private final Class<?>[] coveredClasses;
+		
+		private final ConcurrentMap<Method, Boolean> methods = new ConcurrentHashMap<Method, Boolean>();
+		
+		Applicability(Class<?>[] coveredClasses) {
+			this.coveredClasses = coveredClasses;
+		}
+	}
+	
+	// Replaced when the covered classes change
+	private volatile Applicability applicability = new Applicability(new Class<?>[0]);
+	
+	/**
+	 * Looks up the localizer in the OpenMRS context, this is called once.
+	 */
+	abstract protected BaseLocalizer<?> lookupLocalizer();
+	
+	protected BaseLocalizer<?> getLocalizer() {
+		BaseLocalizer<?> l10n = localizer;
+		if (l10n == null) {
+			l10n = lookupLocalizer();
+			localizer = l10n;
+		}
+		return l10n;
+	}
+	
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		
+		BaseLocalizer<?> l10n = getLocalizer();
+		if (l10n == null || !l10n.isEnabled()) {
+			return invocation.proceed();
+		}
+		
+		// Entities passed to a service method may be saved, their read-only localizations are released
+		boolean readOnly = l10n.isReadOnlyLocalization();
+		if (readOnly && invocation.getArguments() != null) {
+			for (Object arg : invocation.getArguments()) {
+				if (arg instanceof OpenmrsObject || arg instanceof Collection<?>) {
+					l10n.release(arg);
+					readOnly = false;
+				}
+			}
+		}
+		
+		int[] depth = guard.depth.get();
+		if (depth[NestingGuard.DEPTH] > 0) {
+			// only a localization that the outermost call would have done again is avoided
+			if (depth[NestingGuard.OUTERMOST_LOCALIZES] == 1 && isApplicable(invocation.getMethod(), l10n)) {
+				guard.avoidedPasses.increment();
+			}
+			return invocation.proceed();
+		}
+		
+		boolean applicable = isApplicable(invocation.getMethod(), l10n);
+		depth[NestingGuard.DEPTH]++;
+		depth[NestingGuard.OUTERMOST_LOCALIZES] = applicable ? 1 : 0;
+		Object result;
+		try {
+			result = invocation.proceed();
+		}
+		finally {
+			depth[NestingGuard.DEPTH]--;
+		}
+		if (!applicable) {
+			return result;
+		}
+		return l10n.process(result, readOnly);
+	}
+	
+	/**
+	 * @param adviceType The type of advice, eg. {@link MetadataAOPInterceptor}.
+	 * @return The number of localizations that were avoided because the service call was nested in
+	 *         another call advised by the same advice type.
+	 */
+	public static long getAvoidedPasses(Class<? extends BaseL10nAOPInterceptor> adviceType) {
+		return GUARDS.get(adviceType).avoidedPasses.sum();
+	}
+	
+	protected boolean isApplicable(Method method, BaseLocalizer<?> l10n) {
+		Class<?>[] coveredClasses = l10n.getCoveredClasses();
+		Applicability applicability = this.applicability;
+		if (applicability.coveredClasses != coveredClasses) { // the same array until they change
+			applicability = new Applicability(coveredClasses);
+			this.applicability = applicability;
+		}
+		Boolean applicable = applicability.methods.get(method);
+		if (applicable == null) {
+			applicable = canReturnCoveredEntities(method, coveredClasses);
+			applicability.methods.putIfAbsent(method, applicable);
+		}
+		return applicable;
+	}
+	
+	/**
+	 * @param method A service method.
+	 * @param coveredClasses The classes of the entities that are localized.
+	 * @return true if the method can return a covered entity or a collection of covered entities.
+	 */
+	public static boolean canReturnCoveredEntities(Method method, Class<?>[] coveredClasses) {
+		Class<?> returnType = method.getReturnType();
+		if (Collection.class.isAssignableFrom(returnType)) {
+			return canBeCovered(getElementType(method.getGenericReturnType()), coveredClasses);
+		}
+		return canBeCovered(returnType, coveredClasses);
+	}
+	
+	/*
+	 * The element type of a collection type, Object when it can't be resolved.
+	 */
+	private static Type getElementType(Type collectionType) {
+		if (collectionType instanceof ParameterizedType) {
+			Type[] args = ((ParameterizedType) collectionType).getActualTypeArguments();
+			if (args.length == 1) {
+				return args[0];
+			}
+		}
+		return Object.class;
+	}
+	
+	private static boolean canBeCovered(Type type, Class<?>[] coveredClasses) {
+		if (type instanceof ParameterizedType) {
+			type = ((ParameterizedType) type).getRawType();
+		}
+		if (type instanceof WildcardType) {
+			type = ((WildcardType) type).getUpperBounds()[0];
+		}
+		if (type instanceof TypeVariable<?>) {
+			type = ((TypeVariable<?>) type).getBounds()[0];
+		}
+		if (!(type instanceof Class<?>)) {
+			return true; // can't tell
+		}
+		Class<?> clazz = (Class<?>) type;
+		if (clazz.isPrimitive() || clazz.isArray()) {
+			return false;
+		}
+		for (Class<?> coveredClass : coveredClasses) {
+			// either a covered entity or a super type that may hold one (eg. BaseOpenmrsMetadata)
+			if (coveredClass.isAssignableFrom(clazz) || clazz.isAssignableFrom(coveredClass)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,135 @@
+package org.openmrs.module.exti18n.icpt;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openmrs.api.context.Context;
+import org.openmrs.messagesource.MessageSourceService;
+import org.openmrs.messagesource.MutableMessageSource;
+import org.openmrs.messagesource.PresentationMessage;
+import org.openmrs.module.exti18n.ExtI18nConstants;
+import org.openmrs.module.exti18n.api.AddressHierarchyI18nCache;
+import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.I18nInvalidationBroadcaster;
+
+/**
+ * This intercepts the changes made to the i18n messages through the {@link MessageSourceService},
+ * so that the i18n caches are updated in time proportional to the change rather than flushed: only
+ * the changed i18n message keys are updated, in the locales where they changed, and the change is
+ * propagated to the other cluster nodes.
+ * <p>
+ * Adding or removing a message changes its key in its locale. Merging another message source may
+ * change all of its keys, in their locales. Switching to another message source changes
+ * everything.
+ */
+public class MessageSourceAOPInterceptor implements MethodInterceptor {
+	
+	private volatile List<ReverseI18nCache> caches;
+	
+	private volatile I18nInvalidationBroadcaster invalidations;
+	
+	/**
+	 * Looks up the i18n caches in the OpenMRS context, this is called once.
+	 */
+	protected List<ReverseI18nCache> lookupCaches() {
+		return Arrays.<ReverseI18nCache> asList(
+		    Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_REVI18N, ReverseI18nCache.class),
+		    Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_AH_REVI18N, AddressHierarchyI18nCache.class));
+	}
+	
+	/**
+	 * Looks up the invalidations broadcaster in the OpenMRS context, this is called once.
+	 */
+	protected I18nInvalidationBroadcaster lookupInvalidations() {
+		return Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_INVALIDATIONS,
+		    I18nInvalidationBroadcaster.class);
+	}
+	
+	protected List<ReverseI18nCache> getCaches() {
+		List<ReverseI18nCache> caches = this.caches;
+		if (caches == null) {
+			caches = lookupCaches();
+			this.caches = caches;
+		}
+		return caches;
+	}
+	
+	protected I18nInvalidationBroadcaster getInvalidations() {
+		I18nInvalidationBroadcaster invalidations = this.invalidations;
+		if (invalidations == null) {
+			invalidations = lookupInvalidations();
+			this.invalidations = invalidations;
+		}
+		return invalidations;
+	}
+	
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		
+		Object[] args = invocation.getArguments();
+		Map<Locale, Set<String>> changes;
+		switch (invocation.getMethod().getName()) {
+			case "addPresentation":
+			case "removePresentation":
+				if (args.length != 1 || !(args[0] instanceof PresentationMessage)) {
+					return invocation.proceed();
+				}
+				PresentationMessage pm = (PresentationMessage) args[0];
+				Set<String> keys = Collections.singleton(pm.getCode());
+				changes = Collections.singletonMap(pm.getLocale(), keys);
+				break;
+			case "merge":
+				if (args.length != 2 || !(args[0] instanceof MutableMessageSource)) {
+					return invocation.proceed();
+				}
+				changes = getKeysByLocale(((MutableMessageSource) args[0]).getPresentations());
+				break;
+			case "setActiveMessageSource":
+				changes = null;
+				break;
+			default:
+				return invocation.proceed(); // the reads
+		}
+		
+		Object result = invocation.proceed();
+		if (changes == null) {
+			for (ReverseI18nCache cache : getCaches()) {
+				cache.invalidateTranslations();
+			}
+			getInvalidations().publishTranslationsChanged(null);
+			return result;
+		}
+		for (Map.Entry<Locale, Set<String>> change : changes.entrySet()) {
+			for (ReverseI18nCache cache : getCaches()) {
+				cache.updateTranslations(change.getKey(), change.getValue());
+			}
+			getInvalidations().publishTranslationsChanged(change.getValue());
+		}
+		return result;
+	}
+	
+	private static Map<Locale, Set<String>> getKeysByLocale(Collection<PresentationMessage> presentations) {
+		Map<Locale, Set<String>> keys = new HashMap<Locale, Set<String>>();
+		if (presentations == null) {
+			return keys;
+		}
+		for (PresentationMessage pm : presentations) {
+			Set<String> localeKeys = keys.get(pm.getLocale());
+			if (localeKeys == null) {
+				localeKeys = new LinkedHashSet<String>();
+				keys.put(pm.getLocale(), localeKeys);
+			}
+			localeKeys.add(pm.getCode());
+		}
+		return keys;
+	}
+}
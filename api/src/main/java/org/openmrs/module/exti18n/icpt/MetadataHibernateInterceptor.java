@@ -1,46 +1,74 @@
 package org.openmrs.module.exti18n.icpt;
 
 import java.io.Serializable;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.hibernate.EmptyInterceptor;
+import org.apache.commons.lang.ObjectUtils;
 import org.hibernate.type.Type;
-import org.openmrs.Location;
-import org.openmrs.PatientIdentifierType;
-import org.openmrs.PersonAttributeType;
-import org.openmrs.VisitType;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.exti18n.ExtI18nConfig;
 import org.openmrs.module.exti18n.ExtI18nConstants;
 import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.ExtI18nMetrics;
+import org.openmrs.module.exti18n.api.impl.LocalizedMetadataRegistry;
+import org.openmrs.module.exti18n.api.impl.LocalizedMetadataRegistry.Plan;
+import org.openmrs.module.exti18n.api.impl.LocalizedValuesMemo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 /**
- * Ensures that metadata objects are internationalized before being saved again.
- * 
+ * Ensures that metadata objects are internationalized before being saved again. The covered
+ * metadata classes and their fields are those of the {@link LocalizedMetadataRegistry}.
+ *
  * @see MetadataAOPInterceptor
  */
-public class MetadataHibernateInterceptor extends EmptyInterceptor {
+public class MetadataHibernateInterceptor extends BaseI18nHibernateInterceptor {
 	
 	private static final long serialVersionUID = 8121430714632367748L;
 	
+	/*
+	 * Metrics: the intercepted entities, see ExtI18nMetrics
+	 */
+	private static final LongAdder ENTITIES = ExtI18nMetrics.counter("metadataHibernateInterceptor.entities");
+	
 	@Autowired
 	@Qualifier(ExtI18nConstants.COMPONENT_REVI18N)
 	private ReverseI18nCache i18nCache;
 	
-	private final Set<String> targetFields = new HashSet<String>(Arrays.asList("name", "description", "formatDescription"));
+	@Autowired(required = false)
+	@Qualifier(ExtI18nConstants.COMPONENT_L10N_MEMO)
+	private LocalizedValuesMemo memo;
+	
+	@Autowired(required = false)
+	private ExtI18nConfig config;
+	
+	public MetadataHibernateInterceptor() {
+		super("metadataHibernateInterceptor");
+	}
+	
+	@Override
+	protected ReverseI18nCache getI18nCache() {
+		return i18nCache;
+	}
+	
+	protected LocalizedMetadataRegistry getLocalizedMetadata() {
+		return config != null ? config.getLocalizedMetadata() : LocalizedMetadataRegistry.getDefault();
+	}
 	
 	protected boolean isCoveredEntity(Object entity) {
-		return entity instanceof Location || entity instanceof VisitType || entity instanceof PersonAttributeType
-		        || entity instanceof PatientIdentifierType;
+		return getLocalizedMetadata().isCovered(entity.getClass());
 	}
 	
 	@Override
 	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
 		
 		if (i18nCache.isEnabled() && isCoveredEntity(entity)) {
-			i18nMetadata(propertyNames, state);
+			awaitReadyCache();
+			ENTITIES.increment();
+			i18nMetadata(entity.getClass(), propertyNames, state, null);
+			invalidateMemo(entity);
 			return true;
 		}
 		
@@ -52,21 +80,49 @@ public class MetadataHibernateInterceptor extends EmptyInterceptor {
 	        String[] propertyNames, Type[] types) {
 		
 		if (i18nCache.isEnabled() && isCoveredEntity(entity)) {
-			i18nMetadata(propertyNames, currentState);
+			awaitReadyCache();
+			ENTITIES.increment();
+			i18nMetadata(entity.getClass(), propertyNames, currentState, previousState);
+			if (previousState == null || !sameMetadata(entity.getClass(), propertyNames, currentState, previousState)) {
+				invalidateMemo(entity);
+			}
 			return true;
 		}
 		
 		return false;
 	}
 	
-	protected void i18nMetadata(String[] fields, Object[] values) {
-		for (int i = 0; i < fields.length; i++) {
-			if (!targetFields.contains(fields[i])) {
-				continue;
-			}
-			if (values[i] != null && values[i] instanceof String) {
-				values[i] = i18nCache.getMessageKey((String) values[i]);
+	/*
+	 * Localized entities are flushed as dirty, their memoized values are only dropped when their i18n
+	 * keys actually changed.
+	 */
+	protected boolean sameMetadata(Class<?> entityClass, String[] fields, Object[] currentValues,
+	        Object[] previousValues) {
+		for (int i : plans.getIndexes(entityClass, fields, getTargetFields(entityClass))) {
+			if (!ObjectUtils.equals(currentValues[i], previousValues[i])) {
+				return false;
 			}
 		}
+		return true;
+	}
+	
+	/*
+	 * The localized fields of the entity class, the same list until the configuration changes
+	 */
+	private List<String> getTargetFields(Class<?> entityClass) {
+		Plan plan = getLocalizedMetadata().getPlan(entityClass);
+		return plan != null ? plan.getFields() : Collections.<String> emptyList();
+	}
+	
+	protected void invalidateMemo(Object entity) {
+		if (memo != null) {
+			memo.invalidate(((OpenmrsObject) entity).getUuid());
+		}
+	}
+	
+	protected void i18nMetadata(Class<?> entityClass, String[] fields, Object[] values, Object[] previousValues) {
+		for (int i : plans.getIndexes(entityClass, fields, getTargetFields(entityClass))) {
+			values[i] = i18nValue(values[i], previousValues != null ? previousValues[i] : null);
+		}
 	}
 }
@@ -0,0 +1,78 @@
+package org.openmrs.module.exti18n.icpt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The indexes, in the Hibernate state arrays of each entity class, of the properties that are to be
+ * internationalized. They are computed once per entity class and per fields configuration, so that
+ * the interceptors only loop over the indexes at flush time.
+ * <p>
+ * A plan is validated by identity against the property names array, that Hibernate hands over
+ * unchanged for a given entity class, and against the fields collection, that is replaced as a whole
+ * when the configuration changes.
+ */
+public class PropertyIndexPlans {
+	
+	private static final class Plan {
+		
+		private final String[] propertyNames;
+		
+		private final Collection<String> fields;
+		
+		private final int[] indexes;
+		
+		Plan(String[] propertyNames, Collection<String> fields, int[] indexes) {
+			this.propertyNames = propertyNames;
+			this.fields = fields;
+			this.indexes = indexes;
+		}
+	}
+	
+	private final ClassValue<AtomicReference<Plan>> plans = new ClassValue<AtomicReference<Plan>>() {
+		
+		@Override
+		protected AtomicReference<Plan> computeValue(Class<?> clazz) {
+			return new AtomicReference<Plan>();
+		}
+	};
+	
+	/**
+	 * @param entityClass The class of the flushed entity.
+	 * @param propertyNames The property names of the entity, as passed to the interceptor.
+	 * @param fields The names of the properties to internationalize.
+	 * @return The indexes of the properties to internationalize.
+	 */
+	public int[] getIndexes(Class<?> entityClass, String[] propertyNames, Collection<String> fields) {
+		AtomicReference<Plan> ref = plans.get(entityClass);
+		Plan plan = ref.get();
+		if (plan != null && plan.fields == fields) {
+			if (plan.propertyNames == propertyNames) {
+				return plan.indexes;
+			}
+			if (Arrays.equals(plan.propertyNames, propertyNames)) {
+				return plan.indexes; // same properties, another array
+			}
+		}
+		plan = new Plan(propertyNames, fields, computeIndexes(propertyNames, fields));
+		ref.set(plan);
+		return plan.indexes;
+	}
+	
+	private static int[] computeIndexes(String[] propertyNames, Collection<String> fields) {
+		List<Integer> indexes = new ArrayList<Integer>();
+		for (int i = 0; i < propertyNames.length; i++) {
+			if (fields.contains(propertyNames[i])) {
+				indexes.add(i);
+			}
+		}
+		int[] array = new int[indexes.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = indexes.get(i);
+		}
+		return array;
+	}
+}
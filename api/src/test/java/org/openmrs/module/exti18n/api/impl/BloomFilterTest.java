@@ -0,0 +1,45 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BloomFilterTest {
+	
+	@Test
+	public void mightContain_shouldNeverRejectAPutStringWhateverItsCase() {
+		BloomFilter filter = new BloomFilter(1000);
+		String[] messages = new String[] { "Health center", "ÉCOLE", "ΟΔΟΣ", "İstanbul", "Straße", "TITLE" };
+		for (String message : messages) {
+			filter.put(message.toLowerCase());
+			filter.put(message.toLowerCase(new Locale("tr")));
+		}
+		
+		for (String message : messages) {
+			Assert.assertTrue(message, filter.mightContain(message));
+			Assert.assertTrue(message, filter.mightContain(message.toLowerCase()));
+			String upperCased = message.toUpperCase();
+			if (upperCased.toLowerCase().equals(message.toLowerCase())) { // eg. not for 'ß'
+				Assert.assertTrue(message, filter.mightContain(upperCased));
+			}
+		}
+	}
+	
+	@Test
+	public void mightContain_shouldRejectMostUnknownStrings() {
+		BloomFilter filter = new BloomFilter(1000);
+		for (int i = 0; i < 1000; i++) {
+			filter.put("translation " + i);
+		}
+		
+		int falsePositives = 0;
+		for (int i = 0; i < 10000; i++) {
+			if (filter.mightContain("some.i18n.key." + i)) {
+				falsePositives++;
+			}
+		}
+		Assert.assertTrue("false positives: " + falsePositives, falsePositives < 300);
+		Assert.assertEquals(2000, filter.getInsertions() * 2);
+	}
+}
@@ -0,0 +1,120 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BoundedCacheTest {
+	
+	@Test
+	public void put_shouldEvictTheLeastFrequentlyUsedEntries() {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(16, 10, 0);
+		for (int i = 0; i < 10; i++) {
+			cache.put("hot" + i, "value");
+		}
+		for (int n = 0; n < 3; n++) {
+			for (int i = 0; i < 10; i++) {
+				cache.get("hot" + i);
+			}
+		}
+		for (int i = 0; i < 5; i++) {
+			cache.put("cold" + i, "value");
+			Assert.assertEquals("value", cache.get("cold" + i)); // always admitted
+		}
+		
+		Assert.assertEquals(10, cache.size());
+		Assert.assertEquals(5, cache.getEvictions());
+	}
+	
+	@Test
+	public void put_shouldNeverEvictPinnedEntries() {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(16, 5, 0);
+		for (int i = 0; i < 20; i++) {
+			cache.put("pinned" + i, "value", true);
+		}
+		for (int i = 0; i < 100; i++) {
+			cache.put("word" + i, "value");
+		}
+		
+		Assert.assertEquals(25, cache.size());
+		for (int i = 0; i < 20; i++) {
+			Assert.assertTrue(cache.isPinned("pinned" + i));
+		}
+		cache.put("pinned0", "new value");
+		Assert.assertTrue(cache.isPinned("pinned0"));
+	}
+	
+	@Test
+	public void get_shouldExpireIdleEntries() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(16, 0, 20);
+		cache.put("idle", "value");
+		cache.put("pinned", "value", true);
+		
+		Thread.sleep(50);
+		
+		Assert.assertNull(cache.get("idle"));
+		Assert.assertEquals("value", cache.get("pinned"));
+		Assert.assertEquals(1, cache.getEvictions());
+	}
+	
+	@Test
+	public void put_shouldKeepTheWeightInLineWithTheEntries() {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>(16, 10, 0,
+		        new BoundedCache.Weigher<String, String>() {
+			
+			        @Override
+			        public long weigh(String key, String value) {
+				        return key.length();
+			        }
+		        }, null);
+		for (int i = 0; i < 100; i++) {
+			cache.put("key" + (i % 30), "value");
+		}
+		
+		long weight = 0;
+		for (String key : cache.keySet()) {
+			weight += key.length();
+		}
+		Assert.assertEquals(weight, cache.getWeight());
+		Assert.assertEquals(10, cache.size());
+	}
+	
+	@Test
+	public void put_shouldRemainBoundedUnderConcurrentPuts() throws Exception {
+		final BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(16, 100, 0);
+		final int workers = Math.max(4, Runtime.getRuntime().availableProcessors());
+		
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int w = 0; w < workers; w++) {
+			final int seed = w;
+			futures.add(executor.submit(new Callable<Void>() {
+				
+				@Override
+				public Void call() throws Exception {
+					for (int i = 0; i < 20000; i++) {
+						int n = (seed * 7919 + i) % 1000;
+						cache.put(n, n);
+						Integer value = cache.get(n);
+						Assert.assertTrue(value == null || value == n);
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		
+		cache.put(-1, -1); // settles the last races
+		Assert.assertTrue("Size: " + cache.size(), cache.size() <= 100);
+	}
+}
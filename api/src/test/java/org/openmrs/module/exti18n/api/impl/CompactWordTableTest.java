@@ -0,0 +1,122 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactWordTableTest {
+	
+	private static final String ALPHABET = "abcdeikıßσς -'";
+	
+	private static String randomString(Random random, int maxLength) {
+		int length = 1 + random.nextInt(maxLength);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return sb.toString();
+	}
+	
+	@Test
+	public void put_shouldKeepAllTheWordsAcrossGrowths() {
+		CompactWordTable table = new CompactWordTable(new KeyDictionary(), false);
+		Map<String, String> expected = new HashMap<String, String>();
+		for (int i = 0; i < 20000; i++) {
+			String word = "translation " + i;
+			Assert.assertTrue(table.put(word, "key." + i));
+			expected.put(word, "key." + i);
+		}
+		
+		Assert.assertFalse(table.put("translation 1", "other.key.1"));
+		expected.put("translation 1", "other.key.1");
+		Assert.assertEquals(20000, table.size());
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			Assert.assertEquals(entry.getValue(), table.get(entry.getKey()));
+		}
+		Assert.assertNull(table.get("translation 20000"));
+		
+		Map<String, String> entries = new HashMap<String, String>();
+		table.collectEntries(entries);
+		Assert.assertEquals(expected, entries);
+	}
+	
+	@Test
+	public void get_shouldLookUpTheMessagesThroughProbes() {
+		WordFolding folding = WordFolding.of(true, true);
+		CompactWordTable table = new CompactWordTable(new KeyDictionary(), false);
+		table.put(folding.fold("Côte d'Ivoire"), "addresshierarchy.ci");
+		WordFolding.Probe probe = new WordFolding.Probe();
+		
+		Assert.assertEquals("addresshierarchy.ci", table.get(probe.set(folding, "  COTE d'IVOIRE")));
+		Assert.assertNull(table.get(probe.set(folding, "Cote d'Ivoir")));
+	}
+	
+	@Test
+	public void put_shouldEncodeTheKeysOnceAcrossTables() {
+		KeyDictionary keys = new KeyDictionary();
+		CompactWordTable english = new CompactWordTable(keys, false);
+		CompactWordTable french = new CompactWordTable(keys, false);
+		english.put("north", "addresshierarchy.north");
+		french.put("nord", "addresshierarchy.north");
+		french.put("sud", "addresshierarchy.south");
+		
+		Assert.assertEquals(2, keys.size());
+		Assert.assertSame(english.get("north"), french.get("nord"));
+	}
+	
+	@Test
+	public void remove_shouldRemoveTheWordsThatStillPointToTheKey() {
+		CompactWordTable table = new CompactWordTable(new KeyDictionary(), true);
+		table.put("kigali city", "addresshierarchy.kigali");
+		table.put("nyarugenge", "addresshierarchy.nyarugenge");
+		table.put("gasabo", "addresshierarchy.gasabo");
+		
+		Assert.assertFalse(table.remove("kigali city", "addresshierarchy.other"));
+		Assert.assertTrue(table.remove("kigali city", "addresshierarchy.kigali"));
+		Set<String> removedKeys = new HashSet<String>();
+		table.removeKeys(new HashSet<String>(Arrays.asList("addresshierarchy.gasabo")), removedKeys);
+		
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("addresshierarchy.gasabo")), removedKeys);
+		Assert.assertEquals(1, table.size());
+		Assert.assertNull(table.get("kigali city"));
+		Assert.assertNull(table.get("gasabo"));
+		Set<String> keys = new HashSet<String>();
+		table.collectKeysContaining("genge", keys);
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("addresshierarchy.nyarugenge")), keys);
+		Map<String, String> entries = new HashMap<String, String>();
+		table.collectEntries(entries);
+		Assert.assertEquals(1, entries.size());
+		
+		Assert.assertFalse(table.put("gasabo", "addresshierarchy.gasabo")); // revived
+		Assert.assertEquals("addresshierarchy.gasabo", table.get("gasabo"));
+		Assert.assertEquals(2, table.size());
+	}
+	
+	@Test
+	public void collectKeysContaining_shouldMatchAFullScanWhenIndexed() {
+		Random random = new Random(42);
+		KeyDictionary keys = new KeyDictionary();
+		CompactWordTable scanned = new CompactWordTable(keys, false);
+		CompactWordTable indexed = new CompactWordTable(keys, true);
+		for (int i = 0; i < 5000; i++) {
+			String word = randomString(random, 12);
+			scanned.put(word, "key." + i);
+			indexed.put(word, "key." + i);
+		}
+		
+		for (int i = 0; i < 2000; i++) {
+			String search = randomString(random, 5);
+			Set<String> expected = new HashSet<String>();
+			Set<String> actual = new HashSet<String>();
+			scanned.collectKeysContaining(search, expected);
+			indexed.collectKeysContaining(search, actual);
+			Assert.assertEquals("Mismatch when searching '" + search + "'", expected, actual);
+		}
+	}
+}
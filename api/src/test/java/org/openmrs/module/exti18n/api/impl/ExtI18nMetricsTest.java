@@ -0,0 +1,63 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImplTest.StubReverseI18nCache;
+
+public class ExtI18nMetricsTest {
+	
+	private static long value(String name) {
+		Long value = ExtI18nMetrics.getValue(name);
+		return value != null ? value : 0;
+	}
+	
+	@Test
+	public void counter_shouldReturnTheSameCounterForTheSameName() {
+		Assert.assertSame(ExtI18nMetrics.counter("test.counter"), ExtI18nMetrics.counter("test.counter"));
+		Assert.assertNotSame(ExtI18nMetrics.counter("test.counter"), ExtI18nMetrics.counter("test.other"));
+	}
+	
+	@Test
+	public void getValues_shouldCountTheCacheLookups() {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		long hits = value("reverseI18nCache.hits");
+		long misses = value("reverseI18nCache.misses");
+		long translationHits = value("reverseI18nCache.translationHits");
+		long translationMisses = value("reverseI18nCache.translationMisses");
+		long puts = value("reverseI18nCache.puts");
+		
+		cache.getMessage("key.1", Locale.ENGLISH);
+		cache.getMessage("key.1", Locale.ENGLISH);
+		cache.getMessageKey("Translation 1", Locale.ENGLISH);
+		cache.getMessageKey("Free text", Locale.ENGLISH);
+		
+		Assert.assertEquals(hits + 1, value("reverseI18nCache.hits"));
+		Assert.assertEquals(misses + 1, value("reverseI18nCache.misses"));
+		Assert.assertEquals(translationHits + 1, value("reverseI18nCache.translationHits"));
+		Assert.assertEquals(translationMisses + 1, value("reverseI18nCache.translationMisses"));
+		Assert.assertEquals(puts + 1, value("reverseI18nCache.puts"));
+		Assert.assertEquals(Long.valueOf(1), ExtI18nMetrics.getValues().get("reverseI18nCache.size"));
+	}
+	
+	@Test
+	public void registerMBean_shouldExposeTheMetricsThroughJmx() throws Exception {
+		ExtI18nMetrics.counter("test.jmx").add(3);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(ExtI18nMetrics.OBJECT_NAME);
+		
+		ExtI18nMetrics.registerMBean();
+		try {
+			Assert.assertEquals(3L, server.getAttribute(name, "test.jmx"));
+		}
+		finally {
+			ExtI18nMetrics.unregisterMBean();
+		}
+		Assert.assertFalse(server.isRegistered(name));
+	}
+}
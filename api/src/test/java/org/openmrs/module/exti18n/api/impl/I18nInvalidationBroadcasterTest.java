@@ -0,0 +1,153 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.exti18n.api.I18nInvalidation;
+import org.openmrs.module.exti18n.api.I18nInvalidationTransport;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImplTest.StubReverseI18nCache;
+
+public class I18nInvalidationBroadcasterTest {
+	
+	/*
+	 * A node whose GPs are never read again, it only counts how many times they would have been. It
+	 * has no context to open real sessions.
+	 */
+	private static class StubBroadcaster extends I18nInvalidationBroadcaster {
+		
+		private int reloads = 0;
+		
+		private boolean inSession = false;
+		
+		StubBroadcaster(I18nInvalidationTransport transport) {
+			ahI18nCache = new AddressHierarchyI18nCacheImpl();
+			revI18nCache = new StubReverseI18nCache();
+			setTransport(transport);
+			setCoalescingMillis(60000); // flushed by the tests
+		}
+		
+		@Override
+		protected void reloadGlobalProperties(boolean enabled, boolean evictionPolicy, boolean config) {
+			Assert.assertTrue(inSession);
+			reloads++;
+		}
+		
+		@Override
+		protected boolean openSession() {
+			inSession = true;
+			return true;
+		}
+		
+		@Override
+		protected void closeSession() {
+			inSession = false;
+		}
+	}
+	
+	private static boolean isMemoized(ReverseI18nCacheImpl cache, String key) {
+		return cache.getPartition(Locale.ENGLISH).getTranslations().peek(key) != null;
+	}
+	
+	@Test
+	public void flush_shouldPublishTheCoalescedChangesAsASingleDelta() {
+		LoopbackI18nInvalidationTransport transport = new LoopbackI18nInvalidationTransport();
+		final List<I18nInvalidation> published = new ArrayList<I18nInvalidation>();
+		transport.subscribe(new I18nInvalidationTransport.Listener() {
+			
+			@Override
+			public void onInvalidation(I18nInvalidation invalidation) {
+				published.add(invalidation);
+			}
+		});
+		StubBroadcaster node = new StubBroadcaster(transport);
+		node.start();
+		
+		node.publishTranslationsChanged(Arrays.asList("key.1"));
+		node.publishTranslationsChanged(Arrays.asList("key.2", "key.1"));
+		node.publishEnabled(false);
+		node.publishEnabled(true);
+		node.flush();
+		node.flush();
+		
+		Assert.assertEquals(1, published.size());
+		I18nInvalidation invalidation = published.get(0);
+		Assert.assertEquals(node.getNodeId(), invalidation.getNodeId());
+		Assert.assertEquals(1, invalidation.getEpoch());
+		Assert.assertEquals(Boolean.TRUE, invalidation.getEnabled());
+		Assert.assertFalse(invalidation.isAllTranslations());
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("key.1", "key.2")), invalidation.getKeys());
+		node.stop();
+	}
+	
+	@Test
+	public void onInvalidation_shouldOnlyInvalidateTheChangedTranslationsOfTheOtherNodes() {
+		LoopbackI18nInvalidationTransport transport = new LoopbackI18nInvalidationTransport();
+		StubBroadcaster node1 = new StubBroadcaster(transport);
+		StubBroadcaster node2 = new StubBroadcaster(transport);
+		node1.start();
+		node2.start();
+		for (StubBroadcaster node : Arrays.asList(node1, node2)) {
+			node.revI18nCache.getMessage("key.1", Locale.ENGLISH);
+			node.revI18nCache.getMessage("key.2", Locale.ENGLISH);
+		}
+		
+		node1.publishTranslationsChanged(Collections.singleton("key.1"));
+		node1.flush();
+		
+		Assert.assertFalse(isMemoized(node2.revI18nCache, "key.1"));
+		Assert.assertTrue(isMemoized(node2.revI18nCache, "key.2"));
+		Assert.assertTrue(isMemoized(node1.revI18nCache, "key.1")); // the publishing node applied it itself
+		Assert.assertEquals("key.1", node2.revI18nCache.getMessageKey("Translation 1", Locale.ENGLISH));
+		node1.stop();
+		node2.stop();
+	}
+	
+	@Test
+	public void onInvalidation_shouldDropDuplicatesAndInvalidateEverythingAfterMissedInvalidations() {
+		StubBroadcaster node = new StubBroadcaster(new LoopbackI18nInvalidationTransport());
+		node.revI18nCache.getMessage("key.1", Locale.ENGLISH);
+		node.revI18nCache.getMessage("key.2", Locale.ENGLISH);
+		
+		node.onInvalidation(new I18nInvalidation("other", 1, null, false, false, false, Collections.singleton("key.1")));
+		node.onInvalidation(new I18nInvalidation("other", 1, null, false, false, false, Collections.singleton("key.2")));
+		Assert.assertFalse(isMemoized(node.revI18nCache, "key.1"));
+		Assert.assertTrue(isMemoized(node.revI18nCache, "key.2"));
+		Assert.assertEquals(0, node.reloads);
+		
+		node.onInvalidation(new I18nInvalidation("other", 3, null, false, false, false, null));
+		Assert.assertFalse(isMemoized(node.revI18nCache, "key.2"));
+		Assert.assertEquals(1, node.reloads);
+		
+		node.onInvalidation(new I18nInvalidation("other", 2, null, false, false, true, null)); // late
+		Assert.assertEquals(1, node.reloads);
+	}
+	
+	@Test
+	public void onInvalidation_shouldApplyTheChangesWithinASession() {
+		final StubBroadcaster node = new StubBroadcaster(new LoopbackI18nInvalidationTransport());
+		final List<Boolean> translatedInSession = new ArrayList<Boolean>();
+		node.revI18nCache = new StubReverseI18nCache() {
+			
+			@Override
+			protected String translate(String key, Locale locale) {
+				translatedInSession.add(node.inSession);
+				return super.translate(key, locale);
+			}
+		};
+		node.revI18nCache.getMessage("key.1", Locale.ENGLISH);
+		translatedInSession.clear();
+		
+		node.onInvalidation(new I18nInvalidation("other", 1, null, false, false, false, Collections.singleton("key.1")));
+		node.onInvalidation(new I18nInvalidation("other", 3, null, false, false, false, null));
+		
+		Assert.assertEquals(Arrays.asList(Boolean.TRUE), translatedInSession);
+		Assert.assertEquals(1, node.reloads);
+		Assert.assertFalse(node.inSession);
+	}
+}
@@ -0,0 +1,72 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.EncounterType;
+import org.openmrs.Location;
+import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonAddress;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.VisitType;
+import org.openmrs.module.exti18n.api.impl.LocalizedMetadataRegistry.Plan;
+
+public class LocalizedMetadataRegistryTest {
+	
+	/*
+	 * A subclass as generated for Hibernate proxies.
+	 */
+	private static class ProxiedLocation extends Location {
+	}
+	
+	@Test
+	public void getDefault_shouldCoverTheMetadataLocalizedSoFar() {
+		LocalizedMetadataRegistry registry = LocalizedMetadataRegistry.getDefault();
+		
+		Assert.assertArrayEquals(new Class<?>[] { PatientIdentifierType.class, PersonAttributeType.class, Location.class,
+		        VisitType.class }, registry.getCoveredClasses());
+		Assert.assertEquals(Arrays.asList("name", "description", "formatDescription"),
+		    registry.getPlan(PatientIdentifierType.class).getFields());
+		Assert.assertEquals(Arrays.asList("description"), registry.getPlan(PersonAttributeType.class).getFields());
+		Assert.assertFalse(registry.isCovered(EncounterType.class));
+	}
+	
+	@Test
+	public void parse_shouldSkipTheInvalidEntries() {
+		LocalizedMetadataRegistry registry = LocalizedMetadataRegistry
+		        .parse(" EncounterType : name, description ;\norg.openmrs.VisitType:name;Location:unknownField;"
+		                + "PersonAddress:cityVillage;UnknownType:name;PatientIdentifierType:");
+		
+		Assert.assertArrayEquals(new Class<?>[] { EncounterType.class, VisitType.class }, registry.getCoveredClasses());
+		Assert.assertEquals(Arrays.asList("name", "description"), registry.getPlan(EncounterType.class).getFields());
+		Assert.assertFalse(registry.isCovered(Location.class));
+		Assert.assertFalse(registry.isCovered(PersonAddress.class));
+		Assert.assertEquals(0, LocalizedMetadataRegistry.parse(null).getCoveredClasses().length);
+	}
+	
+	@Test
+	public void getCoveredClasses_shouldReturnTheSameArrayUntilTheRegistryIsReplaced() {
+		LocalizedMetadataRegistry registry = LocalizedMetadataRegistry.parse("Location:name,description");
+		
+		Assert.assertSame(registry.getCoveredClasses(), registry.getCoveredClasses());
+		Assert.assertNotSame(registry.getCoveredClasses(),
+		    LocalizedMetadataRegistry.parse("Location:name,description").getCoveredClasses());
+	}
+	
+	@Test
+	public void getPlan_shouldDispatchSubclassesToTheirConfiguredSuperclass() throws Exception {
+		LocalizedMetadataRegistry registry = LocalizedMetadataRegistry.parse("Location:name,description");
+		Location location = new ProxiedLocation();
+		location.setName("key.1");
+		location.setDescription("key.2");
+		
+		Plan plan = registry.getPlan(location.getClass());
+		Assert.assertSame(registry.getPlan(Location.class), plan);
+		Assert.assertArrayEquals(new String[] { "key.1", "key.2" }, plan.getValues(location));
+		
+		plan.setValues(location, new String[] { "Translation 1", "Translation 2" });
+		Assert.assertEquals("Translation 1", location.getName());
+		Assert.assertEquals("Translation 2", location.getDescription());
+	}
+}
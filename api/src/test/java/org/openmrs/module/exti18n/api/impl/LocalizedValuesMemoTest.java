@@ -0,0 +1,57 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Date;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LocalizedValuesMemoTest {
+	
+	private static final String UUID = "b984a88e-371b-4cf1-8738-22b3441b71af";
+	
+	private static final String[] KEYS = new String[] { "key.1", "key.1.desc" };
+	
+	private static final String[] VALUES = new String[] { "Translation 1", "Description 1" };
+	
+	@Test
+	public void get_shouldReturnTheMemoizedValuesOfAnUnchangedEntity() {
+		LocalizedValuesMemo memo = new LocalizedValuesMemo();
+		Date dateChanged = new Date();
+		memo.put(UUID, dateChanged, Locale.ENGLISH, KEYS, VALUES, 0, memo.getGeneration());
+		
+		Assert.assertArrayEquals(VALUES, memo.get(UUID, new Date(dateChanged.getTime()), Locale.ENGLISH,
+		    new String[] { "key.1", "key.1.desc" }, 0));
+		
+		Assert.assertNull(memo.get(UUID, dateChanged, Locale.FRENCH, KEYS, 0));
+		Assert.assertNull(memo.get(UUID, new Date(dateChanged.getTime() + 1), Locale.ENGLISH, KEYS, 0));
+		Assert.assertNull(memo.get(UUID, dateChanged, Locale.ENGLISH, new String[] { "key.2", "key.1.desc" }, 0));
+		Assert.assertNull(memo.get(UUID, dateChanged, Locale.ENGLISH, KEYS, 1)); // the messages changed
+	}
+	
+	@Test
+	public void invalidate_shouldDropTheMemoizedValues() {
+		LocalizedValuesMemo memo = new LocalizedValuesMemo();
+		memo.put(UUID, null, Locale.ENGLISH, KEYS, VALUES, 0, memo.getGeneration());
+		Assert.assertNotNull(memo.get(UUID, null, Locale.ENGLISH, KEYS, 0));
+		
+		memo.invalidate(UUID);
+		Assert.assertNull(memo.get(UUID, null, Locale.ENGLISH, KEYS, 0));
+		
+		// values localized before an invalidation are not memoized
+		long generation = memo.getGeneration();
+		memo.invalidateAll();
+		memo.put(UUID, null, Locale.ENGLISH, KEYS, VALUES, 0, generation);
+		Assert.assertNull(memo.get(UUID, null, Locale.ENGLISH, KEYS, 0));
+	}
+	
+	@Test
+	public void put_shouldBoundTheMemo() {
+		LocalizedValuesMemo memo = new LocalizedValuesMemo(100);
+		for (int i = 0; i < 1000; i++) {
+			memo.put("uuid-" + i, null, Locale.ENGLISH, KEYS, VALUES, 0, memo.getGeneration());
+		}
+		memo.invalidate("uuid-0"); // giving the cache a chance to clean up
+		Assert.assertTrue(memo.size() <= 100);
+	}
+}
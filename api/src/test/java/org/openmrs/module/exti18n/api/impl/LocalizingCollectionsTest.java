@@ -0,0 +1,104 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.module.exti18n.api.impl.LocalizingCollections.ElementLocalizer;
+
+public class LocalizingCollectionsTest {
+	
+	/*
+	 * Localizes locations by upper casing their name.
+	 */
+	private static class CountingLocalizer implements ElementLocalizer {
+		
+		private int count = 0;
+		
+		@Override
+		public void l10n(Object element) {
+			Location location = (Location) element;
+			location.setName(location.getName().toUpperCase());
+			count++;
+		}
+	}
+	
+	private static <T extends Collection<Object>> T newLocations(T locations, int size) {
+		for (int i = 0; i < size; i++) {
+			Location location = new Location();
+			location.setName("location " + i);
+			locations.add(location);
+		}
+		return locations;
+	}
+	
+	@Test
+	public void view_shouldOnlyLocalizeTheAccessedElementsOnce() {
+		CountingLocalizer localizer = new CountingLocalizer();
+		Collection<Object> view = LocalizingCollections.view(newLocations(new ArrayList<Object>(), 1000), localizer);
+		
+		Assert.assertTrue(view instanceof List);
+		List<?> list = (List<?>) view;
+		Assert.assertEquals(1000, list.size());
+		Assert.assertEquals("LOCATION 3", ((Location) list.get(3)).getName());
+		Assert.assertEquals("LOCATION 3", ((Location) list.get(3)).getName());
+		Assert.assertEquals("location 4", ((Location) ((List<?>) ((LocalizingCollections.LocalizingView) view)
+		        .getOriginal()).get(4)).getName());
+		Assert.assertEquals(1, localizer.count);
+	}
+	
+	@Test
+	public void view_shouldKeepTheCollectionType() {
+		CountingLocalizer localizer = new CountingLocalizer();
+		Collection<Object> view = LocalizingCollections.view(newLocations(new LinkedHashSet<Object>(), 3), localizer);
+		
+		Assert.assertTrue(view instanceof Set);
+		for (Object location : view) {
+			Assert.assertTrue(((Location) location).getName().startsWith("LOCATION"));
+		}
+		for (Object location : view) {
+			Assert.assertTrue(((Location) location).getName().startsWith("LOCATION"));
+		}
+		Assert.assertEquals(3, localizer.count);
+		
+		view = LocalizingCollections.view(newLocations(new LinkedList<Object>(), 3), localizer);
+		Assert.assertTrue(view instanceof List);
+		Assert.assertEquals("LOCATION 2", ((Location) ((List<?>) view).get(2)).getName());
+	}
+	
+	@Test
+	public void view_shouldWriteThroughToTheOriginalCollection() {
+		CountingLocalizer localizer = new CountingLocalizer();
+		List<Object> original = newLocations(new ArrayList<Object>(), 3);
+		List<?> view = (List<?>) LocalizingCollections.view(original, localizer);
+		
+		view.remove(0);
+		Assert.assertEquals(2, original.size());
+		Assert.assertEquals("LOCATION 1", ((Location) view.get(0)).getName());
+		Assert.assertEquals("LOCATION 2", ((Location) view.get(1)).getName());
+		Assert.assertEquals(3, localizer.count);
+	}
+	
+	@Test
+	public void view_shouldLocalizeTheElementsThatAreSetOrAdded() {
+		CountingLocalizer localizer = new CountingLocalizer();
+		List<Object> original = newLocations(new ArrayList<Object>(), 3);
+		@SuppressWarnings("unchecked")
+		List<Object> view = (List<Object>) LocalizingCollections.view(original, localizer);
+		List<Object> others = newLocations(new ArrayList<Object>(), 2);
+		
+		Assert.assertEquals("LOCATION 1", ((Location) view.set(1, others.get(0))).getName());
+		Assert.assertEquals("LOCATION 0", ((Location) view.get(1)).getName());
+		view.add(0, others.get(1));
+		Assert.assertEquals("LOCATION 1", ((Location) view.get(0)).getName());
+		Assert.assertEquals("LOCATION 0", ((Location) view.get(1)).getName());
+		Assert.assertEquals("LOCATION 0", ((Location) view.get(2)).getName());
+		Assert.assertEquals(5, localizer.count);
+	}
+}
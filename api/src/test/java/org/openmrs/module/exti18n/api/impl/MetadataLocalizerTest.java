@@ -0,0 +1,228 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.EncounterType;
+import org.openmrs.Location;
+import org.openmrs.module.exti18n.ExtI18nConfig;
+import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImplTest.StubReverseI18nCache;
+
+public class MetadataLocalizerTest {
+	
+	/*
+	 * Tracks the read-only entities as a Hibernate session would.
+	 */
+	private static class StubManagedEntities extends ManagedEntities {
+		
+		private final Set<Object> readOnly = new HashSet<Object>();
+		
+		// The names of the locations when made writable, as their session snapshots
+		private final List<String> snapshots = new ArrayList<String>();
+		
+		@Override
+		public void markReadOnly(Object entity) {
+			readOnly.add(entity);
+		}
+		
+		@Override
+		public void markWritable(Object entity) {
+			readOnly.remove(entity);
+			if (entity instanceof Location) {
+				snapshots.add(((Location) entity).getName());
+			}
+		}
+		
+		@Override
+		public boolean isReadOnly(Object entity) {
+			return readOnly.contains(entity);
+		}
+	}
+	
+	private static MetadataLocalizer newLocalizer(boolean readOnly) {
+		final ReverseI18nCache cache = new StubReverseI18nCache() {
+			
+			@Override
+			public String getMessage(String key) {
+				return getMessage(key, Locale.ENGLISH);
+			}
+			
+			@Override
+			public String getMessageKey(String message) {
+				return getMessageKey(message, Locale.ENGLISH);
+			}
+			
+			@Override
+			public void touchMessage(String key, String message) {
+				touchMessage(key, message, Locale.ENGLISH);
+			}
+		};
+		MetadataLocalizer l10n = new MetadataLocalizer() {
+			
+			@Override
+			protected ReverseI18nCache getCache() {
+				return cache;
+			}
+		};
+		l10n.config = new ExtI18nConfig();
+		l10n.config.setReadOnlyLocalization(readOnly);
+		l10n.managedEntities = new StubManagedEntities();
+		return l10n;
+	}
+	
+	private static Location newLocation(String name) {
+		Location location = new Location();
+		location.setName(name);
+		return location;
+	}
+	
+	@Test
+	public void process_shouldMarkTheLocalizedEntitiesReadOnly() {
+		MetadataLocalizer l10n = newLocalizer(true);
+		Location location = newLocation("key.1");
+		
+		l10n.process(Arrays.asList(location), l10n.isReadOnlyLocalization());
+		
+		Assert.assertEquals("Translation 1", location.getName());
+		Assert.assertTrue(l10n.managedEntities.isReadOnly(location));
+	}
+	
+	@Test
+	public void process_shouldNotMarkTheLocalizedEntitiesReadOnlyByDefault() {
+		MetadataLocalizer l10n = newLocalizer(false);
+		Location location = newLocation("key.1");
+		
+		l10n.process(location);
+		
+		Assert.assertFalse(l10n.isReadOnlyLocalization());
+		Assert.assertEquals("Translation 1", location.getName());
+		Assert.assertFalse(l10n.managedEntities.isReadOnly(location));
+	}
+	
+	@Test
+	public void process_shouldLocalizeCollectionsLazily() {
+		MetadataLocalizer l10n = newLocalizer(false);
+		l10n.config.setLazyLocalization(true);
+		Set<Location> locations = new LinkedHashSet<Location>(Arrays.asList(newLocation("key.1"), newLocation("key.2")));
+		
+		Object result = l10n.process(locations);
+		
+		Assert.assertTrue(result instanceof Set);
+		Assert.assertEquals("key.1", locations.iterator().next().getName());
+		Assert.assertEquals("Translation 1", ((Location) ((Set<?>) result).iterator().next()).getName());
+	}
+	
+	@Test
+	public void process_shouldLocalizeLargeCollectionsInParallelAndKeepTheirOrder() {
+		MetadataLocalizer l10n = newLocalizer(false);
+		l10n.config.setParallelLocalizationThreshold(100);
+		List<Location> locations = new ArrayList<Location>();
+		for (int i = 0; i < 1000; i++) {
+			locations.add(newLocation("key." + i));
+		}
+		
+		List<?> result = (List<?>) l10n.process(locations);
+		
+		Assert.assertNotSame(locations, result);
+		Assert.assertEquals(1000, result.size());
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertSame(locations.get(i), result.get(i));
+			Assert.assertEquals("Translation " + i, locations.get(i).getName());
+		}
+	}
+	
+	@Test
+	public void process_shouldCopyTheMemoizedValuesOfUnchangedMetadata() {
+		MetadataLocalizer l10n = newLocalizer(false);
+		l10n.memo = new LocalizedValuesMemo();
+		Location location = newLocation("key.1");
+		location.setUuid("b984a88e-371b-4cf1-8738-22b3441b71af");
+		
+		l10n.process(location);
+		Assert.assertEquals("Translation 1", location.getName());
+		Assert.assertEquals(1, l10n.memo.size());
+		
+		Location sameLocation = newLocation("key.1");
+		sameLocation.setUuid(location.getUuid());
+		l10n.process(sameLocation);
+		Assert.assertEquals("Translation 1", sameLocation.getName());
+	}
+	
+	@Test
+	public void process_shouldKeepTheMemoizedValuesReverseTranslatable() {
+		MetadataLocalizer l10n = newLocalizer(false);
+		l10n.memo = new LocalizedValuesMemo();
+		Location location = newLocation("key.1");
+		location.setUuid("b984a88e-371b-4cf1-8738-22b3441b71af");
+		l10n.process(location);
+		ReverseI18nCacheImpl cache = (ReverseI18nCacheImpl) l10n.getCache();
+		cache.getPartition(Locale.ENGLISH).invalidateTranslations(Arrays.asList("key.1"));
+		Assert.assertTrue(cache.getPartition(Locale.ENGLISH).remove("translation 1", "key.1")); // as if evicted
+		
+		Location sameLocation = newLocation("key.1");
+		sameLocation.setUuid(location.getUuid());
+		l10n.process(sameLocation);
+		
+		Assert.assertEquals("Translation 1", sameLocation.getName());
+		Assert.assertEquals("key.1", cache.getMessageKey("Translation 1"));
+	}
+	
+	@Test
+	public void release_shouldRestoreTheMessageKeysAndMakeTheEntitiesWritable() {
+		MetadataLocalizer l10n = newLocalizer(true);
+		Location location = newLocation("key.1");
+		Location other = newLocation("key.2");
+		l10n.process(location, true);
+		l10n.process(other, false);
+		
+		List<Location> args = Arrays.asList(location, other);
+		l10n.release(args);
+		
+		Assert.assertEquals("key.1", location.getName());
+		Assert.assertFalse(l10n.managedEntities.isReadOnly(location));
+		// only the read-only localizations are released
+		Assert.assertEquals("Translation 2", other.getName());
+	}
+	
+	@Test
+	public void release_shouldMakeTheEntitiesWritableWithTheirKeysAndKeepTheEdits() {
+		MetadataLocalizer l10n = newLocalizer(true);
+		Location location = newLocation("key.1");
+		location.setDescription("key.2");
+		l10n.process(location, true);
+		Assert.assertEquals("Translation 2", location.getDescription());
+		
+		location.setName("Edited name");
+		l10n.release(location);
+		
+		Assert.assertEquals(Arrays.asList("key.1"), ((StubManagedEntities) l10n.managedEntities).snapshots);
+		Assert.assertEquals("Edited name", location.getName());
+		Assert.assertEquals("key.2", location.getDescription());
+		Assert.assertFalse(l10n.managedEntities.isReadOnly(location));
+	}
+	
+	@Test
+	public void process_shouldLocalizeTheConfiguredMetadataOnly() {
+		MetadataLocalizer l10n = newLocalizer(false);
+		l10n.config.setLocalizedMetadata(LocalizedMetadataRegistry.parse("EncounterType:description"));
+		EncounterType encounterType = new EncounterType();
+		encounterType.setName("key.1");
+		encounterType.setDescription("key.2");
+		Location location = newLocation("key.3");
+		
+		l10n.process(Arrays.asList(encounterType, location));
+		
+		Assert.assertEquals("key.1", encounterType.getName());
+		Assert.assertEquals("Translation 2", encounterType.getDescription());
+		Assert.assertEquals("key.3", location.getName());
+		Assert.assertArrayEquals(new Class<?>[] { EncounterType.class }, l10n.getCoveredClasses());
+	}
+}
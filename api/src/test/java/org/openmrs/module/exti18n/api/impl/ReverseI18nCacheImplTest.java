@@ -0,0 +1,558 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.messagesource.PresentationMessage;
+
+public class ReverseI18nCacheImplTest {
+	
+	private static final int KEYS = 500;
+	
+	/*
+	 * A cache that does not need the OpenMRS context: "key.N" translates into "Translation N" and
+	 * "other.key.N" into "Other translation N".
+	 */
+	protected static class StubReverseI18nCache extends ReverseI18nCacheImpl {
+		
+		// The sessions of the threads, there is no context to open real ones
+		protected final ThreadLocal<Boolean> sessions = new ThreadLocal<Boolean>();
+		
+		@Override
+		protected boolean openSession() {
+			if (sessions.get() != null) {
+				return false;
+			}
+			sessions.set(Boolean.TRUE);
+			return true;
+		}
+		
+		@Override
+		protected void closeSession() {
+			sessions.remove();
+		}
+		
+		@Override
+		protected Locale getDefaultLocale() {
+			return Locale.ENGLISH;
+		}
+		
+		@Override
+		protected String translate(String key, Locale locale) {
+			if (key.startsWith("key.")) {
+				return "Translation " + key.substring("key.".length());
+			}
+			if (key.startsWith("other.key.")) {
+				return "Other translation " + key.substring("other.key.".length());
+			}
+			return key;
+		}
+		
+		@Override
+		protected Collection<PresentationMessage> getPresentations(Locale locale) {
+			List<PresentationMessage> presentations = new ArrayList<PresentationMessage>();
+			for (int n = 0; n < KEYS; n++) {
+				presentations.add(new PresentationMessage("key." + n, locale, "Translation " + n, null));
+				presentations.add(new PresentationMessage("other.key." + n, locale, "Other translation " + n, null));
+			}
+			return presentations;
+		}
+	}
+	
+	@Test
+	public void getMessageKey_shouldReverseTranslateCachedMessages() {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		
+		Assert.assertEquals("Translation 1", cache.getMessage("key.1", Locale.ENGLISH));
+		
+		Assert.assertEquals("key.1", cache.getMessageKey("Translation 1", Locale.ENGLISH));
+		Assert.assertEquals("key.1", cache.getMessageKey("TRANSLATION 1", Locale.ENGLISH));
+		Assert.assertEquals("Translation 2", cache.getMessageKey("Translation 2", Locale.ENGLISH));
+		Assert.assertEquals("Free text", cache.getMessageKey("Free text", Locale.ENGLISH));
+	}
+	
+	@Test
+	public void getMessageKey_shouldRejectUnknownMessagesWithoutLookingThemUp() {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		cache.getMessage("key.1", Locale.ENGLISH);
+		ReverseI18nPartition partition = cache.getPartition(Locale.ENGLISH);
+		long misses = partition.getMisses();
+		
+		Assert.assertEquals("key.2", cache.getMessageKey("key.2", Locale.ENGLISH));
+		Assert.assertEquals("key.1", cache.getMessageKey("TRANSLATION 1", Locale.ENGLISH));
+		
+		// no more than a rare false positive
+		Assert.assertTrue(partition.getMisses() - misses <= 1);
+	}
+	
+	@Test
+	public void getMessageKey_shouldFoldTheMessagesWhateverTheDefaultLocale() {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected String translate(String key, Locale locale) {
+				return "key.city".equals(key) ? "Côte  İstanbul" : super.translate(key, locale);
+			}
+		};
+		Locale defaultLocale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr"));
+		try {
+			cache.getMessage("key.1", Locale.ENGLISH);
+			cache.getMessage("key.city", Locale.ENGLISH);
+			
+			Assert.assertEquals("key.1", cache.getMessageKey("TRANSLATION 1", Locale.ENGLISH));
+			Assert.assertEquals("key.city", cache.getMessageKey("CÔTE  ISTANBUL", Locale.ENGLISH));
+			Assert.assertEquals("cote istanbul", cache.getMessageKey("cote istanbul", Locale.ENGLISH));
+			
+			cache.setWordFolding(true, true);
+			cache.getMessage("key.city", Locale.ENGLISH);
+			
+			Assert.assertEquals("key.city", cache.getMessageKey(" cote istanbul ", Locale.ENGLISH));
+			Assert.assertEquals("key.city", cache.getMessageKey("Côte\tıstanbul", Locale.ENGLISH));
+		}
+		finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+	
+	@Test
+	public void getMessage_shouldRememberTheKeysThatHaveNoTranslation() {
+		final AtomicInteger translations = new AtomicInteger();
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected String translate(String key, Locale locale) {
+				translations.incrementAndGet();
+				return super.translate(key, locale);
+			}
+		};
+		cache.setUntranslatedMaximumSize(100);
+		
+		Assert.assertEquals("Free text", cache.getMessage("Free text", Locale.ENGLISH));
+		Assert.assertEquals("Free text", cache.getMessage("Free text", Locale.ENGLISH));
+		Assert.assertEquals(1, translations.get());
+		
+		// until the messages change
+		cache.invalidateTranslations();
+		Assert.assertEquals("Free text", cache.getMessage("Free text", Locale.ENGLISH));
+		Assert.assertEquals(2, translations.get());
+	}
+	
+	@Test
+	public void getMessageKey_shouldNotMixUpLocales() {
+		ReverseI18nCacheImpl cache = new ReverseI18nCacheImpl() {
+			
+			@Override
+			protected String translate(String key, Locale locale) {
+				// "Pain" is bread in French
+				if (key.equals("symptom.pain")) {
+					return "Pain";
+				}
+				if (key.equals("food.bread") && locale.getLanguage().equals("fr")) {
+					return "Pain";
+				}
+				return key;
+			}
+		};
+		
+		cache.getMessage("symptom.pain", Locale.ENGLISH);
+		cache.getMessage("food.bread", Locale.FRENCH);
+		
+		Assert.assertEquals("symptom.pain", cache.getMessageKey("Pain", Locale.ENGLISH));
+		Assert.assertEquals("food.bread", cache.getMessageKey("Pain", Locale.FRENCH));
+		Assert.assertEquals("food.bread", cache.getMessageKey("Pain", Locale.CANADA_FRENCH)); // falling back on 'fr'
+		Assert.assertEquals("Pain", cache.getMessageKey("Pain", Locale.GERMAN));
+		
+		Assert.assertEquals(1, cache.getPartition(Locale.ENGLISH).size());
+		Assert.assertEquals(1, cache.getPartition(Locale.FRENCH).size());
+		Assert.assertEquals(2, cache.getPartition(Locale.FRENCH).getHits()); // CANADA_FRENCH fell back on it
+	}
+	
+	@Test
+	public void preload_shouldCacheTheReverseTranslationsOfThePrefixedKeys() throws Exception {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		
+		CompletableFuture<Void> preload = cache.preload(Arrays.asList("key."), Arrays.asList(Locale.ENGLISH, Locale.FRENCH),
+		    executor);
+		Assert.assertTrue(cache.awaitReady(60000));
+		preload.get();
+		executor.shutdown();
+		
+		Assert.assertTrue(cache.isReady());
+		Assert.assertEquals(KEYS, cache.getPartition(Locale.ENGLISH).size());
+		Assert.assertEquals(KEYS, cache.getPartition(Locale.FRENCH).size());
+		Assert.assertEquals("key.1", cache.getMessageKey("Translation 1", Locale.FRENCH));
+		Assert.assertEquals("Other translation 1", cache.getMessageKey("Other translation 1", Locale.FRENCH));
+	}
+	
+	@Test
+	public void preload_shouldOpenASessionOnTheExecutorThreads() throws Exception {
+		final Thread testThread = Thread.currentThread();
+		final List<Boolean> sessionsOpen = new ArrayList<Boolean>();
+		final StubReverseI18nCache cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected Collection<PresentationMessage> getPresentations(Locale locale) {
+				Assert.assertNotSame(testThread, Thread.currentThread());
+				sessionsOpen.add(sessions.get() != null);
+				return super.getPresentations(locale);
+			}
+		};
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		cache.preload(Arrays.asList("key."), Arrays.asList(Locale.ENGLISH), executor).get();
+		boolean sessionLeftOpen = executor.submit(new Callable<Boolean>() {
+			
+			@Override
+			public Boolean call() {
+				return cache.sessions.get() != null;
+			}
+		}).get();
+		executor.shutdown();
+		
+		Assert.assertEquals(Arrays.asList(Boolean.TRUE), sessionsOpen);
+		Assert.assertFalse(sessionLeftOpen);
+		Assert.assertEquals(KEYS, cache.getPartition(Locale.ENGLISH).size());
+	}
+	
+	@Test
+	public void setCompactStorage_shouldReverseTranslateTheSameWithASmallerFootprint() throws Exception {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		ReverseI18nCacheImpl compactCache = new StubReverseI18nCache();
+		compactCache.setCompactStorage(true);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		List<Locale> locales = Arrays.asList(Locale.ENGLISH, Locale.FRENCH);
+		cache.preload(Arrays.asList("key.", "other.key."), locales, executor).get();
+		compactCache.preload(Arrays.asList("key.", "other.key."), locales, executor).get();
+		executor.shutdown();
+		
+		Assert.assertTrue(compactCache.getPartition(Locale.FRENCH).isCompact());
+		Assert.assertEquals(cache.size(), compactCache.size());
+		for (int n = 0; n < KEYS; n++) {
+			Assert.assertEquals("key." + n, compactCache.getMessageKey("TRANSLATION " + n, Locale.FRENCH));
+			Assert.assertEquals("other.key." + n, compactCache.getMessageKey("other translation " + n, Locale.ENGLISH));
+		}
+		Assert.assertEquals("Free text", compactCache.getMessageKey("Free text", Locale.FRENCH));
+		Assert.assertEquals(cache.getPartition(Locale.FRENCH).getEntries(), compactCache.getPartition(Locale.FRENCH)
+		        .getEntries());
+		Assert.assertTrue(compactCache.getEstimatedFootprint() < cache.getEstimatedFootprint());
+	}
+	
+	@Test
+	public void setEvictionPolicy_shouldBoundTheCacheButKeepPreloadedWords() throws Exception {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		cache.preload(Arrays.asList("other.key."), Arrays.asList(Locale.ENGLISH), executor).get();
+		executor.shutdown();
+		
+		cache.setEvictionPolicy(10, 0);
+		for (int n = 0; n < KEYS; n++) {
+			cache.getMessage("key." + n, Locale.ENGLISH);
+			Assert.assertEquals("key." + n, cache.getMessageKey("Translation " + n, Locale.ENGLISH)); // just rendered
+		}
+		
+		Assert.assertEquals(KEYS + 10, cache.size());
+		Assert.assertEquals(KEYS - 10, cache.getPartition(Locale.ENGLISH).getEvictions());
+		Assert.assertEquals("other.key.1", cache.getMessageKey("Other translation 1", Locale.ENGLISH));
+		Assert.assertTrue(cache.getEstimatedFootprint() > 0);
+	}
+	
+	@Test
+	public void getMessage_shouldMemoizeTranslationsUntilInvalidated() {
+		final AtomicInteger translated = new AtomicInteger();
+		final AtomicReference<String> prefix = new AtomicReference<String>("Translation ");
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected String translate(String key, Locale locale) {
+				translated.incrementAndGet();
+				return prefix.get() + key;
+			}
+		};
+		
+		Assert.assertEquals("Translation key.1", cache.getMessage("key.1", Locale.ENGLISH));
+		Assert.assertEquals("Translation key.1", cache.getMessage("key.1", Locale.ENGLISH));
+		Assert.assertEquals("Translation key.1", cache.getMessage("key.1", Locale.FRENCH));
+		Assert.assertEquals(2, translated.get());
+		
+		prefix.set("New translation ");
+		cache.invalidateTranslations();
+		Assert.assertEquals("New translation key.1", cache.getMessage("key.1", Locale.ENGLISH));
+		Assert.assertEquals(3, translated.get());
+		Assert.assertEquals("key.1", cache.getMessageKey("New translation key.1", Locale.ENGLISH));
+		Assert.assertEquals("key.1", cache.getMessageKey("Translation key.1", Locale.ENGLISH)); // rendered before the change
+	}
+	
+	@Test
+	public void updateTranslations_shouldReverseTranslateTheNewMessagesOfTheChangedKeysOnly() {
+		final AtomicInteger translated = new AtomicInteger();
+		final AtomicReference<String> prefix = new AtomicReference<String>("Translation ");
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected String translate(String key, Locale locale) {
+				translated.incrementAndGet();
+				return prefix.get() + key;
+			}
+		};
+		cache.getMessage("key.1", Locale.ENGLISH);
+		cache.getMessage("key.2", Locale.ENGLISH);
+		long version = cache.getTranslationsVersion();
+		
+		prefix.set("New translation ");
+		cache.updateTranslations(Locale.ENGLISH, Arrays.asList("key.1", "key.3"));
+		
+		Assert.assertEquals(3, translated.get()); // only key.1 was reverse translated before
+		Assert.assertTrue(cache.getTranslationsVersion() > version);
+		Assert.assertEquals("key.1", cache.getMessageKey("New translation key.1", Locale.ENGLISH)); // before being rendered
+		Assert.assertEquals("Translation key.1", cache.getMessageKey("Translation key.1", Locale.ENGLISH)); // the previous translation
+		Assert.assertEquals("key.2", cache.getMessageKey("Translation key.2", Locale.ENGLISH));
+		Assert.assertEquals("New translation key.3", cache.getMessageKey("New translation key.3", Locale.ENGLISH));
+		
+		BoundedCache<String, ?> translations = cache.getPartition(Locale.ENGLISH).getTranslations();
+		Assert.assertNull(translations.peek("key.1"));
+		Assert.assertNotNull(translations.peek("key.2"));
+		Assert.assertEquals("New translation key.1", cache.getMessage("key.1", Locale.ENGLISH));
+		Assert.assertEquals("Translation key.2", cache.getMessage("key.2", Locale.ENGLISH));
+	}
+	
+	@Test
+	public void updateTranslations_shouldOnlyUpdateTheLocalesFallingBackOnTheChangedLocale() {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		cache.getMessage("key.1", Locale.FRENCH);
+		cache.getMessage("key.1", Locale.CANADA_FRENCH);
+		cache.getMessage("key.1", Locale.ENGLISH);
+		
+		cache.updateTranslations(Locale.FRENCH, Arrays.asList("key.1"));
+		
+		Assert.assertNull(cache.getPartition(Locale.FRENCH).getTranslations().peek("key.1"));
+		Assert.assertNull(cache.getPartition(Locale.CANADA_FRENCH).getTranslations().peek("key.1"));
+		Assert.assertNotNull(cache.getPartition(Locale.ENGLISH).getTranslations().peek("key.1"));
+		Assert.assertEquals("key.1", cache.getMessageKey("Translation 1", Locale.CANADA_FRENCH));
+		
+		cache.updateTranslations(null, Arrays.asList("key.1"));
+		Assert.assertNull(cache.getPartition(Locale.ENGLISH).getTranslations().peek("key.1"));
+	}
+	
+	@Test
+	public void updateTranslations_shouldUpdateTheLocalesFallingBackOnTheDefaultLocale() {
+		final AtomicReference<String> englishPrefix = new AtomicReference<String>("Translation ");
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected String translate(String key, Locale locale) {
+				if (key.equals("key.fallback")) {
+					return englishPrefix.get() + key; // missing in French
+				}
+				return "Traduction " + key;
+			}
+		};
+		cache.getMessage("key.fallback", Locale.FRENCH);
+		cache.getMessage("key.1", Locale.FRENCH);
+		
+		englishPrefix.set("New translation ");
+		cache.updateTranslations(Locale.ENGLISH, Arrays.asList("key.fallback", "key.1"));
+		
+		Assert.assertEquals("key.fallback", cache.getMessageKey("New translation key.fallback", Locale.FRENCH));
+		Assert.assertEquals("Translation key.fallback", cache.getMessageKey("Translation key.fallback", Locale.FRENCH));
+		Assert.assertEquals("key.1", cache.getMessageKey("Traduction key.1", Locale.FRENCH));
+		Assert.assertEquals("New translation key.fallback", cache.getMessage("key.fallback", Locale.FRENCH));
+	}
+	
+	@Test
+	public void getMessage_shouldNotPutTheWordsOfTheMemoHitsAgain() {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected String translate(String key, Locale locale) {
+				return "Same translation";
+			}
+		};
+		cache.getMessage("key.a", Locale.ENGLISH);
+		cache.getMessage("key.b", Locale.ENGLISH);
+		long puts = cache.getPartition(Locale.ENGLISH).getPuts();
+		
+		for (int i = 0; i < 10; i++) {
+			cache.getMessage("key.a", Locale.ENGLISH); // memoized
+			cache.getMessage("key.b", Locale.ENGLISH);
+		}
+		
+		Assert.assertEquals(puts, cache.getPartition(Locale.ENGLISH).getPuts());
+		Assert.assertEquals("key.b", cache.getMessageKey("Same translation", Locale.ENGLISH));
+	}
+	
+	@Test
+	public void getMessage_shouldPutTheRemovedWordsOfTheMemoHitsAgain() {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		cache.getMessage("key.1", Locale.ENGLISH);
+		ReverseI18nPartition partition = cache.getPartition(Locale.ENGLISH);
+		partition.remove(partition.getTranslations().peek("key.1").getWord(), "key.1");
+		Assert.assertEquals("Translation 1", cache.getMessageKey("Translation 1", Locale.ENGLISH));
+		
+		cache.getMessage("key.1", Locale.ENGLISH); // memoized
+		
+		Assert.assertEquals("key.1", cache.getMessageKey("Translation 1", Locale.ENGLISH));
+	}
+	
+	@Test
+	public void setEnabled_shouldKeepCacheEmptyWhenDisabled() {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		cache.getMessage("key.1", Locale.ENGLISH);
+		
+		cache.setEnabled(false);
+		Assert.assertTrue(cache.size() == 0);
+		Assert.assertEquals("key.1", cache.getMessage("key.1", Locale.ENGLISH));
+		Assert.assertTrue(cache.size() == 0);
+		
+		cache.setEnabled(true);
+		cache.getMessage("key.1", Locale.ENGLISH);
+		Assert.assertEquals("key.1", cache.getMessageKey("Translation 1", Locale.ENGLISH));
+	}
+	
+	@Test
+	public void reset_shouldNotBeUndoneByAConcurrentChangeOfTheEvictionPolicy() throws Exception {
+		final AtomicReference<Thread> resetThread = new AtomicReference<Thread>();
+		final ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected ReverseI18nPartition getOrCreatePartition(ConcurrentMap<Locale, ReverseI18nPartition> partitions,
+			        Locale locale) {
+				if (resetThread.get() == null && partitions != this.partitions) { // carrying the words over
+					Thread thread = new Thread(new Runnable() {
+						
+						@Override
+						public void run() {
+							reset();
+						}
+					});
+					resetThread.set(thread);
+					thread.start();
+					try {
+						thread.join(200);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.getOrCreatePartition(partitions, locale);
+			}
+		};
+		cache.getMessage("key.1", Locale.ENGLISH);
+		
+		cache.setEvictionPolicy(10, 0);
+		resetThread.get().join();
+		
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals("Translation 1", cache.getMessageKey("Translation 1", Locale.ENGLISH));
+	}
+	
+	@Test
+	public void touchMessage_shouldNotFillTheCacheWhenDisabledWhileTouching() {
+		final AtomicBoolean disabling = new AtomicBoolean(false);
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			public boolean isEnabled() {
+				boolean enabled = super.isEnabled();
+				if (disabling.getAndSet(false)) {
+					setEnabled(false); // right after the flag was read
+				}
+				return enabled;
+			}
+		};
+		
+		disabling.set(true);
+		cache.touchMessage("key.1", "Translation 1", Locale.ENGLISH);
+		
+		Assert.assertFalse(cache.isEnabled());
+		Assert.assertEquals(0, cache.size());
+		Assert.assertNull(cache.getPartition(Locale.ENGLISH));
+	}
+	
+	@Test
+	public void cache_shouldRemainConsistentUnderConcurrentTraffic() throws Exception {
+		final ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final int workers = Math.max(4, Runtime.getRuntime().availableProcessors());
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(workers + 1);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		
+		// Request and flush threads
+		for (int w = 0; w < workers; w++) {
+			final int seed = w;
+			futures.add(executor.submit(new Callable<Void>() {
+				
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					int i = seed;
+					while (running.get()) {
+						int n = i++ % KEYS;
+						String translation = cache.getMessage("key." + n, Locale.ENGLISH);
+						Assert.assertTrue("Unexpected translation: " + translation,
+						    translation.equals("Translation " + n) || translation.equals("key." + n));
+						String key = cache.getMessageKey("Translation " + n, Locale.ENGLISH);
+						Assert.assertTrue("Unexpected reverse translation: " + key,
+						    key.equals("key." + n) || key.equals("Translation " + n));
+					}
+					return null;
+				}
+			}));
+		}
+		
+		// Admin thread toggling the GP
+		futures.add(executor.submit(new Callable<Void>() {
+			
+			@Override
+			public Void call() throws Exception {
+				start.await();
+				for (int round = 0; round < 200; round++) {
+					cache.setEnabled(false);
+					Assert.assertTrue(cache.size() == 0);
+					Thread.sleep(1);
+					Assert.assertTrue("The cache was refilled while disabled.", cache.size() == 0);
+					cache.setEnabled(true);
+					Thread.sleep(1);
+					cache.reset();
+				}
+				return null;
+			}
+		}));
+		
+		start.countDown();
+		futures.get(futures.size() - 1).get(60, TimeUnit.SECONDS);
+		running.set(false);
+		for (Future<Void> future : futures) {
+			future.get(60, TimeUnit.SECONDS); // rethrows assertion errors from the workers
+		}
+		executor.shutdown();
+		
+		// The cache is still fully functional
+		for (int n = 0; n < KEYS; n++) {
+			cache.getMessage("key." + n, Locale.ENGLISH);
+		}
+		Assert.assertEquals(KEYS, cache.size());
+		for (int n = 0; n < KEYS; n++) {
+			Assert.assertEquals("key." + n, cache.getMessageKey("Translation " + n, Locale.ENGLISH));
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReverseI18nPartitionTest {
+	
+	// Includes characters with special case mappings: dotted and dotless i, sharp s, sigmas, micro sign...
+	private static final String ALPHABET = "abcdeiI\u0130\u0131KkSs\u00DF\u03A3\u03C3\u03C2\u00B5\u039C\u00FF\u0178 -'";
+	
+	private static String randomString(Random random, int maxLength) {
+		int length = 1 + random.nextInt(maxLength);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return sb.toString();
+	}
+	
+	@Test
+	public void collectKeysContaining_shouldMatchAFullScanWhenIndexed() {
+		Random random = new Random(42);
+		ReverseI18nPartition scanned = new ReverseI18nPartition(Locale.ENGLISH, 16, false);
+		ReverseI18nPartition indexed = new ReverseI18nPartition(Locale.ENGLISH, 16, true);
+		for (int i = 0; i < 5000; i++) {
+			String word = randomString(random, 12).toLowerCase();
+			scanned.put(word, "key." + i);
+			indexed.put(word, "key." + i);
+		}
+		
+		for (int i = 0; i < 2000; i++) {
+			String search = randomString(random, 5);
+			Set<String> expected = new HashSet<String>();
+			Set<String> actual = new HashSet<String>();
+			scanned.collectKeysContaining(search, expected);
+			indexed.collectKeysContaining(search, actual);
+			Assert.assertEquals("Mismatch when searching '" + search + "'", expected, actual);
+		}
+	}
+	
+	@Test
+	public void collectKeysContaining_shouldFindWordsIgnoringCase() {
+		ReverseI18nPartition partition = new ReverseI18nPartition(Locale.ENGLISH, 16, true);
+		partition.put("kigali city", "addresshierarchy.kigali");
+		partition.put("nyarugenge", "addresshierarchy.nyarugenge");
+		
+		Set<String> keys = new HashSet<String>();
+		partition.collectKeysContaining("GALI", keys);
+		Assert.assertEquals(1, keys.size());
+		Assert.assertTrue(keys.contains("addresshierarchy.kigali"));
+		
+		keys.clear();
+		partition.collectKeysContaining("g", keys);
+		Assert.assertEquals(2, keys.size());
+		
+		keys.clear();
+		partition.collectKeysContaining("kigali town", keys);
+		Assert.assertTrue(keys.isEmpty());
+	}
+	
+	@Test
+	public void put_shouldStoreThePinnedWordsCompactly() {
+		ReverseI18nPartition partition = new ReverseI18nPartition(Locale.ENGLISH, 16, true, 0, 0, WordFolding.CASE,
+		        new KeyDictionary());
+		partition.put("kigali city", "addresshierarchy.kigali");
+		partition.put("nyarugenge", "addresshierarchy.nyarugenge", true);
+		partition.put("kigali city", "addresshierarchy.kigali", true); // moved to the pinned words
+		partition.put("nyarugenge", "addresshierarchy.nyarugenge.2"); // remains pinned
+		
+		Assert.assertTrue(partition.isCompact());
+		Assert.assertEquals(2, partition.size());
+		Assert.assertTrue(partition.isPinned("kigali city"));
+		Assert.assertTrue(partition.isPinned("nyarugenge"));
+		Assert.assertEquals("addresshierarchy.nyarugenge.2", partition.get("nyarugenge"));
+		Assert.assertEquals("addresshierarchy.kigali",
+		    partition.get(new WordFolding.Probe().set(WordFolding.CASE, "KIGALI City")));
+		Assert.assertEquals(2, partition.getEntries().size());
+		
+		partition.put("gasabo", "addresshierarchy.gasabo");
+		Set<String> keys = new HashSet<String>();
+		partition.collectKeysContaining("GA", keys);
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("addresshierarchy.kigali", "addresshierarchy.gasabo")), keys);
+	}
+	
+	@Test
+	public void remove_shouldRemoveTheEvictableAndThePinnedWords() {
+		ReverseI18nPartition partition = new ReverseI18nPartition(Locale.ENGLISH, 16, true, 0, 0, WordFolding.CASE,
+		        new KeyDictionary());
+		partition.put("kigali city", "addresshierarchy.kigali");
+		partition.put("nyarugenge", "addresshierarchy.nyarugenge", true);
+		partition.put("gasabo", "addresshierarchy.gasabo");
+		
+		Assert.assertFalse(partition.remove("kigali city", "addresshierarchy.gasabo"));
+		Assert.assertTrue(partition.remove("kigali city", "addresshierarchy.kigali"));
+		Set<String> pinnedKeys = new HashSet<String>();
+		partition.removeKeys(new HashSet<String>(Arrays.asList("addresshierarchy.nyarugenge", "addresshierarchy.gasabo")),
+		    pinnedKeys);
+		
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("addresshierarchy.nyarugenge")), pinnedKeys);
+		Assert.assertEquals(0, partition.size());
+		Assert.assertNull(partition.get("kigali city"));
+		Assert.assertNull(partition.get("nyarugenge"));
+		Set<String> keys = new HashSet<String>();
+		partition.collectKeysContaining("ga", keys);
+		Assert.assertTrue(keys.isEmpty());
+	}
+	
+	@Test
+	public void mightContainWord_shouldRemainSelectiveBeyondTheMaximumSize() {
+		ReverseI18nPartition partition = new ReverseI18nPartition(Locale.ENGLISH, 16, false, 100, 0);
+		partition.reserveFilters(10000);
+		for (int i = 0; i < 10000; i++) {
+			partition.put("pinned " + i, "key.pinned." + i, true);
+		}
+		for (int i = 0; i < 20000; i++) {
+			partition.put("evictable " + i, "key.evictable." + i);
+		}
+		
+		for (int i = 0; i < 10000; i++) {
+			Assert.assertTrue(partition.mightContainWord("pinned " + i));
+		}
+		for (int i = 19900; i < 20000; i++) {
+			Assert.assertTrue(partition.mightContainWord("evictable " + i));
+		}
+		int falsePositives = 0;
+		for (int i = 0; i < 10000; i++) {
+			if (partition.mightContainWord("unknown " + i)) {
+				falsePositives++;
+			}
+		}
+		Assert.assertTrue("Too many false positives: " + falsePositives, falsePositives < 500);
+	}
+}
@@ -0,0 +1,146 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.messagesource.PresentationMessage;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImplTest.StubReverseI18nCache;
+
+public class ReverseI18nSnapshotTest {
+	
+	private File file;
+	
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("reverseI18nCache", ".snapshot");
+	}
+	
+	@After
+	public void after() {
+		file.delete();
+	}
+	
+	private ReverseI18nCacheImpl newFilledCache() {
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		cache.getMessage("key.1", Locale.ENGLISH);
+		cache.getMessage("key.2", Locale.FRENCH);
+		cache.getPartition(Locale.FRENCH).put("traduction 3", "key.3", true);
+		return cache;
+	}
+	
+	@Test
+	public void loadSnapshot_shouldRestoreTheReverseTranslationsOfAllLocales() throws IOException {
+		newFilledCache().writeSnapshot(file);
+		
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		Assert.assertTrue(cache.loadSnapshot(file));
+		
+		Assert.assertEquals(3, cache.size());
+		Assert.assertEquals("key.1", cache.getMessageKey("Translation 1", Locale.ENGLISH));
+		Assert.assertEquals("key.2", cache.getMessageKey("Translation 2", Locale.FRENCH));
+		Assert.assertEquals("key.3", cache.getMessageKey("TRADUCTION 3", Locale.FRENCH));
+		Assert.assertTrue(cache.getPartition(Locale.FRENCH).isPinned("traduction 3"));
+		Assert.assertFalse(cache.getPartition(Locale.FRENCH).isPinned("translation 2"));
+	}
+	
+	@Test
+	public void loadSnapshot_shouldRejectAStaleSnapshot() throws IOException {
+		newFilledCache().writeSnapshot(file);
+		
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected Collection<PresentationMessage> getPresentations(Locale locale) {
+				Collection<PresentationMessage> presentations = new ArrayList<PresentationMessage>(
+				        super.getPresentations(locale));
+				presentations.add(new PresentationMessage("key.new", locale, "New translation", null));
+				return presentations;
+			}
+		};
+		Assert.assertFalse(cache.loadSnapshot(file));
+		Assert.assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void loadSnapshot_shouldRejectASnapshotWhoseDefaultMessagesChanged() throws IOException {
+		ReverseI18nCacheImpl filledCache = new StubReverseI18nCache();
+		filledCache.getMessage("key.1", Locale.FRENCH);
+		filledCache.writeSnapshot(file);
+		
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected Collection<PresentationMessage> getPresentations(Locale locale) {
+				Collection<PresentationMessage> presentations = new ArrayList<PresentationMessage>(
+				        super.getPresentations(locale));
+				if (Locale.ENGLISH.equals(locale)) {
+					presentations.add(new PresentationMessage("key.new", locale, "New translation", null));
+				}
+				return presentations;
+			}
+		};
+		Assert.assertFalse(cache.loadSnapshot(file));
+		Assert.assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void writeSnapshot_shouldOnlyComputeTheMessagesChecksumAgainOnceTheMessagesChanged() throws IOException {
+		final int[] checksums = new int[1];
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache() {
+			
+			@Override
+			protected long getMessagesChecksum(Collection<Locale> locales) {
+				checksums[0]++;
+				return super.getMessagesChecksum(locales);
+			}
+		};
+		cache.getMessage("key.1", Locale.ENGLISH);
+		
+		cache.writeSnapshot(file);
+		cache.writeSnapshot(file);
+		Assert.assertEquals(1, checksums[0]);
+		
+		cache.invalidateTranslations();
+		cache.writeSnapshot(file);
+		Assert.assertEquals(2, checksums[0]);
+		
+		cache.updateTranslations(Locale.ENGLISH, Collections.singleton("key.1"));
+		cache.writeSnapshot(file);
+		Assert.assertEquals(3, checksums[0]);
+		Assert.assertTrue(new StubReverseI18nCache().loadSnapshot(file));
+	}
+	
+	@Test
+	public void loadSnapshot_shouldRejectACorruptedSnapshot() throws IOException {
+		newFilledCache().writeSnapshot(file);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(raf.length() / 2);
+			int b = raf.read();
+			raf.seek(raf.length() / 2);
+			raf.write(b ^ 0xff);
+		}
+		finally {
+			raf.close();
+		}
+		
+		ReverseI18nCacheImpl cache = new StubReverseI18nCache();
+		Assert.assertFalse(cache.loadSnapshot(file));
+		Assert.assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void loadSnapshot_shouldReturnFalseWhenThereIsNoSnapshot() throws IOException {
+		file.delete();
+		Assert.assertFalse(new StubReverseI18nCache().loadSnapshot(file));
+	}
+}
@@ -0,0 +1,44 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.PersonAddress;
+
+public class StringPropertyAccessorsTest {
+	
+	@Test
+	public void forClass_shouldAccessTheAddressFields() throws Exception {
+		PersonAddress address = new PersonAddress();
+		address.setCityVillage("Paris");
+		
+		StringPropertyAccessors fields = StringPropertyAccessors.forClass(PersonAddress.class,
+		    Arrays.asList("country", "cityVillage"));
+		
+		Assert.assertEquals(2, fields.size());
+		Assert.assertEquals("cityVillage", fields.getName(1));
+		Assert.assertNull(fields.get(address, 0));
+		Assert.assertEquals("Paris", fields.get(address, 1));
+		fields.set(address, 0, "France");
+		Assert.assertEquals("France", address.getCountry());
+	}
+	
+	@Test
+	public void forClass_shouldRebuildThePlanWhenTheFieldsChange() throws Exception {
+		List<String> fields = Arrays.asList("country");
+		StringPropertyAccessors plan = StringPropertyAccessors.forClass(PersonAddress.class, fields);
+		Assert.assertSame(plan, StringPropertyAccessors.forClass(PersonAddress.class, fields));
+		
+		StringPropertyAccessors newPlan = StringPropertyAccessors.forClass(PersonAddress.class,
+		    Arrays.asList("country", "stateProvince"));
+		Assert.assertNotSame(plan, newPlan);
+		Assert.assertEquals(2, newPlan.size());
+	}
+	
+	@Test(expected = NoSuchMethodException.class)
+	public void forClass_shouldFailOnUnknownFields() throws Exception {
+		StringPropertyAccessors.forClass(PersonAddress.class, Arrays.asList("country", "notAnAddressField"));
+	}
+}
@@ -0,0 +1,59 @@
+package org.openmrs.module.exti18n.api.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WordFoldingTest {
+	
+	private static final String[] MESSAGES = { "Translation 1", "İSTANBUL", "Istanbul", "ıstanbul", "Côte d'Ivoire",
+	        "  Saint-Louis \t du  Nord ", "Straße", "Ἀθῆναι", "" };
+	
+	@Test
+	public void fold_shouldFoldTheCaseIndependentlyOfTheLocale() {
+		WordFolding folding = WordFolding.CASE;
+		
+		Assert.assertEquals("translation 1", folding.fold("Translation 1"));
+		Assert.assertEquals("istanbul", folding.fold("İSTANBUL"));
+		Assert.assertEquals("istanbul", folding.fold("Istanbul"));
+		Assert.assertEquals("istanbul", folding.fold("ıstanbul"));
+		Assert.assertEquals("côte d'ivoire", folding.fold("Côte d'Ivoire"));
+		Assert.assertEquals(" a  b ", folding.fold(" A  B "));
+	}
+	
+	@Test
+	public void fold_shouldFoldTheAccentsAndWhitespaceWhenEnabled() {
+		Assert.assertEquals("cote d'ivoire", WordFolding.of(true, false).fold("Côte d'Ivoire"));
+		Assert.assertEquals("cote d'ivoire", WordFolding.of(true, false).fold("Côte d'Ivoire"));
+		Assert.assertEquals("saint-louis du nord", WordFolding.of(false, true).fold("  Saint-Louis \t du  Nord "));
+		Assert.assertEquals("", WordFolding.of(false, true).fold(" \t "));
+		Assert.assertSame(WordFolding.CASE, WordFolding.of(false, false));
+	}
+	
+	@Test
+	public void hashCode_shouldMatchTheFoldedMessagesWithoutFoldingThem() {
+		for (WordFolding folding : new WordFolding[] { WordFolding.CASE, WordFolding.of(true, true) }) {
+			for (String message : MESSAGES) {
+				String folded = folding.fold(message);
+				Assert.assertEquals(message, folded.hashCode(), folding.hashCode(message));
+				Assert.assertTrue(message, folding.matches(message, folded));
+				Assert.assertFalse(message, folding.matches(message, folded + "x"));
+			}
+		}
+	}
+	
+	@Test
+	public void probe_shouldLookUpTheFoldedWords() {
+		WordFolding folding = WordFolding.of(true, true);
+		Map<String, String> words = new HashMap<String, String>();
+		words.put(folding.fold("Côte d'Ivoire"), "key.1");
+		words.put(folding.fold("İstanbul"), "key.2");
+		WordFolding.Probe probe = new WordFolding.Probe();
+		
+		Assert.assertEquals("key.1", words.get(probe.set(folding, " COTE  d'ivoire")));
+		Assert.assertEquals("key.2", words.get(probe.set(folding, "ISTANBUL")));
+		Assert.assertNull(words.get(probe.set(folding, "Istanbu")));
+	}
+}
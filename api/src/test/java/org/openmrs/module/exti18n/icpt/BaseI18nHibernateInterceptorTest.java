@@ -0,0 +1,77 @@
+package org.openmrs.module.exti18n.icpt;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImpl;
+
+public class BaseI18nHibernateInterceptorTest {
+	
+	/*
+	 * A cache being preloaded until its preload is marked over, that counts the waits for it.
+	 */
+	private static class PreloadingCache extends ReverseI18nCacheImpl {
+		
+		private int waits = 0;
+		
+		private PreloadingCache() {
+			preloading();
+		}
+		
+		private void preloading() {
+			readyLatch = new CountDownLatch(1);
+		}
+		
+		@Override
+		public boolean awaitReady(long timeoutMillis) {
+			waits++;
+			return super.awaitReady(timeoutMillis);
+		}
+		
+		private void preloaded() {
+			readyLatch.countDown();
+		}
+	}
+	
+	private static BaseI18nHibernateInterceptor newInterceptor(final ReverseI18nCache cache) {
+		return new BaseI18nHibernateInterceptor("testHibernateInterceptor") {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected ReverseI18nCache getI18nCache() {
+				return cache;
+			}
+		};
+	}
+	
+	@Test
+	public void awaitReadyCache_shouldOnlyWaitOnceForAPreloadingCache() {
+		PreloadingCache cache = new PreloadingCache();
+		BaseI18nHibernateInterceptor interceptor = newInterceptor(cache);
+		
+		interceptor.awaitReadyCache();
+		interceptor.awaitReadyCache();
+		Assert.assertEquals(1, cache.waits);
+		
+		cache.preloaded();
+		interceptor.awaitReadyCache();
+		Assert.assertEquals(1, cache.waits);
+	}
+	
+	@Test
+	public void awaitReadyCache_shouldWaitAgainForTheNextPreload() {
+		PreloadingCache cache = new PreloadingCache();
+		BaseI18nHibernateInterceptor interceptor = newInterceptor(cache);
+		interceptor.awaitReadyCache();
+		cache.preloaded();
+		interceptor.awaitReadyCache();
+		
+		cache.preloading();
+		interceptor.awaitReadyCache();
+		
+		Assert.assertEquals(2, cache.waits);
+	}
+}
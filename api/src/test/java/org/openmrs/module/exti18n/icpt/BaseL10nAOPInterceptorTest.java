@@ -0,0 +1,225 @@
+package org.openmrs.module.exti18n.icpt;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.BaseOpenmrsMetadata;
+import org.openmrs.Location;
+import org.openmrs.Patient;
+import org.openmrs.Person;
+import org.openmrs.PersonAddress;
+import org.openmrs.VisitType;
+import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.BaseLocalizer;
+
+public class BaseL10nAOPInterceptorTest {
+	
+	private static final Class<?>[] COVERED_CLASSES = new Class<?>[] { Location.class, PersonAddress.class, Person.class };
+	
+	/*
+	 * A service with all kinds of return types.
+	 */
+	private interface StubService {
+		
+		void saveLocation(Location location);
+		
+		int getCountOfLocations();
+		
+		String getName();
+		
+		Location getLocation();
+		
+		Patient getPatient();
+		
+		VisitType getVisitType();
+		
+		BaseOpenmrsMetadata getMetadata();
+		
+		Object getObject();
+		
+		List<Location> getLocations();
+		
+		Set<? extends Person> getPersons();
+		
+		List<VisitType> getVisitTypes();
+		
+		List<String> getNames();
+		
+		@SuppressWarnings("rawtypes")
+		Collection getRawCollection();
+		
+		Map<String, Location> getLocationsByName();
+		
+		<T extends BaseOpenmrsMetadata> List<T> getAll(Class<T> clazz);
+	}
+	
+	/*
+	 * Counts the localized results.
+	 */
+	private static class CountingLocalizer extends BaseLocalizer<ReverseI18nCache> {
+		
+		private int count = 0;
+		
+		private Class<?>[] coveredClasses = COVERED_CLASSES;
+		
+		@Override
+		protected ReverseI18nCache getCache() {
+			return null;
+		}
+		
+		@Override
+		public boolean isEnabled() {
+			return true;
+		}
+		
+		@Override
+		public Class<?>[] getCoveredClasses() {
+			return coveredClasses;
+		}
+		
+		@Override
+		public Object process(Object original, boolean readOnly) {
+			count++;
+			return original;
+		}
+		
+		@Override
+		protected Object process(Object original, ReverseI18nCache cache) {
+			return original;
+		}
+	}
+	
+	private static class StubInterceptor extends BaseL10nAOPInterceptor {
+		
+		private final BaseLocalizer<?> localizer;
+		
+		StubInterceptor(BaseLocalizer<?> localizer) {
+			this.localizer = localizer;
+		}
+		
+		@Override
+		protected BaseLocalizer<?> lookupLocalizer() {
+			return localizer;
+		}
+	}
+	
+	/*
+	 * Invokes a service method that returns a location, possibly through another advised call.
+	 */
+	private static MethodInvocation newInvocation(final MethodInterceptor nested) throws Exception {
+		return newInvocation("getLocation", nested);
+	}
+	
+	/*
+	 * Invokes a service method, possibly through another advised call that returns a location.
+	 */
+	private static MethodInvocation newInvocation(String methodName, final MethodInterceptor nested)
+	        throws Exception {
+		final Method method = StubService.class.getMethod(methodName);
+		return new MethodInvocation() {
+			
+			@Override
+			public Object proceed() throws Throwable {
+				if (nested != null) {
+					return nested.invoke(newInvocation(null));
+				}
+				return new Location();
+			}
+			
+			@Override
+			public Method getMethod() {
+				return method;
+			}
+			
+			@Override
+			public Object[] getArguments() {
+				return new Object[0];
+			}
+		};
+	}
+	
+	private static boolean canReturnCoveredEntities(String methodName) throws Exception {
+		for (Method method : StubService.class.getMethods()) {
+			if (method.getName().equals(methodName)) {
+				return BaseL10nAOPInterceptor.canReturnCoveredEntities(method, COVERED_CLASSES);
+			}
+		}
+		throw new NoSuchMethodException(methodName);
+	}
+	
+	@Test
+	public void invoke_shouldOnlyLocalizeTheOutermostAdvisedCall() throws Throwable {
+		CountingLocalizer localizer = new CountingLocalizer();
+		StubInterceptor outer = new StubInterceptor(localizer);
+		StubInterceptor inner = new StubInterceptor(localizer);
+		long avoidedPasses = BaseL10nAOPInterceptor.getAvoidedPasses(StubInterceptor.class);
+		
+		outer.invoke(newInvocation(inner));
+		
+		Assert.assertEquals(1, localizer.count);
+		Assert.assertEquals(avoidedPasses + 1, BaseL10nAOPInterceptor.getAvoidedPasses(StubInterceptor.class));
+		
+		// the depth is reset after the outermost call
+		inner.invoke(newInvocation(null));
+		Assert.assertEquals(2, localizer.count);
+	}
+	
+	@Test
+	public void invoke_shouldNotCountAvoidedPassesWhenTheOutermostCallDoesNotLocalize() throws Throwable {
+		CountingLocalizer localizer = new CountingLocalizer();
+		StubInterceptor outer = new StubInterceptor(localizer);
+		StubInterceptor inner = new StubInterceptor(localizer);
+		long avoidedPasses = BaseL10nAOPInterceptor.getAvoidedPasses(StubInterceptor.class);
+		
+		outer.invoke(newInvocation("getCountOfLocations", inner));
+		
+		Assert.assertEquals(0, localizer.count);
+		Assert.assertEquals(avoidedPasses, BaseL10nAOPInterceptor.getAvoidedPasses(StubInterceptor.class));
+	}
+	
+	@Test
+	public void invoke_shouldClassifyTheMethodsAgainWhenTheCoveredClassesChange() throws Throwable {
+		CountingLocalizer localizer = new CountingLocalizer();
+		StubInterceptor interceptor = new StubInterceptor(localizer);
+		interceptor.invoke(newInvocation(null));
+		Assert.assertEquals(1, localizer.count);
+		
+		localizer.coveredClasses = new Class<?>[] { VisitType.class };
+		interceptor.invoke(newInvocation(null));
+		Assert.assertEquals(1, localizer.count);
+		
+		localizer.coveredClasses = COVERED_CLASSES;
+		interceptor.invoke(newInvocation(null));
+		Assert.assertEquals(2, localizer.count);
+	}
+	
+	@Test
+	public void canReturnCoveredEntities_shouldSkipMethodsThatCantReturnCoveredEntities() throws Exception {
+		Assert.assertFalse(canReturnCoveredEntities("saveLocation"));
+		Assert.assertFalse(canReturnCoveredEntities("getCountOfLocations"));
+		Assert.assertFalse(canReturnCoveredEntities("getName"));
+		Assert.assertFalse(canReturnCoveredEntities("getVisitType"));
+		Assert.assertFalse(canReturnCoveredEntities("getVisitTypes"));
+		Assert.assertFalse(canReturnCoveredEntities("getNames"));
+		Assert.assertFalse(canReturnCoveredEntities("getLocationsByName")); // maps are not localized
+	}
+	
+	@Test
+	public void canReturnCoveredEntities_shouldKeepMethodsThatMayReturnCoveredEntities() throws Exception {
+		Assert.assertTrue(canReturnCoveredEntities("getLocation"));
+		Assert.assertTrue(canReturnCoveredEntities("getPatient"));
+		Assert.assertTrue(canReturnCoveredEntities("getMetadata"));
+		Assert.assertTrue(canReturnCoveredEntities("getObject"));
+		Assert.assertTrue(canReturnCoveredEntities("getLocations"));
+		Assert.assertTrue(canReturnCoveredEntities("getPersons"));
+		Assert.assertTrue(canReturnCoveredEntities("getRawCollection"));
+		Assert.assertTrue(canReturnCoveredEntities("getAll"));
+	}
+}
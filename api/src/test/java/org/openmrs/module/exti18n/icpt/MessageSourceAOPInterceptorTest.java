@@ -0,0 +1,173 @@
+package org.openmrs.module.exti18n.icpt;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.messagesource.MessageSourceService;
+import org.openmrs.messagesource.MutableMessageSource;
+import org.openmrs.messagesource.PresentationMessage;
+import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.I18nInvalidationBroadcaster;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImpl;
+
+public class MessageSourceAOPInterceptorTest {
+	
+	/*
+	 * Records the updates of the cache.
+	 */
+	private static class RecordingCache extends ReverseI18nCacheImpl {
+		
+		private final List<String> updates = new ArrayList<String>();
+		
+		@Override
+		public void updateTranslations(Locale locale, Collection<String> keys) {
+			updates.add(locale + ":" + keys);
+		}
+		
+		@Override
+		public void invalidateTranslations() {
+			updates.add("all");
+		}
+	}
+	
+	/*
+	 * Records the published changes instead of sending them.
+	 */
+	private static class RecordingBroadcaster extends I18nInvalidationBroadcaster {
+		
+		private final List<Collection<String>> published = new ArrayList<Collection<String>>();
+		
+		@Override
+		public void publishTranslationsChanged(Collection<String> keys) {
+			published.add(keys);
+		}
+	}
+	
+	/*
+	 * Translates through a map of messages.
+	 */
+	private static class TranslatingCache extends ReverseI18nCacheImpl {
+		
+		private final Map<String, String> messages = new HashMap<String, String>();
+		
+		@Override
+		protected String translate(String key, Locale locale) {
+			return messages.containsKey(key) ? messages.get(key) : key;
+		}
+	}
+	
+	private static class StubInterceptor extends MessageSourceAOPInterceptor {
+		
+		private final RecordingCache cache = new RecordingCache();
+		
+		private final TranslatingCache translatingCache = new TranslatingCache();
+		
+		private final RecordingBroadcaster invalidations = new RecordingBroadcaster();
+		
+		@Override
+		protected List<ReverseI18nCache> lookupCaches() {
+			return Arrays.<ReverseI18nCache> asList(cache, translatingCache);
+		}
+		
+		@Override
+		protected I18nInvalidationBroadcaster lookupInvalidations() {
+			return invalidations;
+		}
+	}
+	
+	/*
+	 * Invokes a method of the message source service, the updates must be done after it proceeded.
+	 */
+	private static MethodInvocation newInvocation(final StubInterceptor interceptor, String methodName,
+	        Class<?> parameterType, final Object argument) throws Exception {
+		final Method method = MessageSourceService.class.getMethod(methodName, parameterType);
+		return new MethodInvocation() {
+			
+			@Override
+			public Object proceed() throws Throwable {
+				Assert.assertTrue(interceptor.cache.updates.isEmpty());
+				return "proceeded";
+			}
+			
+			@Override
+			public Method getMethod() {
+				return method;
+			}
+			
+			@Override
+			public Object[] getArguments() {
+				return new Object[] { argument };
+			}
+		};
+	}
+	
+	@Test
+	public void invoke_shouldUpdateTheChangedKeyInItsLocaleOnly() throws Throwable {
+		StubInterceptor interceptor = new StubInterceptor();
+		PresentationMessage message = new PresentationMessage("key.1", Locale.FRENCH, "Traduction 1", null);
+		
+		Object result = interceptor.invoke(newInvocation(interceptor, "addPresentation", PresentationMessage.class,
+		    message));
+		
+		Assert.assertEquals("proceeded", result);
+		Assert.assertEquals(Arrays.asList("fr:[key.1]"), interceptor.cache.updates);
+		Assert.assertEquals(1, interceptor.invalidations.published.size());
+		Assert.assertEquals(Arrays.asList("key.1"), new ArrayList<String>(interceptor.invalidations.published.get(0)));
+	}
+	
+	@Test
+	public void invoke_shouldNoLongerReverseTranslateThePreviousTranslationOfAChangedKey() throws Throwable {
+		StubInterceptor interceptor = new StubInterceptor();
+		TranslatingCache cache = interceptor.translatingCache;
+		cache.messages.put("key.1", "Translation 1");
+		cache.messages.put("key.2", "Translation 2");
+		Assert.assertEquals("Translation 1", cache.getMessage("key.1", Locale.FRENCH));
+		Assert.assertEquals("Translation 2", cache.getMessage("key.2", Locale.FRENCH));
+		// the previous translation of key.2 is no longer memoized
+		cache.getPartition(Locale.FRENCH).invalidateTranslations(Arrays.asList("key.2"));
+		
+		cache.messages.put("key.1", "Traduction 1");
+		cache.messages.put("key.2", "Traduction 2");
+		for (String key : Arrays.asList("key.1", "key.2")) {
+			interceptor.cache.updates.clear();
+			interceptor.invoke(newInvocation(interceptor, "addPresentation", PresentationMessage.class,
+			    new PresentationMessage(key, Locale.FRENCH, cache.messages.get(key), null)));
+		}
+		
+		Assert.assertEquals("Translation 1", cache.getMessageKey("Translation 1", Locale.FRENCH));
+		Assert.assertEquals("Translation 2", cache.getMessageKey("Translation 2", Locale.FRENCH));
+		Assert.assertEquals("key.1", cache.getMessageKey("Traduction 1", Locale.FRENCH));
+		Assert.assertEquals("key.2", cache.getMessageKey("Traduction 2", Locale.FRENCH));
+	}
+	
+	@Test
+	public void invoke_shouldInvalidateAllTranslationsWhenTheMessageSourceIsReplaced() throws Throwable {
+		StubInterceptor interceptor = new StubInterceptor();
+		
+		interceptor.invoke(newInvocation(interceptor, "setActiveMessageSource", MutableMessageSource.class, null));
+		
+		Assert.assertEquals(Arrays.asList("all"), interceptor.cache.updates);
+		Assert.assertEquals(1, interceptor.invalidations.published.size());
+		Assert.assertNull(interceptor.invalidations.published.get(0));
+	}
+	
+	@Test
+	public void invoke_shouldNotUpdateOnReads() throws Throwable {
+		StubInterceptor interceptor = new StubInterceptor();
+		
+		Object result = interceptor.invoke(newInvocation(interceptor, "getMessage", String.class, "key.1"));
+		
+		Assert.assertEquals("proceeded", result);
+		Assert.assertTrue(interceptor.cache.updates.isEmpty());
+		Assert.assertTrue(interceptor.invalidations.published.isEmpty());
+	}
+}
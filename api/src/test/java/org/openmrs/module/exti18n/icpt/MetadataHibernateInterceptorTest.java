@@ -66,4 +66,57 @@ public class MetadataHibernateInterceptorTest extends BaseModuleContextSensitive
 		// And yet the original key can be used for fetching
 		Assert.assertNotNull(ls.getLocation(name));
 	}
+	
+	@Test
+	public void onFlushDirty_shouldRestoreTheExactKeysOfUneditedValues() {
+		
+		// Setup, the reverse translation of 'Clinic' is ambiguous
+		i18nCache.getMessage("metadata.outpatientClinic", Locale.ENGLISH);
+		i18nCache.getMessage("metadata.clinic", Locale.ENGLISH);
+		
+		LocationService ls = Context.getLocationService();
+		String uuid = "0f5c5e4a-7b4d-4b1e-9a7f-3f2b1c9d8e71";
+		Location location = new Location();
+		location.setUuid(uuid);
+		location.setName("metadata.outpatientClinic");
+		Context.setLocale(Locale.ENGLISH);
+		location = ls.saveLocation(location);
+		Context.flushSession();
+		
+		// Replay, as if the location had been localized
+		location.setName("Clinic");
+		location.setDescription("Some other phrase.");
+		ls.saveLocation(location);
+		Context.flushSession();
+		Context.evictFromSession(location);
+		
+		// Verif
+		location = ls.getLocationByUuid(uuid);
+		Assert.assertEquals("metadata.outpatientClinic", location.getName());
+		Assert.assertEquals("Some other phrase.", location.getDescription());
+	}
+	
+	@Test
+	public void onFlushDirty_shouldRestoreTheExactKeysOfValuesThatWereNeverReverseTranslated() {
+		
+		// Setup, 'metadata.clinic' was never rendered through the cache
+		LocationService ls = Context.getLocationService();
+		String uuid = "5d3c2b1a-8e7f-4a6b-9c5d-4e3f2a1b0c9d";
+		Location location = new Location();
+		location.setUuid(uuid);
+		location.setName("metadata.clinic");
+		Context.setLocale(Locale.ENGLISH);
+		location = ls.saveLocation(location);
+		Context.flushSession();
+		
+		// Replay, as if the location had been localized
+		location.setName("Clinic");
+		ls.saveLocation(location);
+		Context.flushSession();
+		Context.evictFromSession(location);
+		
+		// Verif
+		location = ls.getLocationByUuid(uuid);
+		Assert.assertEquals("metadata.clinic", location.getName());
+	}
 }
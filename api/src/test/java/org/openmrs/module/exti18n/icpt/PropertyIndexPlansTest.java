@@ -0,0 +1,38 @@
+package org.openmrs.module.exti18n.icpt;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.PersonAddress;
+
+public class PropertyIndexPlansTest {
+	
+	private static final String[] PROPERTY_NAMES = new String[] { "uuid", "address1", "cityVillage", "country",
+	        "dateCreated" };
+	
+	@Test
+	public void getIndexes_shouldReturnTheIndexesOfTheFieldsToInternationalize() {
+		PropertyIndexPlans plans = new PropertyIndexPlans();
+		List<String> fields = Arrays.asList("country", "cityVillage", "notAProperty");
+		
+		int[] indexes = plans.getIndexes(PersonAddress.class, PROPERTY_NAMES, fields);
+		
+		Assert.assertArrayEquals(new int[] { 2, 3 }, indexes);
+		Assert.assertSame(indexes, plans.getIndexes(PersonAddress.class, PROPERTY_NAMES, fields));
+		Assert.assertSame(indexes, plans.getIndexes(PersonAddress.class, PROPERTY_NAMES.clone(), fields));
+	}
+	
+	@Test
+	public void getIndexes_shouldRecomputeTheIndexesWhenTheConfigurationChanges() {
+		PropertyIndexPlans plans = new PropertyIndexPlans();
+		plans.getIndexes(Location.class, PROPERTY_NAMES, Arrays.asList("country"));
+		
+		Assert.assertArrayEquals(new int[] { 3 }, plans.getIndexes(Location.class, PROPERTY_NAMES, Arrays.asList("country")));
+		Assert.assertArrayEquals(new int[] { 1 }, plans.getIndexes(Location.class, PROPERTY_NAMES, Arrays.asList("address1")));
+		Assert.assertArrayEquals(new int[] { 0 }, plans.getIndexes(Location.class, new String[] { "country" },
+		    Arrays.asList("country")));
+	}
+}
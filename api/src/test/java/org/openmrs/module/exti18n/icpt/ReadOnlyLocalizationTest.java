@@ -0,0 +1,79 @@
+package org.openmrs.module.exti18n.icpt;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Location;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.exti18n.ExtI18nConfig;
+import org.openmrs.module.exti18n.ExtI18nConstants;
+import org.openmrs.module.exti18n.ExtI18nGlobalPropertyListener;
+import org.openmrs.module.exti18n.api.AOPModuleContextSensitiveTest;
+import org.openmrs.module.exti18n.api.TestWithAOP;
+import org.openmrs.module.exti18n.api.TestsMessageSource;
+
+public class ReadOnlyLocalizationTest extends AOPModuleContextSensitiveTest {
+	
+	@Override
+	protected void setInterceptorAndServices(TestWithAOP testCase) {
+		testCase.setInterceptor(MetadataAOPInterceptor.class);
+		testCase.addService(LocationService.class);
+	}
+	
+	private static ExtI18nConfig getConfig() {
+		return Context.getRegisteredComponent(ExtI18nConstants.COMPONENT_CONFIG, ExtI18nConfig.class);
+	}
+	
+	@Before
+	public void setup() {
+		TestsMessageSource source = (TestsMessageSource) Context.getMessageSourceService().getActiveMessageSource();
+		source.addMessageProperties("org/openmrs/module/exti18n/include/metadata.properties");
+		source.refreshCache();
+		
+		AdministrationService adminService = Context.getAdministrationService();
+		adminService.saveGlobalProperty(new GlobalProperty(ExtI18nConstants.GLOBAL_PROP_READ_ONLY_L10N, "true"));
+		ExtI18nGlobalPropertyListener.setConfig(adminService, getConfig());
+	}
+	
+	@After
+	public void tearDown() {
+		getConfig().setReadOnlyLocalization(false);
+	}
+	
+	@Test
+	public void invoke_shouldSaveTheEditsOfReadOnlyLocalizedLocations() {
+		
+		// Setup
+		LocationService ls = Context.getLocationService();
+		String uuid = "b984a88e-371b-4cf1-8738-22b3441b71af";
+		Location location = new Location();
+		location.setUuid(uuid);
+		location.setName("metadata.healthCenter");
+		location.setDescription("metadata.healthCenter.desc");
+		ls.saveLocation(location);
+		Context.flushSession();
+		Context.evictFromSession(location);
+		
+		// Replay
+		Context.setLocale(Locale.ENGLISH);
+		location = ls.getLocationByUuid(uuid);
+		Assert.assertEquals("Health center", location.getName());
+		location.setName("Health centre edited");
+		ls.saveLocation(location);
+		Context.flushSession();
+		
+		// Verif
+		List<List<Object>> rows = Context.getAdministrationService().executeSQL(
+		    "select name, description from location where uuid = '" + uuid + "'", true);
+		Assert.assertEquals(1, rows.size());
+		Assert.assertEquals("Health centre edited", rows.get(0).get(0));
+		Assert.assertEquals("metadata.healthCenter.desc", rows.get(0).get(1));
+	}
+}
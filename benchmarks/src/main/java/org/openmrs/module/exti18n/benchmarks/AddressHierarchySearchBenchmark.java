@@ -0,0 +1,53 @@
+package org.openmrs.module.exti18n.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.exti18n.api.impl.AddressHierarchyI18nCacheImpl;
+
+/**
+ * The searches by like name of a preloaded address hierarchy, from a search string matching many
+ * entries to one matching none, with and without the compact storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AddressHierarchySearchBenchmark {
+	
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public int size;
+	
+	@Param({ "ka", "kalomi", "xyz" })
+	public String search;
+	
+	@Param({ "false", "true" })
+	public boolean compact;
+	
+	private AddressHierarchyI18nCacheImpl cache;
+	
+	@Setup
+	public void setUp() {
+		cache = StubMessageSource.addressHierarchy(size).newAddressHierarchyCache("benchmark.addressHierarchyI18nCache",
+		    Collections.singletonList("cityVillage"), compact);
+	}
+	
+	@Benchmark
+	public List<String> getMessageKeysByLikeName() {
+		return cache.getMessageKeysByLikeName(search, StubMessageSource.LOCALE);
+	}
+}
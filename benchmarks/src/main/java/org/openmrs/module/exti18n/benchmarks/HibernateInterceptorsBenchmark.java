@@ -0,0 +1,184 @@
+package org.openmrs.module.exti18n.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openmrs.Location;
+import org.openmrs.PersonAddress;
+import org.openmrs.module.exti18n.api.impl.AddressHierarchyI18nCacheImpl;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImpl;
+import org.openmrs.module.exti18n.icpt.AddressValuesHibernateInterceptor;
+import org.openmrs.module.exti18n.icpt.MetadataHibernateInterceptor;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * The flushes of dirty entities through the Hibernate interceptors, ie. their i18nMetadata and
+ * i18nAddressValues loops, over warm caches. The scores are times per flush of {@code size}
+ * entities.
+ * <p>
+ * The "_unedited" variants flush localized entities as they were loaded, whose values are restored
+ * to their previous i18n message keys. The "_edited" variants flush entities whose values were all
+ * edited to other translations, which are reverse translated. The interceptors write the i18n keys
+ * in the flushed states, so each flush first copies the states afresh, which is negligible next to
+ * the lookups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HibernateInterceptorsBenchmark {
+	
+	private static final int METADATA_SIZE = 10000;
+	
+	private static final List<String> ADDRESS_FIELDS = Arrays.asList("country", "stateProvince", "countyDistrict",
+	    "cityVillage");
+	
+	private static final int HIERARCHY_SIZE = 1111;
+	
+	// The properties of the entities as Hibernate lists them, only some of them are localized
+	private static final String[] LOCATION_PROPERTIES = { "name", "description", "address1", "postalCode", "retired",
+	        "dateCreated" };
+	
+	private static final String[] ADDRESS_PROPERTIES = { "preferred", "address1", "cityVillage", "countyDistrict",
+	        "stateProvince", "country", "postalCode", "voided", "dateCreated" };
+	
+	@Param({ "1", "100", "10000" })
+	public int size;
+	
+	private MetadataHibernateInterceptor metadataInterceptor;
+	
+	private AddressValuesHibernateInterceptor addressValuesInterceptor;
+	
+	private Location[] locations;
+	
+	private Object[][] locationPreviousStates;
+	
+	private Object[][] locationUneditedStates;
+	
+	private Object[][] locationEditedStates;
+	
+	private PersonAddress[] addresses;
+	
+	private Object[][] addressPreviousStates;
+	
+	private Object[][] addressUneditedStates;
+	
+	private Object[][] addressEditedStates;
+	
+	@Setup
+	public void setUp() {
+		StubMessageSource metadata = StubMessageSource.metadata(METADATA_SIZE);
+		ReverseI18nCacheImpl cache = metadata.newCache("benchmark.interceptors.reverseI18nCache");
+		StubMessageSource.preload(cache, StubMessageSource.METADATA_PREFIX);
+		metadataInterceptor = new MetadataHibernateInterceptor();
+		inject(metadataInterceptor, "i18nCache", cache);
+		
+		StubMessageSource hierarchy = StubMessageSource.addressHierarchy(HIERARCHY_SIZE);
+		AddressHierarchyI18nCacheImpl ahCache = hierarchy.newAddressHierarchyCache(
+		    "benchmark.interceptors.addressHierarchyI18nCache", ADDRESS_FIELDS);
+		addressValuesInterceptor = new AddressValuesHibernateInterceptor();
+		inject(addressValuesInterceptor, "i18nCache", ahCache);
+		
+		locations = new Location[size];
+		locationPreviousStates = new Object[size][];
+		locationUneditedStates = new Object[size][];
+		locationEditedStates = new Object[size][];
+		addresses = new PersonAddress[size];
+		addressPreviousStates = new Object[size][];
+		addressUneditedStates = new Object[size][];
+		addressEditedStates = new Object[size][];
+		for (int i = 0; i < size; i++) {
+			locations[i] = new Location();
+			String name = StubMessageSource.METADATA_PREFIX + (2 * i) % METADATA_SIZE;
+			String description = StubMessageSource.METADATA_PREFIX + (2 * i + 1) % METADATA_SIZE;
+			String otherName = StubMessageSource.METADATA_PREFIX + (2 * i + 2) % METADATA_SIZE;
+			locationPreviousStates[i] = new Object[] { name, description, "Main Street", "1234", false, null };
+			locationUneditedStates[i] = new Object[] { metadata.getMessage(name), metadata.getMessage(description),
+			        "Main Street", "1234", false, null };
+			locationEditedStates[i] = new Object[] { metadata.getMessage(otherName), metadata.getMessage(name),
+			        "Main Street", "1234", false, null };
+			
+			addresses[i] = new PersonAddress();
+			String[] levels = getAddressLevels(i);
+			String[] otherLevels = getAddressLevels(i + 1);
+			addressPreviousStates[i] = new Object[] { true, "Main Street", levels[0], levels[1], levels[2], levels[3],
+			        "1234", false, null };
+			addressUneditedStates[i] = new Object[] { true, "Main Street", hierarchy.getMessage(levels[0]),
+			        hierarchy.getMessage(levels[1]), hierarchy.getMessage(levels[2]), hierarchy.getMessage(levels[3]),
+			        "1234", false, null };
+			addressEditedStates[i] = new Object[] { true, "Main Street", hierarchy.getMessage(otherLevels[0]),
+			        hierarchy.getMessage(otherLevels[1]), hierarchy.getMessage(otherLevels[2]),
+			        hierarchy.getMessage(otherLevels[3]), "1234", false, null };
+		}
+	}
+	
+	/*
+	 * The i18n keys of the villages, districts, provinces and country of an address
+	 */
+	private static String[] getAddressLevels(int i) {
+		return new String[] { StubMessageSource.AH_PREFIX + (111 + i % 1000), StubMessageSource.AH_PREFIX + (11 + i % 100),
+		        StubMessageSource.AH_PREFIX + (1 + i % 10), StubMessageSource.AH_PREFIX + 0 };
+	}
+	
+	/*
+	 * Sets an autowired field
+	 */
+	private static void inject(Object target, String fieldName, Object value) {
+		Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+		ReflectionUtils.makeAccessible(field);
+		ReflectionUtils.setField(field, target, value);
+	}
+	
+	@Benchmark
+	public void i18nMetadata_unedited(Blackhole blackhole) {
+		flushLocations(locationUneditedStates, blackhole);
+	}
+	
+	@Benchmark
+	public void i18nMetadata_edited(Blackhole blackhole) {
+		flushLocations(locationEditedStates, blackhole);
+	}
+	
+	@Benchmark
+	public void i18nAddressValues_unedited(Blackhole blackhole) {
+		flushAddresses(addressUneditedStates, blackhole);
+	}
+	
+	@Benchmark
+	public void i18nAddressValues_edited(Blackhole blackhole) {
+		flushAddresses(addressEditedStates, blackhole);
+	}
+	
+	private void flushLocations(Object[][] states, Blackhole blackhole) {
+		for (int i = 0; i < size; i++) {
+			Object[] state = states[i].clone();
+			metadataInterceptor.onFlushDirty(locations[i], i, state, locationPreviousStates[i], LOCATION_PROPERTIES, null);
+			blackhole.consume(state);
+		}
+	}
+	
+	private void flushAddresses(Object[][] states, Blackhole blackhole) {
+		for (int i = 0; i < size; i++) {
+			Object[] state = states[i].clone();
+			addressValuesInterceptor.onFlushDirty(addresses[i], i, state, addressPreviousStates[i], ADDRESS_PROPERTIES,
+			    null);
+			blackhole.consume(state);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package org.openmrs.module.exti18n.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Location;
+import org.openmrs.PersonAddress;
+import org.openmrs.module.exti18n.api.AddressHierarchyI18nCache;
+import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.AddressValuesLocalizer;
+import org.openmrs.module.exti18n.api.impl.MetadataLocalizer;
+
+/**
+ * The localization of single objects and of large collections by {@link MetadataLocalizer} and
+ * {@link AddressValuesLocalizer}, over warm caches. The objects are localized in place, so each
+ * invocation first sets their fields back to i18n message keys, which is negligible next to the
+ * lookups.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalizersBenchmark {
+	
+	private static final int METADATA_SIZE = 10000;
+	
+	private static final List<String> ADDRESS_FIELDS = Arrays.asList("country", "stateProvince", "countyDistrict",
+	    "cityVillage");
+	
+	// 1 country, 10 provinces, 100 districts and 1000 villages
+	private static final int HIERARCHY_SIZE = 1111;
+	
+	@State(Scope.Benchmark)
+	public static class Localizers {
+		
+		private MetadataLocalizer metadataLocalizer;
+		
+		private AddressValuesLocalizer addressValuesLocalizer;
+		
+		@Setup
+		public void setUp() {
+			StubMessageSource metadata = StubMessageSource.metadata(METADATA_SIZE);
+			final ReverseI18nCache cache = metadata.newCache("benchmark.localizers.reverseI18nCache");
+			for (String key : metadata.getKeys()) {
+				cache.getMessage(key, StubMessageSource.LOCALE);
+			}
+			metadataLocalizer = new MetadataLocalizer() {
+				
+				@Override
+				protected ReverseI18nCache getCache() {
+					return cache;
+				}
+			};
+			
+			final AddressHierarchyI18nCache ahCache = StubMessageSource.addressHierarchy(HIERARCHY_SIZE)
+			        .newAddressHierarchyCache("benchmark.localizers.addressHierarchyI18nCache", ADDRESS_FIELDS);
+			addressValuesLocalizer = new AddressValuesLocalizer() {
+				
+				@Override
+				protected AddressHierarchyI18nCache getCache() {
+					return ahCache;
+				}
+			};
+		}
+	}
+	
+	@State(Scope.Benchmark)
+	public static class SingleObject {
+		
+		private final Location location = new Location();
+		
+		private final PersonAddress address = new PersonAddress();
+		
+		void reset() {
+			LocalizersBenchmark.reset(location, address, 0);
+		}
+	}
+	
+	@State(Scope.Benchmark)
+	public static class LargeCollections {
+		
+		@Param({ "1000", "100000" })
+		public int size;
+		
+		private List<Location> locations;
+		
+		private List<PersonAddress> addresses;
+		
+		@Setup
+		public void setUp() {
+			locations = new ArrayList<Location>(size);
+			addresses = new ArrayList<PersonAddress>(size);
+			for (int i = 0; i < size; i++) {
+				locations.add(new Location());
+				addresses.add(new PersonAddress());
+			}
+		}
+		
+		void reset() {
+			for (int i = 0; i < size; i++) {
+				LocalizersBenchmark.reset(locations.get(i), addresses.get(i), i);
+			}
+		}
+	}
+	
+	private static void reset(Location location, PersonAddress address, int i) {
+		location.setName(StubMessageSource.METADATA_PREFIX + (2 * i) % METADATA_SIZE);
+		location.setDescription(StubMessageSource.METADATA_PREFIX + (2 * i + 1) % METADATA_SIZE);
+		address.setCountry(StubMessageSource.AH_PREFIX + 0);
+		address.setStateProvince(StubMessageSource.AH_PREFIX + (1 + i % 10));
+		address.setCountyDistrict(StubMessageSource.AH_PREFIX + (11 + i % 100));
+		address.setCityVillage(StubMessageSource.AH_PREFIX + (111 + i % 1000));
+	}
+	
+	@Benchmark
+	public Object metadataLocalizer_single(Localizers localizers, SingleObject object) {
+		object.reset();
+		return localizers.metadataLocalizer.process(object.location);
+	}
+	
+	@Benchmark
+	public Object metadataLocalizer_collection(Localizers localizers, LargeCollections collections) {
+		collections.reset();
+		return localizers.metadataLocalizer.process(collections.locations);
+	}
+	
+	@Benchmark
+	public Object addressValuesLocalizer_single(Localizers localizers, SingleObject object) {
+		object.reset();
+		return localizers.addressValuesLocalizer.process(object.address);
+	}
+	
+	@Benchmark
+	public Object addressValuesLocalizer_collection(Localizers localizers, LargeCollections collections) {
+		collections.reset();
+		return localizers.addressValuesLocalizer.process(collections.addresses);
+	}
+}
@@ -0,0 +1,102 @@
+package org.openmrs.module.exti18n.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImpl;
+
+/**
+ * The lookups of a warm reverse i18n cache: memoized translations, reverse translations of cached
+ * words and free text rejected by the Bloom filters. The "_allThreads" variants run as many threads
+ * as there are CPUs, use the "-t" option of JMH for any other count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReverseI18nCacheBenchmark {
+	
+	@Param({ "1000", "100000" })
+	public int size;
+	
+	private ReverseI18nCacheImpl cache;
+	
+	private String[] keys;
+	
+	private String[] messages;
+	
+	private String[] freeTexts;
+	
+	/*
+	 * Each thread walks the entries in its own pseudo-random order.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		
+		private int seed;
+		
+		@Setup
+		public void setUp() {
+			seed = ThreadLocalRandom.current().nextInt();
+		}
+		
+		int next(int bound) {
+			seed = seed * 1103515245 + 12345;
+			return (seed >>> 1) % bound;
+		}
+	}
+	
+	@Setup
+	public void setUp() {
+		StubMessageSource source = StubMessageSource.metadata(size);
+		cache = source.newCache("benchmark.reverseI18nCache");
+		keys = source.getKeys();
+		messages = new String[size];
+		freeTexts = new String[size];
+		for (int i = 0; i < size; i++) {
+			messages[i] = cache.getMessage(keys[i], StubMessageSource.LOCALE);
+			freeTexts[i] = "Free text " + i;
+		}
+	}
+	
+	@Benchmark
+	public String getMessage(Cursor cursor) {
+		return cache.getMessage(keys[cursor.next(size)], StubMessageSource.LOCALE);
+	}
+	
+	@Benchmark
+	@Threads(Threads.MAX)
+	public String getMessage_allThreads(Cursor cursor) {
+		return getMessage(cursor);
+	}
+	
+	@Benchmark
+	public String getMessageKey(Cursor cursor) {
+		return cache.getMessageKey(messages[cursor.next(size)], StubMessageSource.LOCALE);
+	}
+	
+	@Benchmark
+	@Threads(Threads.MAX)
+	public String getMessageKey_allThreads(Cursor cursor) {
+		return getMessageKey(cursor);
+	}
+	
+	@Benchmark
+	public String getMessageKey_freeText(Cursor cursor) {
+		return cache.getMessageKey(freeTexts[cursor.next(size)], StubMessageSource.LOCALE);
+	}
+}
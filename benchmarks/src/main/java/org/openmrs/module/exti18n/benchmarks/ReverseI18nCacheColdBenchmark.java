@@ -0,0 +1,84 @@
+package org.openmrs.module.exti18n.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImpl;
+
+/**
+ * The lookups of a cold reverse i18n cache: each iteration starts from a new cache and makes a single
+ * pass over all the entries, the scores are times per pass of {@code size} lookups. The
+ * "_allThreads" variant makes one pass per thread on the same cache, as many threads as there are
+ * CPUs filling it concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ReverseI18nCacheColdBenchmark {
+	
+	@Param({ "1000", "100000" })
+	public int size;
+	
+	private StubMessageSource source;
+	
+	private String[] keys;
+	
+	private String[] messages;
+	
+	private ReverseI18nCacheImpl cache;
+	
+	@Setup(Level.Trial)
+	public void setUpMessages() {
+		source = StubMessageSource.metadata(size);
+		keys = source.getKeys();
+		messages = new String[size];
+		for (int i = 0; i < size; i++) {
+			messages[i] = source.getMessage(keys[i]);
+		}
+	}
+	
+	@Setup(Level.Iteration)
+	public void setUpCache() {
+		cache = source.newCache("benchmark.coldReverseI18nCache");
+	}
+	
+	@Benchmark
+	public void getMessage(Blackhole blackhole) {
+		for (String key : keys) {
+			blackhole.consume(cache.getMessage(key, StubMessageSource.LOCALE));
+		}
+	}
+	
+	@Benchmark
+	@Threads(Threads.MAX)
+	public void getMessage_allThreads(Blackhole blackhole) {
+		getMessage(blackhole);
+	}
+	
+	/*
+	 * Nothing can be reverse translated before being cached, a cold cache is first preloaded.
+	 */
+	@Benchmark
+	public void getMessageKey(Blackhole blackhole) {
+		StubMessageSource.preload(cache, StubMessageSource.METADATA_PREFIX);
+		for (String message : messages) {
+			blackhole.consume(cache.getMessageKey(message, StubMessageSource.LOCALE));
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package org.openmrs.module.exti18n.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.openmrs.messagesource.PresentationMessage;
+import org.openmrs.module.exti18n.api.ReverseI18nCache;
+import org.openmrs.module.exti18n.api.impl.AddressHierarchyI18nCacheImpl;
+import org.openmrs.module.exti18n.api.impl.ReverseI18nCacheImpl;
+
+/**
+ * Synthetic i18n messages in a single locale, standing for the OpenMRS message source: the caches
+ * built here translate through them, so that the benchmarks need no OpenMRS runtime.
+ * <p>
+ * Metadata messages are "benchmark.metadata.N" = "Metadata N". Address hierarchy entries are
+ * "addresshierarchy.entry.N" = a made up place name, see {@link #getPlaceName(int)}.
+ */
+public class StubMessageSource {
+	
+	public static final Locale LOCALE = Locale.ENGLISH;
+	
+	public static final String METADATA_PREFIX = "benchmark.metadata.";
+	
+	public static final String AH_PREFIX = "addresshierarchy.entry.";
+	
+	private static final String[] SYLLABLES = { "ka", "lo", "mi", "nu", "ba", "se", "ti", "ro", "ga", "fe", "di", "pu",
+	        "ze", "wa", "ho", "ly" };
+	
+	private static final Executor CALLER_RUNS = new Executor() {
+		
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+	
+	private final Map<String, String> messages = new LinkedHashMap<String, String>();
+	
+	private StubMessageSource() {
+	}
+	
+	/**
+	 * @param size The count of messages.
+	 * @return The messages "benchmark.metadata.0" = "Metadata 0" and so on.
+	 */
+	public static StubMessageSource metadata(int size) {
+		StubMessageSource source = new StubMessageSource();
+		for (int n = 0; n < size; n++) {
+			source.messages.put(METADATA_PREFIX + n, "Metadata " + n);
+		}
+		return source;
+	}
+	
+	/**
+	 * @param size The count of address hierarchy entries.
+	 * @return The messages "addresshierarchy.entry.0" = "Ka" and so on.
+	 */
+	public static StubMessageSource addressHierarchy(int size) {
+		StubMessageSource source = new StubMessageSource();
+		for (int n = 0; n < size; n++) {
+			source.messages.put(AH_PREFIX + n, getPlaceName(n));
+		}
+		return source;
+	}
+	
+	/**
+	 * The names are made of one syllable per hexadecimal digit, eg. "Ka", "Lo", ... "Kalo" and so on,
+	 * so that searches by like name match more or less of them.
+	 * 
+	 * @return A made up place name, unique per number.
+	 */
+	public static String getPlaceName(int n) {
+		StringBuilder name = new StringBuilder();
+		do {
+			name.append(SYLLABLES[n & 0xF]);
+			n >>>= 4;
+		} while (n != 0);
+		name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+		return name.toString();
+	}
+	
+	/**
+	 * @return The i18n message keys, in order.
+	 */
+	public String[] getKeys() {
+		return messages.keySet().toArray(new String[messages.size()]);
+	}
+	
+	public String getMessage(String key) {
+		return messages.get(key);
+	}
+	
+	/**
+	 * @param metricsName The prefix of the names of the cache metrics.
+	 * @return A new cold cache translating through these messages. The methods that would use the
+	 *         context's locale use {@link #LOCALE} instead.
+	 */
+	public ReverseI18nCacheImpl newCache(String metricsName) {
+		return new ReverseI18nCacheImpl(metricsName) {
+			
+			@Override
+			protected String translate(String key, Locale locale) {
+				String message = messages.get(key);
+				return message != null ? message : key;
+			}
+			
+			@Override
+			protected Collection<PresentationMessage> getPresentations(Locale locale) {
+				List<PresentationMessage> presentations = new ArrayList<PresentationMessage>(messages.size());
+				for (Map.Entry<String, String> message : messages.entrySet()) {
+					presentations.add(new PresentationMessage(message.getKey(), locale, message.getValue(), null));
+				}
+				return presentations;
+			}
+			
+			@Override
+			public String getMessage(String key) {
+				return getMessage(key, LOCALE);
+			}
+			
+			@Override
+			public String getMessageKey(String message) {
+				return getMessageKey(message, LOCALE);
+			}
+		};
+	}
+	
+	/**
+	 * @param metricsName The prefix of the names of the cache metrics.
+	 * @param orderedAddressFields The address fields of the hierarchy levels, eg. "country".
+	 * @return A new address hierarchy cache preloaded with these messages.
+	 */
+	public AddressHierarchyI18nCacheImpl newAddressHierarchyCache(String metricsName, List<String> orderedAddressFields) {
+		return newAddressHierarchyCache(metricsName, orderedAddressFields, false);
+	}
+	
+	/**
+	 * @param metricsName The prefix of the names of the cache metrics.
+	 * @param orderedAddressFields The address fields of the hierarchy levels, eg. "country".
+	 * @param compact Set to true to store the preloaded messages compactly.
+	 * @return A new address hierarchy cache preloaded with these messages.
+	 */
+	public AddressHierarchyI18nCacheImpl newAddressHierarchyCache(String metricsName, List<String> orderedAddressFields,
+	        boolean compact) {
+		AddressHierarchyI18nCacheImpl cache = new AddressHierarchyI18nCacheImpl(newCache(metricsName));
+		cache.setCompactStorage(compact);
+		cache.setOrderedAddressFields(orderedAddressFields);
+		preload(cache, AH_PREFIX);
+		return cache;
+	}
+	
+	/**
+	 * Preloads a cache on the calling thread.
+	 */
+	public static void preload(ReverseI18nCache cache, String prefix) {
+		cache.preload(Collections.singleton(prefix), Collections.singleton(LOCALE), CALLER_RUNS).join();
+	}
+}